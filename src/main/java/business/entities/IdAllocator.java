@@ -0,0 +1,151 @@
+package business.entities;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands out unique, positive id numbers. Each thread reserves a block of numbers from a shared
+ * atomic high-water mark and then numbers ids from its block without touching shared state, so
+ * threads creating entities at the same time do not contend on one counter. Within a thread ids
+ * are increasing; across threads they are unique but interleaved by block.
+ * 
+ * The high-water mark is what gets saved. Numbers reserved but not used before a save are skipped
+ * after a restart rather than handed out again.
+ */
+final class IdAllocator {
+	// Ids reserved per thread at a time
+	private static final int DEFAULT_BLOCK_SIZE = 64;
+	private final int blockSize;
+	// Highest number reserved by any thread
+	private final AtomicInteger highWaterMark = new AtomicInteger();
+	// Bumped by restore, and by reserve when it raises the mark, to abandon reserved blocks
+	private volatile int generation;
+	// Block of the calling thread
+	private final ThreadLocal<Block> blocks = new ThreadLocal<Block>() {
+		@Override
+		protected Block initialValue() {
+			return new Block();
+		}
+	};
+
+	/**
+	 * Creates an allocator starting at 1
+	 */
+	IdAllocator() {
+		this(DEFAULT_BLOCK_SIZE);
+	}
+
+	/**
+	 * Creates an allocator starting at 1
+	 * 
+	 * @param blockSize number of ids a thread reserves at a time
+	 */
+	IdAllocator(int blockSize) {
+		this.blockSize = blockSize;
+	}
+
+	/**
+	 * Get the next id number for the calling thread
+	 * 
+	 * @return a number never returned before
+	 */
+	int next() {
+		Block block = this.blocks.get();
+		int currentGeneration = this.generation;
+		if (block.next > block.last || block.generation != currentGeneration) {
+			int reserved = this.highWaterMark.getAndAdd(this.blockSize);
+			block.next = reserved + 1;
+			block.last = reserved + this.blockSize;
+			block.generation = currentGeneration;
+		}
+		return block.next++;
+	}
+
+	/**
+	 * Highest number that may have been handed out, the value to save
+	 * 
+	 * @return the high-water mark
+	 */
+	int highWaterMark() {
+		return this.highWaterMark.get();
+	}
+
+	/**
+	 * Make sure an id created elsewhere, e.g. read back from a journal, is never handed out again.
+	 * Blocks are only abandoned if the id is above the high-water mark, so ids that were handed
+	 * out by this allocator can be reserved without making every thread reserve a new block.
+	 * 
+	 * @param id     the id
+	 * @param prefix prefix of the ids numbered by this allocator
+	 */
+	void reserve(String id, String prefix) {
+		int number = parseNumber(id, prefix);
+		if (number > 0 && raise(number)) {
+			this.generation++;
+		}
+	}
+
+	/**
+	 * Extracts the number an id was generated from, i.e. 12 for "M12". Done by hand so that
+	 * lookups by id do not allocate.
+	 * 
+	 * @param id     the id
+	 * @param prefix prefix of the id
+	 * @return the numeric part of the id, or -1 if id is not a well formed id with that prefix.
+	 *         Generated ids have no leading zeros, so "M012" is not the id of number 12.
+	 */
+	static int parseNumber(String id, String prefix) {
+		int length = id.length();
+		if (length <= prefix.length() || length > prefix.length() + 10 || !id.startsWith(prefix)) {
+			return -1;
+		}
+		if (id.charAt(prefix.length()) == '0' && length > prefix.length() + 1) {
+			return -1;
+		}
+		long number = 0;
+		for (int index = prefix.length(); index < length; index++) {
+			char digit = id.charAt(index);
+			if (digit < '0' || digit > '9') {
+				return -1;
+			}
+			number = number * 10 + (digit - '0');
+		}
+		return number > Integer.MAX_VALUE ? -1 : (int) number;
+	}
+
+	/**
+	 * Continue numbering after a saved high-water mark. Blocks reserved before the call are
+	 * abandoned, and the mark never moves backwards, so no number is handed out twice.
+	 * 
+	 * @param savedHighWaterMark high-water mark read back from storage
+	 */
+	void restore(int savedHighWaterMark) {
+		raise(savedHighWaterMark);
+		this.generation++;
+	}
+
+	/**
+	 * Move the high-water mark up to a number
+	 * 
+	 * @param mark the number
+	 * @return true iff the mark was below the number and was moved
+	 */
+	private boolean raise(int mark) {
+		int current;
+		do {
+			current = this.highWaterMark.get();
+			if (current >= mark) {
+				return false;
+			}
+		} while (!this.highWaterMark.compareAndSet(current, mark));
+		return true;
+	}
+
+	/**
+	 * Range of reserved numbers owned by one thread
+	 */
+	private static class Block {
+		private int next = 1;
+		private int last = 0;
+		private int generation;
+	}
+}
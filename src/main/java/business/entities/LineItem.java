@@ -7,21 +7,23 @@ import java.io.Serializable;
  * of the product, quantity and lineTotal.
  */
 public class LineItem implements Serializable {
-    private static final long serialVersionUID = 1L;
+    // Bumped when the line total became cents; older files go through the legacy reader
+    private static final long serialVersionUID = 2L;
     // product being purchased in transaction
     private Product product;
     // quantity of product being ordered
     private int quantity;
-    private double lineTotal;
+    // cost of the line item in cents
+    private long lineTotal;
 
     /**
      * Constructor
      * 
      * @param product   The product associated with the line item
      * @param quantity  The quantity of product
-     * @param lineTotal The cost of the line item (product price * quantity)
+     * @param lineTotal The cost of the line item in cents (product price * quantity)
      */
-    public LineItem(Product product, int quantity, double lineTotal) {
+    public LineItem(Product product, int quantity, long lineTotal) {
         this.product = product;
         this.quantity = quantity;
         this.lineTotal = lineTotal;
@@ -66,18 +68,36 @@ public class LineItem implements Serializable {
     /**
      * Getter for lineTotal
      * 
-     * @return the total cost of the line item
+     * @return the total cost of the line item in dollars
      */
     public double getLineTotal() {
+        return Money.toDollars(this.lineTotal);
+    }
+
+    /**
+     * Getter for lineTotal in cents
+     * 
+     * @return the total cost of the line item in cents
+     */
+    public long getLineTotalCents() {
         return this.lineTotal;
     }
 
     /**
      * Setter for lineTotal
      * 
-     * @param lineTotal the total cost of the line item
+     * @param lineTotal the total cost of the line item in dollars
      */
     public void setLineTotal(double lineTotal) {
+        this.lineTotal = Money.toCents(lineTotal);
+    }
+
+    /**
+     * Setter for lineTotal in cents
+     * 
+     * @param lineTotal the total cost of the line item in cents
+     */
+    public void setLineTotalCents(long lineTotal) {
         this.lineTotal = lineTotal;
     }
 }
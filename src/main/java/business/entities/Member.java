@@ -6,17 +6,16 @@ import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.Calendar;
 import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.List;
-
-import business.entities.iterator.FilteredIterator;
+import java.util.Set;
 
 /**
  * Member entity which represents a member of the coop. In addition to demographic information
  * associated with the member, all of the member's transactions are stored as well.
  */
 public class Member implements Serializable {
-	private static final long serialVersionUID = 1L;
+	// Bumped when the join date became epoch milliseconds and the fee cents; older files go
+	// through the legacy reader
+	private static final long serialVersionUID = 3L;
 	/**
 	 * Member demographics/basic info
 	 */
@@ -24,14 +23,16 @@ public class Member implements Serializable {
 	private String memberName;
 	private String memberAddress;
 	private String memberPhoneNumber;
-	private double feePaid;
-	private Calendar dateJoined;
-	// All of the transactions completed by this member
-	private List<Transaction> transactions = new LinkedList<Transaction>();
+	// Fee paid in cents
+	private long feePaid;
+	// Join date as epoch milliseconds
+	private long joinTimestamp;
+	// All of the transactions completed by this member, in date order
+	private TransactionHistory transactions = new TransactionHistory();
 	// "M" is prefixed to all generated member ids
 	private static final String MEMBER_ID_PREFIX = "M";
-	// Current id counter used to ensure unique ids for members
-	private static int idCounter;
+	// Allocator of the numbers used to ensure unique ids for members
+	private static final IdAllocator idCounter = new IdAllocator();
 
 	/**
 	 * Member constructor. Generated a unique id for the member.
@@ -40,19 +41,84 @@ public class Member implements Serializable {
 	 * @param memberAddress     address of the member
 	 * @param memberPhoneNumber phone number of the member
 	 * @param dateJoined        join date of the member
-	 * @param feePaid           the fee amount paid by the member
+	 * @param feePaid           the fee amount paid by the member in dollars
 	 */
 	public Member(String memberName, String memberAddress, String memberPhoneNumber,
 			Calendar dateJoined, double feePaid) {
+		this(memberName, memberAddress, memberPhoneNumber, dateJoined, Money.toCents(feePaid));
+	}
+
+	/**
+	 * Member constructor. Generated a unique id for the member.
+	 * 
+	 * @param memberName        name of the member
+	 * @param memberAddress     address of the member
+	 * @param memberPhoneNumber phone number of the member
+	 * @param dateJoined        join date of the member
+	 * @param feePaid           the fee amount paid by the member in cents
+	 */
+	public Member(String memberName, String memberAddress, String memberPhoneNumber,
+			Calendar dateJoined, long feePaid) {
 		// Prefix unique id with "M"
-		this.memberId = MEMBER_ID_PREFIX + ++idCounter;
+		this.memberId = MEMBER_ID_PREFIX + idCounter.next();
+		this.memberName = memberName;
+		this.memberAddress = memberAddress;
+		this.memberPhoneNumber = memberPhoneNumber;
+		this.joinTimestamp = dateJoined.getTimeInMillis();
+		this.feePaid = feePaid;
+	}
+
+	/**
+	 * Member constructor for a member whose id was generated before, e.g. when it is read back
+	 * from a journal. The id will not be generated again.
+	 * 
+	 * @param memberId          id of the member
+	 * @param memberName        name of the member
+	 * @param memberAddress     address of the member
+	 * @param memberPhoneNumber phone number of the member
+	 * @param joinTimestamp     join date of the member as epoch milliseconds
+	 * @param feePaid           the fee amount paid by the member in cents
+	 */
+	public Member(String memberId, String memberName, String memberAddress,
+			String memberPhoneNumber, long joinTimestamp, long feePaid) {
+		this(memberId, memberName, memberAddress, memberPhoneNumber, joinTimestamp, feePaid,
+				true);
+	}
+
+	private Member(String memberId, String memberName, String memberAddress,
+			String memberPhoneNumber, long joinTimestamp, long feePaid, boolean reserve) {
+		if (reserve) {
+			idCounter.reserve(memberId, MEMBER_ID_PREFIX);
+		}
+		this.memberId = memberId;
 		this.memberName = memberName;
 		this.memberAddress = memberAddress;
 		this.memberPhoneNumber = memberPhoneNumber;
-		this.dateJoined = dateJoined;
+		this.joinTimestamp = joinTimestamp;
 		this.feePaid = feePaid;
 	}
 
+	/**
+	 * Member constructor for a member read back from a snapshot. The member's transactions are
+	 * read the first time they are used. The snapshot restores the high water mark of the member
+	 * ids, so the id is not reserved.
+	 * 
+	 * @param memberId          id of the member
+	 * @param memberName        name of the member
+	 * @param memberAddress     address of the member
+	 * @param memberPhoneNumber phone number of the member
+	 * @param joinTimestamp     join date of the member as epoch milliseconds
+	 * @param feePaid           the fee amount paid by the member in cents
+	 * @param history           reads the member's transactions
+	 */
+	public Member(String memberId, String memberName, String memberAddress,
+			String memberPhoneNumber, long joinTimestamp, long feePaid,
+			TransactionHistory.Loader history) {
+		this(memberId, memberName, memberAddress, memberPhoneNumber, joinTimestamp, feePaid,
+				false);
+		this.transactions = new TransactionHistory(history);
+	}
+
 	/**
 	 * Associates a transaction with a member by adding a transaction to the transactions field
 	 * 
@@ -63,6 +129,22 @@ public class Member implements Serializable {
 		return this.transactions.add(transaction);
 	}
 
+	/**
+	 * Copy the member, for example to write a point-in-time snapshot of it. The copy shares the
+	 * transactions, which do not change once they are ended. A history that was not read yet
+	 * stays unread.
+	 * 
+	 * @param excludedTransactionIds ids of transactions to leave out of the copy's history
+	 * @return a member with the same id, demographics and history
+	 */
+	public Member copyWithout(Set<String> excludedTransactionIds) {
+		// The id is taken by this member already, the copy does not reserve it
+		Member copy = new Member(this.memberId, this.memberName, this.memberAddress,
+				this.memberPhoneNumber, this.joinTimestamp, this.feePaid, false);
+		copy.transactions = this.transactions.copyWithout(excludedTransactionIds);
+		return copy;
+	}
+
 	/**
 	 * Returns an iterator to a collection of selected transactions that was completed between a
 	 * start and end date
@@ -72,8 +154,27 @@ public class Member implements Serializable {
 	 * @return An iterator of transactions that fall between [startDate, endDate]
 	 */
 	public Iterator<Transaction> getTransactionsOnDate(Calendar startDate, Calendar endDate) {
-		return new FilteredIterator<Transaction>(transactions.iterator(),
-				transaction -> transaction.betweenDates(startDate, endDate));
+		return transactions.between(startDate.getTimeInMillis(), endDate.getTimeInMillis());
+	}
+
+	/**
+	 * Returns an iterator to all of the member's transactions
+	 * 
+	 * @return iterator of the transactions at the time of the call, in date order
+	 */
+	public Iterator<Transaction> getTransactions() {
+		return transactions.iterator();
+	}
+
+	/**
+	 * Extracts the number a member id was generated from, i.e. 12 for "M12". Done by hand so that
+	 * lookups by id do not allocate.
+	 * 
+	 * @param memberId id of a member
+	 * @return the numeric part of the id, or -1 if memberId is not a well formed member id
+	 */
+	public static int parseMemberNumber(String memberId) {
+		return IdAllocator.parseNumber(memberId, MEMBER_ID_PREFIX);
 	}
 
 	/**
@@ -115,18 +216,36 @@ public class Member implements Serializable {
 	/**
 	 * Getter for dateJoined
 	 * 
-	 * @return The Calendar object representing member join date
+	 * @return a new Calendar object representing member join date
 	 */
 	public Calendar getDateJoined() {
-		return this.dateJoined;
+		return Timestamps.toCalendar(this.joinTimestamp);
+	}
+
+	/**
+	 * Getter for the join date as epoch milliseconds
+	 * 
+	 * @return milliseconds since the epoch at which the member joined
+	 */
+	public long getJoinTimestamp() {
+		return this.joinTimestamp;
 	}
 
 	/**
 	 * Getter for feePaid
 	 * 
-	 * @return Amount paid in membership fees
+	 * @return Amount paid in membership fees in dollars
 	 */
 	public double getFeePaid() {
+		return Money.toDollars(this.feePaid);
+	}
+
+	/**
+	 * Getter for feePaid in cents
+	 * 
+	 * @return Amount paid in membership fees in cents
+	 */
+	public long getFeePaidCents() {
 		return this.feePaid;
 	}
 
@@ -137,7 +256,7 @@ public class Member implements Serializable {
 	 */
 	@Override
 	public String toString() {
-		return "Member name " + this.memberName + "; date joined " + this.dateJoined + "; address "
+		return "Member name " + this.memberName + "; date joined " + getDateJoined() + "; address "
 				+ this.memberAddress + "; phone number " + this.memberPhoneNumber;
 	}
 
@@ -186,6 +305,34 @@ public class Member implements Serializable {
 		return true;
 	}
 
+	/**
+	 * Builds the id of a member from the number it was generated from
+	 * 
+	 * @param number numeric part of the id
+	 * @return the id, i.e. "M12" for 12
+	 */
+	public static String memberIdOf(int number) {
+		return MEMBER_ID_PREFIX + number;
+	}
+
+	/**
+	 * High water mark of the generated member ids, for saving it in a snapshot
+	 * 
+	 * @return the number after which ids are still free
+	 */
+	public static int idHighWaterMark() {
+		return idCounter.highWaterMark();
+	}
+
+	/**
+	 * Continue generating member ids after a high water mark read from a snapshot
+	 * 
+	 * @param highWaterMark the saved high water mark
+	 */
+	public static void restoreIds(int highWaterMark) {
+		idCounter.restore(highWaterMark);
+	}
+
 	/**
 	 * Serializes the Member object using an ObjectOutputStream
 	 * 
@@ -193,7 +340,7 @@ public class Member implements Serializable {
 	 * @throws IOException
 	 */
 	public static void save(ObjectOutputStream output) throws IOException {
-		output.writeObject(idCounter);
+		output.writeObject(idCounter.highWaterMark());
 	}
 
 	/**
@@ -206,6 +353,6 @@ public class Member implements Serializable {
 	 */
 	public static void retrieve(ObjectInputStream input)
 			throws IOException, ClassNotFoundException {
-		Member.idCounter = (int) input.readObject();
+		Member.idCounter.restore((int) input.readObject());
 	}
 }
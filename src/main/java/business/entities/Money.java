@@ -0,0 +1,51 @@
+package business.entities;
+
+import java.text.NumberFormat;
+
+/**
+ * Fixed-point money helpers. Amounts are held as a long number of cents everywhere inside the
+ * entities and facade; doubles only appear at the API edge where users enter or read dollars.
+ * Cent arithmetic is exact and needs no allocation.
+ */
+public final class Money {
+	// Currency formatters are expensive to create and not thread safe, so keep one per thread
+	private static final ThreadLocal<NumberFormat> CURRENCY_FORMAT =
+			ThreadLocal.withInitial(NumberFormat::getCurrencyInstance);
+
+	/**
+	 * Utility class, not instantiated
+	 */
+	private Money() {
+
+	}
+
+	/**
+	 * Convert a dollar amount to cents, rounding to the nearest cent
+	 * 
+	 * @param dollars amount in dollars
+	 * @return amount in cents
+	 */
+	public static long toCents(double dollars) {
+		return Math.round(dollars * 100);
+	}
+
+	/**
+	 * Convert an amount in cents to dollars
+	 * 
+	 * @param cents amount in cents
+	 * @return amount in dollars
+	 */
+	public static double toDollars(long cents) {
+		return cents / 100.0;
+	}
+
+	/**
+	 * Format an amount in cents as currency in the default locale
+	 * 
+	 * @param cents amount in cents
+	 * @return formatted amount, e.g. $1,234.50
+	 */
+	public static String format(long cents) {
+		return CURRENCY_FORMAT.get().format(toDollars(cents));
+	}
+}
@@ -7,18 +7,20 @@ import java.io.Serializable;
 import java.util.Calendar;
 
 public class Order implements Serializable {
+	// Declared when the date became epoch milliseconds; older files go through the legacy reader
+	private static final long serialVersionUID = 2L;
 	// Unique id of order
 	private String orderId;
 	// Product associated with the order
 	private Product product;
 	// Quantity being ordered
 	private int quantity;
-	// Order creation date
-	private Calendar date;
+	// Order creation date as epoch milliseconds
+	private long timestamp;
 	// Prefix with "R" instead of "O" because "O" looks like "0"
 	private static final String ORDER_ID_PREFIX = "R";
-	// id counter used to ensure unique order ids
-	private static int idCounter = 0;
+	// Allocator of the numbers used to ensure unique order ids
+	private static final IdAllocator idCounter = new IdAllocator();
 
 	/**
 	 * Constructor. Generates a unique order id by prefixing the idcounter
@@ -28,10 +30,59 @@ public class Order implements Serializable {
 	 * @param date     date ordered
 	 */
 	public Order(Product product, int quantity, Calendar date) {
-		this.orderId = ORDER_ID_PREFIX + ++idCounter;
+		this(product, quantity, date.getTimeInMillis());
+	}
+
+	/**
+	 * Constructor. Generates a unique order id by prefixing the idcounter
+	 * 
+	 * @param product   product ordered
+	 * @param quantity  quantity ordered
+	 * @param timestamp date ordered as epoch milliseconds
+	 */
+	public Order(Product product, int quantity, long timestamp) {
+		this.orderId = ORDER_ID_PREFIX + idCounter.next();
 		this.product = product;
 		this.quantity = quantity;
-		this.date = date;
+		this.timestamp = timestamp;
+	}
+
+	/**
+	 * Constructor for an order whose id was generated before, e.g. when it is read back from a
+	 * journal. The id will not be generated again.
+	 * 
+	 * @param orderId   id of the order
+	 * @param product   product ordered
+	 * @param quantity  quantity ordered
+	 * @param timestamp date ordered as epoch milliseconds
+	 */
+	public Order(String orderId, Product product, int quantity, long timestamp) {
+		this(orderId, product, quantity, timestamp, true);
+	}
+
+	private Order(String orderId, Product product, int quantity, long timestamp,
+			boolean reserve) {
+		if (reserve) {
+			idCounter.reserve(orderId, ORDER_ID_PREFIX);
+		}
+		this.orderId = orderId;
+		this.product = product;
+		this.quantity = quantity;
+		this.timestamp = timestamp;
+	}
+
+	/**
+	 * Creates an order whose id the allocator already accounts for: one read back from a snapshot,
+	 * whose high water mark is restored with it, or a copy of an order. The id is not reserved.
+	 * 
+	 * @param orderId   id of the order
+	 * @param product   product ordered
+	 * @param quantity  quantity ordered
+	 * @param timestamp date ordered as epoch milliseconds
+	 * @return the order
+	 */
+	public static Order restored(String orderId, Product product, int quantity, long timestamp) {
+		return new Order(orderId, product, quantity, timestamp, false);
 	}
 
 	/**
@@ -61,13 +112,70 @@ public class Order implements Serializable {
 		return this.quantity;
 	}
 
+	/**
+	 * Increase the quantity ordered, used when another order of the same product is merged into
+	 * this one
+	 * 
+	 * @param additionalQuantity quantity to add to the order
+	 */
+	public void addQuantity(int additionalQuantity) {
+		this.quantity += additionalQuantity;
+	}
+
 	/**
 	 * Getter for date
 	 * 
-	 * @return order creation date
+	 * @return a new Calendar set to the order creation date
 	 */
 	public Calendar getDate() {
-		return this.date;
+		return Timestamps.toCalendar(this.timestamp);
+	}
+
+	/**
+	 * Getter for the date as epoch milliseconds
+	 * 
+	 * @return milliseconds since the epoch at which the order was created
+	 */
+	public long getTimestamp() {
+		return this.timestamp;
+	}
+
+	/**
+	 * Extracts the number an order id was generated from, i.e. 12 for "R12"
+	 * 
+	 * @param orderId id of an order
+	 * @return the numeric part of the id, or -1 if orderId is not a well formed order id
+	 */
+	public static int parseOrderNumber(String orderId) {
+		return IdAllocator.parseNumber(orderId, ORDER_ID_PREFIX);
+	}
+
+	/**
+	 * Builds the id of an order from the number it was generated from
+	 * 
+	 * @param number numeric part of the id
+	 * @return the id, i.e. "R12" for 12
+	 */
+	public static String orderIdOf(int number) {
+		return ORDER_ID_PREFIX + number;
+	}
+
+	/**
+	 * High water mark of the generated order ids, for saving it in a snapshot
+	 * 
+	 * @return the number after which ids are still free
+	 */
+	public static int idHighWaterMark() {
+		return idCounter.highWaterMark();
+	}
+
+	/**
+	 * Continue generating order ids after a high water mark read from a snapshot
+	 * 
+	 * @param highWaterMark the saved high water mark
+	 */
+	public static void restoreIds(int highWaterMark) {
+		idCounter.restore(highWaterMark);
 	}
 
 	/**
@@ -77,7 +185,7 @@ public class Order implements Serializable {
 	 * @throws IOException
 	 */
 	public static void save(ObjectOutputStream output) throws IOException {
-		output.writeObject(idCounter);
+		output.writeObject(idCounter.highWaterMark());
 	}
 
 	/**
@@ -89,7 +197,7 @@ public class Order implements Serializable {
 	 */
 	public static void retrieve(ObjectInputStream input)
 			throws IOException, ClassNotFoundException {
-		Order.idCounter = (int) input.readObject();
+		Order.idCounter.restore((int) input.readObject());
 	}
 
 	/**
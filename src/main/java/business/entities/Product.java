@@ -4,34 +4,69 @@ import java.io.Serializable;
 
 /**
  * Product class which represents a product in the coop's inventory. New products are given a user
- * provided id and are not automatically generated.
+ * provided id and are not automatically generated. A product is a view over its slot in a
+ * ProductColumns store, which holds the actual field values. Products created on their own, such
+ * as placeholders and products of tests, get a detached store of a single slot that is freed with
+ * them.
  */
 public class Product implements Serializable {
-	private static final long serialVersionUID = 1L;
-	// Name of product
-	private String productName;
-	// Id of product
-	private String productId;
-	// Quantity of product in stock
-	private int stockOnHand;
-	// The quantity that triggers a reorder if stock is equal or less than this value
-	private int reorderLevel;
-	// Current price of product
-	private double currentPrice;
+	// Bumped when the price became cents; older files go through the legacy reader
+	private static final long serialVersionUID = 2L;
+	// Chunks of a detached store hold 2^0 slots
+	private static final int DETACHED_CHUNK_BITS = 0;
+	// Store holding the product's fields
+	private final ProductColumns columns;
+	// Slot of the product in columns
+	private final int slot;
+	// Whether columns belongs to this product alone
+	private final transient boolean detached;
 
 	/**
-	 * Constructor. Assigns instance variable to constructor parameters.
+	 * Constructor. Creates a product in a detached store of its own.
 	 * 
 	 * @param name
 	 * @param reorderLevel
 	 * @param price
 	 */
 	public Product(String name, String id, int reorderLevel, int initialStockOnHand, double price) {
-		this.productName = name;
-		this.productId = id;
-		this.stockOnHand = initialStockOnHand;
-		this.reorderLevel = reorderLevel;
-		this.currentPrice = price;
+		this(name, id, reorderLevel, initialStockOnHand, Money.toCents(price));
+	}
+
+	private Product(String name, String id, int reorderLevel, int initialStockOnHand, long price) {
+		this.columns = new ProductColumns(DETACHED_CHUNK_BITS);
+		this.slot = this.columns.allocate(name, id, reorderLevel, initialStockOnHand, price);
+		this.detached = true;
+	}
+
+	/**
+	 * Constructor. Creates a view over a product already allocated in a store.
+	 * 
+	 * @param columns store holding the product
+	 * @param slot    slot of the product in columns
+	 */
+	public Product(ProductColumns columns, int slot) {
+		this.columns = columns;
+		this.slot = slot;
+		this.detached = false;
+	}
+
+	/**
+	 * Slot of the product in its store
+	 * 
+	 * @return the slot
+	 */
+	public int getSlot() {
+		return this.slot;
+	}
+
+	/**
+	 * Checks whether the product is a view over a slot of a store
+	 * 
+	 * @param columns the store
+	 * @return true iff the product's fields are held by columns
+	 */
+	public boolean isStoredIn(ProductColumns columns) {
+		return this.columns == columns;
 	}
 
 	/**
@@ -40,7 +75,7 @@ public class Product implements Serializable {
 	 * @return name of the product
 	 */
 	public String getProductName() {
-		return this.productName;
+		return this.columns.getName(this.slot);
 	}
 
 	/**
@@ -49,7 +84,7 @@ public class Product implements Serializable {
 	 * @return id of product
 	 */
 	public String getProductId() {
-		return this.productId;
+		return this.columns.getId(this.slot);
 	}
 
 	/**
@@ -58,7 +93,7 @@ public class Product implements Serializable {
 	 * @return current stock of product
 	 */
 	public int getStockOnHand() {
-		return this.stockOnHand;
+		return this.columns.getStockOnHand(this.slot);
 	}
 
 	/**
@@ -67,7 +102,17 @@ public class Product implements Serializable {
 	 * @param stockOnHand new current stock for product
 	 */
 	public void setStockOnHand(int stockOnHand) {
-		this.stockOnHand = stockOnHand;
+		this.columns.setStockOnHand(this.slot, stockOnHand);
+	}
+
+	/**
+	 * Atomically add to stockOnHand, safe against concurrent sales and shipments
+	 * 
+	 * @param quantity quantity to add, negative when stock is sold
+	 * @return stock on hand before the change
+	 */
+	public int getAndAddStockOnHand(int quantity) {
+		return this.columns.getAndAddStockOnHand(this.slot, quantity);
 	}
 
 	/**
@@ -76,25 +121,90 @@ public class Product implements Serializable {
 	 * @return reorder quantity for product
 	 */
 	public int getReorderLevel() {
-		return this.reorderLevel;
+		return this.columns.getReorderLevel(this.slot);
 	}
 
 	/**
 	 * Getter for currentPrice
 	 * 
-	 * @return current price of product
+	 * @return current price of product in dollars
 	 */
 	public double getCurrentPrice() {
-		return this.currentPrice;
+		return Money.toDollars(getCurrentPriceCents());
+	}
+
+	/**
+	 * Getter for currentPrice in cents
+	 * 
+	 * @return current price of product in cents
+	 */
+	public long getCurrentPriceCents() {
+		return this.columns.getPrice(this.slot);
 	}
 
 	/**
 	 * Setter for currentPrice
 	 * 
-	 * @param currentPrice new price for product
+	 * @param currentPrice new price for product in dollars
 	 */
 	public void setCurrentPrice(double currentPrice) {
-		this.currentPrice = currentPrice;
+		setCurrentPriceCents(Money.toCents(currentPrice));
+	}
+
+	/**
+	 * Setter for currentPrice in cents
+	 * 
+	 * @param currentPrice new price for product in cents
+	 */
+	public void setCurrentPriceCents(long currentPrice) {
+		this.columns.setPrice(this.slot, currentPrice);
+	}
+
+	/**
+	 * Checks whether the product has a detached store of its own
+	 * 
+	 * @return true iff the product was created on its own
+	 */
+	boolean isDetached() {
+		return this.detached;
+	}
+
+	/**
+	 * Detached products are written with their own field values instead of their store
+	 * 
+	 * @return the object to serialize
+	 */
+	private Object writeReplace() {
+		if (!this.detached) {
+			return this;
+		}
+		return new DetachedProduct(this);
+	}
+
+	/**
+	 * Serialized form of a detached product
+	 */
+	private static final class DetachedProduct implements Serializable {
+		private static final long serialVersionUID = 1L;
+		private final String name;
+		private final String id;
+		private final int reorderLevel;
+		private final int stockOnHand;
+		// Price in cents
+		private final long price;
+
+		private DetachedProduct(Product product) {
+			this.name = product.getProductName();
+			this.id = product.getProductId();
+			this.reorderLevel = product.getReorderLevel();
+			this.stockOnHand = product.getStockOnHand();
+			this.price = product.getCurrentPriceCents();
+		}
+
+		private Object readResolve() {
+			return new Product(this.name, this.id, this.reorderLevel, this.stockOnHand,
+					this.price);
+		}
 	}
 
 	/**
@@ -108,6 +218,7 @@ public class Product implements Serializable {
 	public int hashCode() {
 		int prime = 37;
 		int result = 1;
+		String productId = getProductId();
 		result = prime * result + ((productId == null) ? 0 : productId.hashCode());
 		return result;
 	}
@@ -131,12 +242,13 @@ public class Product implements Serializable {
 			return false;
 		}
 		Product otherProduct = (Product) object;
+		String productId = getProductId();
 		if (productId == null) {
-			if (otherProduct.productId != null) {
+			if (otherProduct.getProductId() != null) {
 				return false;
 			}
 		}
-		if (!this.productId.equals(otherProduct.productId)) {
+		if (!productId.equals(otherProduct.getProductId())) {
 			return false;
 		}
 		return true;
@@ -149,9 +261,9 @@ public class Product implements Serializable {
 	 */
 	@Override
 	public String toString() {
-		return "Product name " + this.productName + "; id " + this.productId + "; stock on hand "
-				+ this.stockOnHand + "; price $ " + this.currentPrice + "; reorder level "
-				+ this.reorderLevel;
+		return "Product name " + getProductName() + "; id " + getProductId() + "; stock on hand "
+				+ getStockOnHand() + "; price $ " + getCurrentPrice() + "; reorder level "
+				+ getReorderLevel();
 	}
 
 }
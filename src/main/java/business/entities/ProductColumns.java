@@ -0,0 +1,205 @@
+package business.entities;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Struct-of-arrays storage for products. Every product owns a dense slot and each of its fields
+ * lives in a primitive column at that slot, so scans over the whole catalog such as "below reorder
+ * level" or inventory valuation are plain array loops instead of pointer chasing through product
+ * objects. Product objects are views over a slot.
+ * 
+ * Columns are split into fixed size chunks that never move once allocated, so growing the store
+ * only copies the small arrays of chunk references. Stock on hand and prices are kept in atomic
+ * arrays so that concurrent sales and shipments adjust stock without locks and readers that hold no
+ * lock never see a torn price.
+ */
+public final class ProductColumns implements Serializable {
+	// Bumped when prices became atomic arrays
+	private static final long serialVersionUID = 2L;
+	// Slots per chunk is 2^DEFAULT_CHUNK_BITS
+	private static final int DEFAULT_CHUNK_BITS = 10;
+	private final int chunkBits;
+	private final int chunkMask;
+	// Columns, indexed by [slot >>> chunkBits][slot & chunkMask]
+	private String[][] names;
+	private String[][] ids;
+	private AtomicIntegerArray[] stockOnHand;
+	private int[][] reorderLevels;
+	// Prices in cents
+	private AtomicLongArray[] prices;
+	// Number of allocated slots
+	private volatile int size;
+
+	/**
+	 * Creates an empty store for a catalog of products
+	 */
+	public ProductColumns() {
+		this(DEFAULT_CHUNK_BITS);
+	}
+
+	/**
+	 * Creates an empty store with chunks of 2^chunkBits slots
+	 * 
+	 * @param chunkBits log2 of the number of slots per chunk
+	 */
+	ProductColumns(int chunkBits) {
+		this.chunkBits = chunkBits;
+		this.chunkMask = (1 << chunkBits) - 1;
+		this.names = new String[1][];
+		this.ids = new String[1][];
+		this.stockOnHand = new AtomicIntegerArray[1];
+		this.reorderLevels = new int[1][];
+		this.prices = new AtomicLongArray[1];
+	}
+
+	/**
+	 * Allocate the next slot and fill in the product fields
+	 * 
+	 * @param name         name of the product
+	 * @param id           id of the product
+	 * @param reorderLevel reorder level of the product
+	 * @param stockOnHand  stock on hand of the product
+	 * @param price        price of the product in cents
+	 * @return the slot of the product
+	 */
+	public int allocate(String name, String id, int reorderLevel, int stockOnHand, long price) {
+		int slot = this.size;
+		int chunk = slot >>> this.chunkBits;
+		if (chunk == this.names.length) {
+			int chunks = chunk * 2;
+			this.names = Arrays.copyOf(this.names, chunks);
+			this.ids = Arrays.copyOf(this.ids, chunks);
+			this.stockOnHand = Arrays.copyOf(this.stockOnHand, chunks);
+			this.reorderLevels = Arrays.copyOf(this.reorderLevels, chunks);
+			this.prices = Arrays.copyOf(this.prices, chunks);
+		}
+		if (this.names[chunk] == null) {
+			int chunkSize = this.chunkMask + 1;
+			this.names[chunk] = new String[chunkSize];
+			this.ids[chunk] = new String[chunkSize];
+			this.stockOnHand[chunk] = new AtomicIntegerArray(chunkSize);
+			this.reorderLevels[chunk] = new int[chunkSize];
+			this.prices[chunk] = new AtomicLongArray(chunkSize);
+		}
+		int index = slot & this.chunkMask;
+		this.names[chunk][index] = name;
+		this.ids[chunk][index] = id;
+		this.stockOnHand[chunk].set(index, stockOnHand);
+		this.reorderLevels[chunk][index] = reorderLevel;
+		this.prices[chunk].set(index, price);
+		this.size = slot + 1;
+		return slot;
+	}
+
+	/**
+	 * Copy the store, for example to write a point-in-time snapshot of it. Slots keep their
+	 * numbers. The caller must keep slots from being allocated meanwhile.
+	 * 
+	 * @return a new store with the same products and field values
+	 */
+	public ProductColumns copy() {
+		ProductColumns copy = new ProductColumns(this.chunkBits);
+		int size = this.size;
+		for (int slot = 0; slot < size; slot++) {
+			copy.allocate(getName(slot), getId(slot), getReorderLevel(slot), getStockOnHand(slot),
+					getPrice(slot));
+		}
+		return copy;
+	}
+
+	/**
+	 * Number of allocated slots
+	 * 
+	 * @return number of products in the store
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Column getters and setters for a slot
+	 */
+	public String getName(int slot) {
+		return this.names[slot >>> this.chunkBits][slot & this.chunkMask];
+	}
+
+	public String getId(int slot) {
+		return this.ids[slot >>> this.chunkBits][slot & this.chunkMask];
+	}
+
+	public int getStockOnHand(int slot) {
+		return this.stockOnHand[slot >>> this.chunkBits].get(slot & this.chunkMask);
+	}
+
+	public void setStockOnHand(int slot, int stockOnHand) {
+		this.stockOnHand[slot >>> this.chunkBits].set(slot & this.chunkMask, stockOnHand);
+	}
+
+	/**
+	 * Atomically add to the stock on hand of a slot
+	 * 
+	 * @param slot  slot of the product
+	 * @param delta quantity to add, negative for sales
+	 * @return the stock on hand before the change
+	 */
+	public int getAndAddStockOnHand(int slot, int delta) {
+		return this.stockOnHand[slot >>> this.chunkBits].getAndAdd(slot & this.chunkMask, delta);
+	}
+
+	public int getReorderLevel(int slot) {
+		return this.reorderLevels[slot >>> this.chunkBits][slot & this.chunkMask];
+	}
+
+	public long getPrice(int slot) {
+		return this.prices[slot >>> this.chunkBits].get(slot & this.chunkMask);
+	}
+
+	public void setPrice(int slot, long price) {
+		this.prices[slot >>> this.chunkBits].set(slot & this.chunkMask, price);
+	}
+
+	/**
+	 * Find the products whose stock on hand is at or below their reorder level
+	 * 
+	 * @return slots of those products, ascending
+	 */
+	public int[] slotsAtOrBelowReorderLevel() {
+		int[] slots = new int[16];
+		int count = 0;
+		for (int chunk = 0, base = 0; base < this.size; chunk++, base += this.chunkMask + 1) {
+			AtomicIntegerArray stock = this.stockOnHand[chunk];
+			int[] reorder = this.reorderLevels[chunk];
+			int length = Math.min(stock.length(), this.size - base);
+			for (int index = 0; index < length; index++) {
+				if (stock.get(index) <= reorder[index]) {
+					if (count == slots.length) {
+						slots = Arrays.copyOf(slots, count * 2);
+					}
+					slots[count++] = base + index;
+				}
+			}
+		}
+		return Arrays.copyOf(slots, count);
+	}
+
+	/**
+	 * Value of all stock on hand at current prices. Products with negative stock count as zero.
+	 * 
+	 * @return sum of stock on hand times price, in cents
+	 */
+	public long inventoryValue() {
+		long total = 0;
+		for (int chunk = 0, base = 0; base < this.size; chunk++, base += this.chunkMask + 1) {
+			AtomicIntegerArray stock = this.stockOnHand[chunk];
+			AtomicLongArray price = this.prices[chunk];
+			int length = Math.min(stock.length(), this.size - base);
+			for (int index = 0; index < length; index++) {
+				total += Math.max(stock.get(index), 0) * price.get(index);
+			}
+		}
+		return total;
+	}
+}
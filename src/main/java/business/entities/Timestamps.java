@@ -0,0 +1,30 @@
+package business.entities;
+
+import java.util.Calendar;
+
+/**
+ * Conversions between the epoch millisecond timestamps stored in the entities and the Calendar
+ * objects used at the API edge. Entities keep a primitive long instead of a Calendar, which is
+ * hundreds of bytes with its field arrays.
+ */
+public final class Timestamps {
+
+	/**
+	 * Utility class, not instantiated
+	 */
+	private Timestamps() {
+
+	}
+
+	/**
+	 * Build a Calendar in the default time zone for a timestamp
+	 * 
+	 * @param timestamp milliseconds since the epoch
+	 * @return a new Calendar set to timestamp
+	 */
+	public static Calendar toCalendar(long timestamp) {
+		Calendar calendar = Calendar.getInstance();
+		calendar.setTimeInMillis(timestamp);
+		return calendar;
+	}
+}
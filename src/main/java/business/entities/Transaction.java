@@ -5,7 +5,6 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.Calendar;
-import java.util.Iterator;
 import java.util.LinkedList;
 
 /**
@@ -13,16 +12,21 @@ import java.util.LinkedList;
  * automatically assigned a unique id.
  */
 public class Transaction implements Serializable {
-	private static final long serialVersionUID = 1L;
+	// Bumped when the date became epoch milliseconds; older files go through the legacy reader
+	private static final long serialVersionUID = 2L;
 	// Id of the transaction
 	private String transactionId;
-	// Date of the transaction
-	private Calendar date;
+	// Date of the transaction as epoch milliseconds
+	private long timestamp;
 	// list of lineItems (purchases) associated with the transaction
 	private LinkedList<LineItem> lineItems;
+	// Sum of the line totals in cents, kept up to date as line items are added
+	private long totalCost;
+	// Set once the transaction has been ended, no more line items may be added
+	private boolean closed;
 	private static final String TRANSACTION_ID_PREFIX = "T";
-	// Idcounter used to generate unique transaction ids
-	private static int idCounter = 0;
+	// Allocator of the numbers used to generate unique transaction ids
+	private static final IdAllocator idCounter = new IdAllocator();
 
 	/**
 	 * Creates the transaction with a given type and product name. The date is the current date.
@@ -32,11 +36,53 @@ public class Transaction implements Serializable {
 	 * @param name The name of product
 	 */
 	public Transaction() {
-		this.transactionId = Transaction.TRANSACTION_ID_PREFIX + ++Transaction.idCounter;
-		this.date = Calendar.getInstance();
+		this(System.currentTimeMillis());
+	}
+
+	/**
+	 * Creates a transaction dated at the given time. Generates and assigns a unique transaction
+	 * id.
+	 * 
+	 * @param timestamp date of the transaction as epoch milliseconds
+	 */
+	Transaction(long timestamp) {
+		this.transactionId = Transaction.TRANSACTION_ID_PREFIX + Transaction.idCounter.next();
+		this.timestamp = timestamp;
+		this.lineItems = new LinkedList<LineItem>();
+	}
+
+	/**
+	 * Creates a transaction whose id was generated before, e.g. when it is read back from a
+	 * journal. The id will not be generated again.
+	 * 
+	 * @param transactionId id of the transaction
+	 * @param timestamp     date of the transaction as epoch milliseconds
+	 */
+	public Transaction(String transactionId, long timestamp) {
+		this(transactionId, timestamp, true);
+	}
+
+	private Transaction(String transactionId, long timestamp, boolean reserve) {
+		if (reserve) {
+			Transaction.idCounter.reserve(transactionId, TRANSACTION_ID_PREFIX);
+		}
+		this.transactionId = transactionId;
+		this.timestamp = timestamp;
 		this.lineItems = new LinkedList<LineItem>();
 	}
 
+	/**
+	 * Creates a transaction read back from a snapshot. The snapshot restores the high water mark
+	 * of the transaction ids, so the id is not reserved.
+	 * 
+	 * @param transactionId id of the transaction
+	 * @param timestamp     date of the transaction as epoch milliseconds
+	 * @return the transaction, open until it is closed
+	 */
+	public static Transaction restored(String transactionId, long timestamp) {
+		return new Transaction(transactionId, timestamp, false);
+	}
+
 	/**
 	 * Getter for transactionId
 	 * 
@@ -58,10 +104,19 @@ public class Transaction implements Serializable {
 	/**
 	 * Getter for date
 	 * 
-	 * @return date of the transaction
+	 * @return a new Calendar set to the date of the transaction
 	 */
 	public Calendar getDate() {
-		return this.date;
+		return Timestamps.toCalendar(this.timestamp);
+	}
+
+	/**
+	 * Getter for the date as epoch milliseconds
+	 * 
+	 * @return milliseconds since the epoch at which the transaction was created
+	 */
+	public long getTimestamp() {
+		return this.timestamp;
 	}
 
 	/**
@@ -70,28 +125,71 @@ public class Transaction implements Serializable {
 	 * 
 	 * @param product
 	 * @param quantity
+	 * @return the added line item, or null if the transaction has already been closed
 	 */
-	public void addLineItem(Product product, int quantity) {
-		double productCost = product.getCurrentPrice();
-		double lineTotal = productCost * quantity;
+	public synchronized LineItem addLineItem(Product product, int quantity) {
+		if (this.closed) {
+			return null;
+		}
+		long productCost = product.getCurrentPriceCents();
+		long lineTotal = productCost * quantity;
 		LineItem newLineItem = new LineItem(product, quantity, lineTotal);
 		this.lineItems.add(newLineItem);
+		this.totalCost += lineTotal;
+		return newLineItem;
 	}
 
 	/**
-	 * Calculates total cost of the transaction by adding the line totals for every line item in the
-	 * transaction.
+	 * Add a LineItem whose line total was computed before, e.g. when the transaction is read back
+	 * from a journal at a time the product price may have changed.
+	 * 
+	 * @param product   product bought
+	 * @param quantity  quantity bought
+	 * @param lineTotal line total in cents
+	 * @return the added line item, or null if the transaction has already been closed
+	 */
+	public synchronized LineItem addLineItem(Product product, int quantity, long lineTotal) {
+		if (this.closed) {
+			return null;
+		}
+		LineItem lineItem = new LineItem(product, quantity, lineTotal);
+		this.lineItems.add(lineItem);
+		this.totalCost += lineTotal;
+		return lineItem;
+	}
+
+	/**
+	 * Close the transaction so that no more line items can be added. Only the first call succeeds,
+	 * which lets concurrent callers agree on who ends the transaction.
 	 * 
-	 * @return total cost of the transaction
+	 * @return true iff this call closed the transaction
 	 */
-	public double getTotalCost() {
-		double totalCost = 0;
-		Iterator<LineItem> lineItemsIterator = this.lineItems.iterator();
-		while (lineItemsIterator.hasNext()) {
-			LineItem lineItem = lineItemsIterator.next();
-			totalCost += lineItem.getLineTotal();
+	public synchronized boolean close() {
+		if (this.closed) {
+			return false;
 		}
-		return totalCost;
+		this.closed = true;
+		return true;
+	}
+
+	/**
+	 * Total cost of the transaction, the sum of the line totals for every line item in the
+	 * transaction.
+	 * 
+	 * @return total cost of the transaction in dollars
+	 */
+	public synchronized double getTotalCost() {
+		return Money.toDollars(this.totalCost);
+	}
+
+	/**
+	 * Total cost of the transaction, the sum of the line totals for every line item in the
+	 * transaction.
+	 * 
+	 * @return total cost of the transaction in cents
+	 */
+	public synchronized long getTotalCostCents() {
+		return this.totalCost;
 	}
 
 	/**
@@ -101,9 +199,10 @@ public class Transaction implements Serializable {
 	 * @return true iff the dates match
 	 */
 	public boolean onDate(Calendar date) {
-		return ((date.get(Calendar.YEAR) == this.date.get(Calendar.YEAR))
-				&& (date.get(Calendar.MONTH) == this.date.get(Calendar.MONTH))
-				&& (date.get(Calendar.DATE) == this.date.get(Calendar.DATE)));
+		Calendar transactionDate = getDate();
+		return ((date.get(Calendar.YEAR) == transactionDate.get(Calendar.YEAR))
+				&& (date.get(Calendar.MONTH) == transactionDate.get(Calendar.MONTH))
+				&& (date.get(Calendar.DATE) == transactionDate.get(Calendar.DATE)));
 	}
 
 	/**
@@ -114,8 +213,8 @@ public class Transaction implements Serializable {
 	 * @return true if the transaction was between the two dates
 	 */
 	public boolean betweenDates(Calendar startDate, Calendar endDate) {
-		return ((this.date.after(startDate) && this.date.before(endDate))
-				|| this.date.equals(startDate) || this.date.equals(endDate));
+		return this.timestamp >= startDate.getTimeInMillis()
+				&& this.timestamp <= endDate.getTimeInMillis();
 	}
 
 	/**
@@ -124,6 +223,7 @@ public class Transaction implements Serializable {
 	 * @return date with month, date, and year
 	 */
 	public String getFormattedDate() {
+		Calendar date = getDate();
 		return date.get(Calendar.MONTH) + "/" + date.get(Calendar.DATE) + "/"
 				+ date.get(Calendar.YEAR);
 	}
@@ -147,7 +247,46 @@ public class Transaction implements Serializable {
 	 */
 	public static void retrieve(ObjectInputStream input)
 			throws IOException, ClassNotFoundException {
-		Transaction.idCounter = (int) input.readObject();
+		Transaction.idCounter.restore((int) input.readObject());
+	}
+
+	/**
+	 * Extracts the number a transaction id was generated from, i.e. 12 for "T12"
+	 * 
+	 * @param transactionId id of a transaction
+	 * @return the numeric part of the id, or -1 if transactionId is not a well formed
+	 *         transaction id
+	 */
+	public static int parseTransactionNumber(String transactionId) {
+		return IdAllocator.parseNumber(transactionId, TRANSACTION_ID_PREFIX);
+	}
+
+	/**
+	 * Builds the id of a transaction from the number it was generated from
+	 * 
+	 * @param number numeric part of the id
+	 * @return the id, i.e. "T12" for 12
+	 */
+	public static String transactionIdOf(int number) {
+		return TRANSACTION_ID_PREFIX + number;
+	}
+
+	/**
+	 * High water mark of the generated transaction ids, for saving it in a snapshot
+	 * 
+	 * @return the number after which ids are still free
+	 */
+	public static int idHighWaterMark() {
+		return idCounter.highWaterMark();
+	}
+
+	/**
+	 * Continue generating transaction ids after a high water mark read from a snapshot
+	 * 
+	 * @param highWaterMark the saved high water mark
+	 */
+	public static void restoreIds(int highWaterMark) {
+		idCounter.restore(highWaterMark);
 	}
 
 	/**
@@ -157,6 +296,6 @@ public class Transaction implements Serializable {
 	 * @throws IOException
 	 */
 	public static void save(ObjectOutputStream output) throws IOException {
-		output.writeObject(idCounter);
+		output.writeObject(idCounter.highWaterMark());
 	}
 }
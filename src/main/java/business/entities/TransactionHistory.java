@@ -0,0 +1,270 @@
+package business.entities;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A member's transactions ordered by transaction date. The dates are kept as epoch milliseconds in
+ * an array parallel to the transactions, so a date range is found with two binary searches and
+ * only the transactions inside the range are visited. The history is guarded by its monitor, and
+ * iterators walk a copy of their range so they are not disturbed by later additions.
+ * 
+ * A history can be created with a Loader instead of its transactions. It is then read on its
+ * first use, so loading a snapshot does not have to build every member's history.
+ */
+public class TransactionHistory implements Iterable<Transaction>, Serializable {
+	private static final long serialVersionUID = 1L;
+	private static final int INITIAL_CAPACITY = 4;
+	// Epoch milliseconds of each transaction, ascending
+	private transient long[] timestamps = new long[INITIAL_CAPACITY];
+	// Transactions, parallel to timestamps
+	private transient Transaction[] transactions = new Transaction[INITIAL_CAPACITY];
+	// Number of transactions in the history
+	private transient int size;
+	// Reads the transactions on first use, null once they are in the arrays
+	private transient Loader loader;
+
+	/**
+	 * Reads the transactions of a history that was not loaded yet
+	 */
+	public interface Loader {
+		/**
+		 * Read the transactions
+		 * 
+		 * @return the transactions of the history, in date order
+		 */
+		List<Transaction> load();
+	}
+
+	/**
+	 * Creates an empty history
+	 */
+	public TransactionHistory() {
+	}
+
+	/**
+	 * Creates a history that is read on its first use
+	 * 
+	 * @param loader reads the transactions of the history
+	 */
+	public TransactionHistory(Loader loader) {
+		this.loader = loader;
+	}
+
+	/**
+	 * Add a transaction to the history. Transactions normally arrive in date order and are
+	 * appended; a transaction dated earlier than the latest one is inserted at its place.
+	 * 
+	 * @param transaction transaction to add
+	 * @return true iff transaction was added
+	 */
+	public synchronized boolean add(Transaction transaction) {
+		load();
+		if (this.size == this.transactions.length) {
+			int capacity = this.size * 2;
+			this.timestamps = Arrays.copyOf(this.timestamps, capacity);
+			this.transactions = Arrays.copyOf(this.transactions, capacity);
+		}
+		long timestamp = transaction.getTimestamp();
+		// Insert after transactions with the same date to keep the order they were added in
+		int index = upperBound(timestamp);
+		System.arraycopy(this.timestamps, index, this.timestamps, index + 1, this.size - index);
+		System.arraycopy(this.transactions, index, this.transactions, index + 1,
+				this.size - index);
+		this.timestamps[index] = timestamp;
+		this.transactions[index] = transaction;
+		this.size++;
+		return true;
+	}
+
+	/**
+	 * Get the transactions dated between two instants
+	 * 
+	 * @param startTime earliest epoch milliseconds (inclusive)
+	 * @param endTime   latest epoch milliseconds (inclusive)
+	 * @return iterator of the transactions in [startTime, endTime], in date order
+	 */
+	public synchronized Iterator<Transaction> between(long startTime, long endTime) {
+		load();
+		int start = lowerBound(startTime);
+		int end = Math.max(start, upperBound(endTime));
+		return new RangeIterator(Arrays.copyOfRange(this.transactions, start, end), 0, end - start);
+	}
+
+	/**
+	 * Number of transactions in the history
+	 * 
+	 * @return number of transactions
+	 */
+	public synchronized int size() {
+		load();
+		return this.size;
+	}
+
+	/**
+	 * Iterator of the whole history
+	 * 
+	 * @return iterator of all transactions, in date order
+	 */
+	@Override
+	public synchronized Iterator<Transaction> iterator() {
+		load();
+		return new RangeIterator(Arrays.copyOf(this.transactions, this.size), 0, this.size);
+	}
+
+	/**
+	 * Copy the history, leaving out some transactions. A history that was not read yet is not
+	 * read for the copy; its copy shares the loader. Transactions added to a history read it
+	 * first, so an unread history only holds transactions that were loaded.
+	 * 
+	 * @param excludedTransactionIds ids of transactions to leave out of the copy
+	 * @return the copy
+	 */
+	public synchronized TransactionHistory copyWithout(Set<String> excludedTransactionIds) {
+		if (this.loader != null) {
+			return new TransactionHistory(this.loader);
+		}
+		TransactionHistory copy = new TransactionHistory();
+		for (int index = 0; index < this.size; index++) {
+			if (!excludedTransactionIds.contains(this.transactions[index].getTransactionId())) {
+				copy.add(this.transactions[index]);
+			}
+		}
+		return copy;
+	}
+
+	/**
+	 * Checks whether the transactions were read
+	 * 
+	 * @return true iff the history holds its transactions
+	 */
+	synchronized boolean isLoaded() {
+		return this.loader == null;
+	}
+
+	/**
+	 * Read the transactions if the history was created with a loader. The loader is kept if
+	 * reading fails, so the next use tries again.
+	 */
+	private void load() {
+		if (this.loader == null) {
+			return;
+		}
+		List<Transaction> loaded = this.loader.load();
+		int capacity = Math.max(INITIAL_CAPACITY, loaded.size());
+		this.timestamps = new long[capacity];
+		this.transactions = new Transaction[capacity];
+		this.size = 0;
+		for (Transaction transaction : loaded) {
+			this.timestamps[this.size] = transaction.getTimestamp();
+			this.transactions[this.size] = transaction;
+			this.size++;
+		}
+		this.loader = null;
+	}
+
+	/**
+	 * Find the first index with a timestamp greater than or equal to time
+	 */
+	private int lowerBound(long time) {
+		int low = 0;
+		int high = this.size;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (this.timestamps[middle] < time) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Find the first index with a timestamp greater than time
+	 */
+	private int upperBound(long time) {
+		int low = 0;
+		int high = this.size;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (this.timestamps[middle] <= time) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Only the used part of the arrays is written
+	 * 
+	 * @param output stream the history is written to
+	 * @throws IOException
+	 */
+	private synchronized void writeObject(ObjectOutputStream output) throws IOException {
+		load();
+		output.defaultWriteObject();
+		output.writeInt(this.size);
+		for (int index = 0; index < this.size; index++) {
+			output.writeObject(this.transactions[index]);
+		}
+	}
+
+	/**
+	 * Rebuild the arrays from the written transactions
+	 * 
+	 * @param input stream the history is read from
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	private void readObject(ObjectInputStream input) throws IOException, ClassNotFoundException {
+		input.defaultReadObject();
+		int count = input.readInt();
+		int capacity = Math.max(INITIAL_CAPACITY, count);
+		this.timestamps = new long[capacity];
+		this.transactions = new Transaction[capacity];
+		for (int index = 0; index < count; index++) {
+			Transaction transaction = (Transaction) input.readObject();
+			this.transactions[index] = transaction;
+			this.timestamps[index] = transaction.getTimestamp();
+		}
+		this.size = count;
+	}
+
+	/**
+	 * Iterator over a slice of the transactions array
+	 */
+	private static class RangeIterator implements Iterator<Transaction> {
+		private Transaction[] transactions;
+		private int index;
+		private int end;
+
+		private RangeIterator(Transaction[] transactions, int start, int end) {
+			this.transactions = transactions;
+			this.index = start;
+			this.end = end;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return this.index < this.end;
+		}
+
+		@Override
+		public Transaction next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException("No such element");
+			}
+			return this.transactions[this.index++];
+		}
+	}
+}
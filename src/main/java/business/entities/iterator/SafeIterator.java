@@ -15,14 +15,14 @@ import business.facade.Result;
 
 /**
  * Adapter around an iterator that copies items in the adaptee to another object. This makes the
- * iterator yield read only items.
+ * iterator yield read only items. Every call to next() returns a new Result, so results may be
+ * kept after the iteration moves on.
  *
  * @param <T> Product, Member, Order, or Transaction
  */
 public class SafeIterator<T> implements Iterator<Result> {
     private Iterator<T> iterator;
     private Type type;
-    private Result result = new Result();
     public static final Type PRODUCT = new SafeProduct();
     public static final Type MEMBER = new SafeMember();
     public static final Type ORDER = new SafeOrder();
@@ -97,11 +97,11 @@ public class SafeIterator<T> implements Iterator<Result> {
 
     @Override
     public Result next() {
-        if (iterator.hasNext()) {
-            type.copy(result, iterator.next());
-        } else {
+        if (!iterator.hasNext()) {
             throw new NoSuchElementException("No such element");
         }
+        Result result = new Result();
+        type.copy(result, iterator.next());
         return result;
     }
 
@@ -0,0 +1,278 @@
+package business.facade;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Optional execution mode of the facade in which every mutating command is executed by a single
+ * writer thread. Callers publish commands into a pre-allocated ring buffer without taking locks
+ * and get a future that completes with the command's Result. The writer executes the commands in
+ * the order of their ring sequence numbers, which gives a deterministic order for journaling, and
+ * handles all commands that are waiting at once before it goes back to waiting. The journal
+ * records of such a batch are committed once, before any of its futures completes, so a batch
+ * costs one force of the journal however many commands it holds. The locks inside Grocery are
+ * then only ever taken by one thread and never contended.
+ * 
+ * Reads do not go through the ring. The facade's listing methods iterate published snapshots and
+ * the lookups use concurrent maps, so they can be called directly on the Grocery at any time.
+ * 
+ * A Request handed to the pipeline belongs to the pipeline until its future completes and must
+ * not be changed before. Futures are completed on the writer thread, so callers should not attach
+ * slow dependent actions to them except with the async variants.
+ */
+public class CommandPipeline implements AutoCloseable {
+	public static final int ADD_MEMBER = 1;
+	public static final int ADD_PRODUCT = 2;
+	public static final int ADD_LINE_ITEM = 3;
+	public static final int END_TRANSACTION = 4;
+	public static final int PROCESS_SHIPMENT = 5;
+	public static final int CHANGE_PRICE = 6;
+	// Times the writer checks for new commands before it parks
+	private static final int WRITER_SPINS = 64;
+	// Set in claimed by close, no sequence numbers are handed out after it
+	private static final long SEALED = Long.MIN_VALUE;
+	private final Grocery grocery;
+	// Pre-allocated slots, the capacity is a power of two
+	private final Slot[] slots;
+	private final int mask;
+	// Next sequence number to hand to a producer, with SEALED set once the pipeline is closed
+	private final AtomicLong claimed = new AtomicLong();
+	// Sequence number of the next command the writer will execute
+	private volatile long executed;
+	// Set while the writer is parked and has to be woken by producers
+	private volatile boolean writerParked;
+	private final Thread writer;
+
+	/**
+	 * Creates the pipeline and starts its writer thread
+	 * 
+	 * @param grocery  facade the commands are executed against
+	 * @param capacity minimum number of commands that can be waiting, rounded up to a power of two
+	 */
+	public CommandPipeline(Grocery grocery, int capacity) {
+		this.grocery = grocery;
+		int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+		this.slots = new Slot[size];
+		for (int index = 0; index < size; index++) {
+			this.slots[index] = new Slot();
+		}
+		this.mask = size - 1;
+		this.writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				executeCommands();
+			}
+		}, "command-writer");
+		this.writer.setDaemon(true);
+		this.writer.start();
+	}
+
+	/**
+	 * Mutating commands, see the Grocery methods of the same name
+	 * 
+	 * @param request request filled as for the Grocery method
+	 * @return future of the Result of the Grocery method
+	 */
+	public CompletableFuture<Result> addMember(Request request) {
+		return submit(ADD_MEMBER, request);
+	}
+
+	public CompletableFuture<Result> addProduct(Request request) {
+		return submit(ADD_PRODUCT, request);
+	}
+
+	public CompletableFuture<Result> addTransactionLineItem(Request request) {
+		return submit(ADD_LINE_ITEM, request);
+	}
+
+	public CompletableFuture<Result> endTransaction(Request request) {
+		return submit(END_TRANSACTION, request);
+	}
+
+	public CompletableFuture<Result> processShipment(Request request) {
+		return submit(PROCESS_SHIPMENT, request);
+	}
+
+	public CompletableFuture<Result> changePrice(Request request) {
+		return submit(CHANGE_PRICE, request);
+	}
+
+	/**
+	 * Publish a command into the ring. Waits while the ring is full. The command fails if the
+	 * pipeline was closed before it got a sequence number; otherwise the writer executes it, even
+	 * if close() is running meanwhile.
+	 * 
+	 * @param command one of the command constants
+	 * @param request request of the command
+	 * @return future of the command's Result
+	 */
+	public CompletableFuture<Result> submit(int command, Request request) {
+		CompletableFuture<Result> future = new CompletableFuture<Result>();
+		long sequence;
+		do {
+			sequence = this.claimed.get();
+			if ((sequence & SEALED) != 0) {
+				future.completeExceptionally(new IllegalStateException("Pipeline is closed"));
+				return future;
+			}
+		} while (!this.claimed.compareAndSet(sequence, sequence + 1));
+		// Wait for the writer to free the slot claimed one lap ago
+		while (sequence - this.executed >= this.slots.length) {
+			wakeWriter();
+			LockSupport.parkNanos(1_000);
+		}
+		Slot slot = this.slots[(int) sequence & this.mask];
+		slot.command = command;
+		slot.request = request;
+		slot.future = future;
+		slot.published = sequence;
+		wakeWriter();
+		return future;
+	}
+
+	/**
+	 * Stop handing out sequence numbers, then stop the writer after it has executed every command
+	 * that got one. Commands submitted after that fail.
+	 */
+	@Override
+	public void close() {
+		long claimed;
+		do {
+			claimed = this.claimed.get();
+		} while ((claimed & SEALED) == 0 && !this.claimed.compareAndSet(claimed, claimed | SEALED));
+		LockSupport.unpark(this.writer);
+		try {
+			this.writer.join();
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void wakeWriter() {
+		if (this.writerParked) {
+			LockSupport.unpark(this.writer);
+		}
+	}
+
+	/**
+	 * Writer loop: execute every published command in sequence order, in batches
+	 */
+	private void executeCommands() {
+		long next = 0;
+		int idle = 0;
+		while (true) {
+			Slot slot = this.slots[(int) next & this.mask];
+			if (slot.published != next) {
+				// Once sealed, every sequence number below the claimed ones will be published
+				if (this.claimed.get() == (next | SEALED)) {
+					return;
+				}
+				if (++idle < WRITER_SPINS) {
+					Thread.yield();
+					continue;
+				}
+				this.writerParked = true;
+				// Check again after announcing the park, a producer may have just published. A
+				// producer publishes before it reads writerParked, so one of them sees the other,
+				// and close() unparks the writer after it seals.
+				if (slot.published != next && this.claimed.get() != (next | SEALED)) {
+					LockSupport.park();
+				}
+				this.writerParked = false;
+				idle = 0;
+				continue;
+			}
+			idle = 0;
+			// Apply the batch of consecutive published commands, commit their journal records
+			// once, then complete their futures and free their slots at once
+			long first = next;
+			do {
+				execute(slot);
+				next++;
+				slot = this.slots[(int) next & this.mask];
+			} while (slot.published == next);
+			RuntimeException failure = null;
+			try {
+				Grocery.commitJournal();
+			} catch (RuntimeException re) {
+				failure = re;
+			}
+			for (long sequence = first; sequence < next; sequence++) {
+				complete(this.slots[(int) sequence & this.mask], failure);
+			}
+			this.executed = next;
+		}
+	}
+
+	/**
+	 * Execute the command of a slot without committing the journal and keep its outcome in the
+	 * slot
+	 */
+	private void execute(Slot slot) {
+		Request request = slot.request;
+		int command = slot.command;
+		slot.request = null;
+		try {
+			Result result;
+			switch (command) {
+			case ADD_MEMBER:
+				result = this.grocery.addMemberWithoutCommit(request);
+				break;
+			case ADD_PRODUCT:
+				result = this.grocery.addProductWithoutCommit(request);
+				break;
+			case ADD_LINE_ITEM:
+				result = this.grocery.addTransactionLineItem(request);
+				break;
+			case END_TRANSACTION:
+				result = this.grocery.endTransactionWithoutCommit(request);
+				break;
+			case PROCESS_SHIPMENT:
+				result = this.grocery.processShipmentWithoutCommit(request);
+				break;
+			case CHANGE_PRICE:
+				result = this.grocery.changePriceWithoutCommit(request);
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown command " + command);
+			}
+			slot.result = result;
+		} catch (RuntimeException re) {
+			slot.failure = re;
+		}
+	}
+
+	/**
+	 * Complete the future of an executed slot once the journal commit of its batch is done
+	 * 
+	 * @param slot          executed slot
+	 * @param commitFailure exception of the commit, null if the batch is durable
+	 */
+	private void complete(Slot slot, RuntimeException commitFailure) {
+		CompletableFuture<Result> future = slot.future;
+		Result result = slot.result;
+		RuntimeException failure = slot.failure != null ? slot.failure : commitFailure;
+		slot.future = null;
+		slot.result = null;
+		slot.failure = null;
+		if (failure != null) {
+			future.completeExceptionally(failure);
+		} else {
+			future.complete(result);
+		}
+	}
+
+	/**
+	 * A command slot of the ring. The published sequence number is written last by the producer
+	 * and read first by the writer, so the other fields are visible once it matches.
+	 */
+	private static class Slot {
+		private volatile long published = -1;
+		private int command;
+		private Request request;
+		private CompletableFuture<Result> future;
+		private Result result;
+		private RuntimeException failure;
+	}
+}
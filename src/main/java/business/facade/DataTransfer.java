@@ -4,8 +4,10 @@ import java.util.Calendar;
 import java.util.LinkedList;
 import business.entities.LineItem;
 import business.entities.Member;
+import business.entities.Money;
 import business.entities.Order;
 import business.entities.Product;
+import business.entities.Timestamps;
 import business.entities.Transaction;
 
 /**
@@ -20,10 +22,12 @@ public abstract class DataTransfer {
 	 */
 	private final static int NONE_INT = Integer.MIN_VALUE;
 	private final static double NONE_DOUBLE = Double.MIN_VALUE;
+	private final static long NONE_CENTS = Long.MIN_VALUE;
 	private final static String NONE_STRING = "none";
 	private final static int NONE_YEAR = 1900;
 	private final static int NONE_MONTH = 1;
 	private final static int NONE_DAY = 1;
+	private final static long NONE_TIMESTAMP = noneTimestamp();
 	private final static Product NONE_PRODUCT =
 			new Product(NONE_STRING, NONE_STRING, NONE_INT, NONE_INT, NONE_DOUBLE);
 	private final static LinkedList<LineItem> NONE_LINE_ITEMS = new LinkedList<>();
@@ -32,27 +36,29 @@ public abstract class DataTransfer {
 	private String memberName;
 	private String memberAddress;
 	private String memberPhoneNumber;
-	private Calendar dateJoined;
-	private double feePaid;
+	// Dates are kept as epoch milliseconds, Calendars are only built by the getters
+	private long dateJoined;
+	// Money is kept in cents, the dollar getters and setters convert at the edge
+	private long feePaid;
 	// Product fields
 	private String productId;
 	private String productName;
-	private double currentPrice;
+	private long currentPrice;
 	private int stockOnHand;
 	private int reorderLevel;
 	// Order fields
 	private String orderId;
 	private Product orderProduct;
 	private int orderQuantity;
-	private Calendar orderDate;
+	private long orderDate;
 	// Transaction fields
 	private String transactionId;
-	private Calendar transactionDate;
+	private long transactionDate;
 	private LinkedList<LineItem> lineItems;
 	// Checkout fields
 	private int checkoutQuantity;
-	private double checkoutTotal;
-	private double lineTotal;
+	private long checkoutTotal;
+	private long lineTotal;
 
 	/**
 	 * constructor sets all fields to none
@@ -97,18 +103,26 @@ public abstract class DataTransfer {
 	}
 
 	public Calendar getDateJoined() {
-		return this.dateJoined;
+		return Timestamps.toCalendar(this.dateJoined);
 	}
 
 	public void setDateJoined(Calendar dateJoined) {
-		this.dateJoined = dateJoined;
+		this.dateJoined = dateJoined.getTimeInMillis();
 	}
 
 	public double getFeePaid() {
-		return this.feePaid;
+		return toDollars(this.feePaid);
 	}
 
 	public void setFeePaid(double feePaid) {
+		this.feePaid = Money.toCents(feePaid);
+	}
+
+	public long getFeePaidCents() {
+		return this.feePaid;
+	}
+
+	public void setFeePaidCents(long feePaid) {
 		this.feePaid = feePaid;
 	}
 
@@ -140,10 +154,18 @@ public abstract class DataTransfer {
 	}
 
 	public double getCurrentPrice() {
-		return this.currentPrice;
+		return toDollars(this.currentPrice);
 	}
 
 	public void setCurrentPrice(double currentPrice) {
+		this.currentPrice = Money.toCents(currentPrice);
+	}
+
+	public long getCurrentPriceCents() {
+		return this.currentPrice;
+	}
+
+	public void setCurrentPriceCents(long currentPrice) {
 		this.currentPrice = currentPrice;
 	}
 
@@ -183,11 +205,11 @@ public abstract class DataTransfer {
 	}
 
 	public Calendar getOrderDate() {
-		return this.orderDate;
+		return Timestamps.toCalendar(this.orderDate);
 	}
 
 	public void setOrderDate(Calendar orderDate) {
-		this.orderDate = orderDate;
+		this.orderDate = orderDate.getTimeInMillis();
 	}
 
 	/**
@@ -202,11 +224,11 @@ public abstract class DataTransfer {
 	}
 
 	public Calendar getTransactionDate() {
-		return transactionDate;
+		return Timestamps.toCalendar(transactionDate);
 	}
 
 	public void setTransactionDate(Calendar transactionDate) {
-		this.transactionDate = transactionDate;
+		this.transactionDate = transactionDate.getTimeInMillis();
 	}
 
 	public LinkedList<LineItem> getLineItems() {
@@ -226,18 +248,34 @@ public abstract class DataTransfer {
 	}
 
 	public double getCheckoutTotal() {
-		return this.checkoutTotal;
+		return toDollars(this.checkoutTotal);
 	}
 
 	public void setCheckoutTotal(double checkoutTotal) {
+		this.checkoutTotal = Money.toCents(checkoutTotal);
+	}
+
+	public long getCheckoutTotalCents() {
+		return this.checkoutTotal;
+	}
+
+	public void setCheckoutTotalCents(long checkoutTotal) {
 		this.checkoutTotal = checkoutTotal;
 	}
 
 	public double getLineTotal() {
-		return this.lineTotal;
+		return toDollars(this.lineTotal);
 	}
 
 	public void setLineTotal(double lineTotal) {
+		this.lineTotal = Money.toCents(lineTotal);
+	}
+
+	public long getLineTotalCents() {
+		return this.lineTotal;
+	}
+
+	public void setLineTotalCents(long lineTotal) {
 		this.lineTotal = lineTotal;
 	}
 
@@ -250,7 +288,7 @@ public abstract class DataTransfer {
 		this.productId = product.getProductId();
 		this.productName = product.getProductName();
 		this.stockOnHand = product.getStockOnHand();
-		this.currentPrice = product.getCurrentPrice();
+		this.currentPrice = product.getCurrentPriceCents();
 		this.reorderLevel = product.getReorderLevel();
 	}
 
@@ -264,8 +302,8 @@ public abstract class DataTransfer {
 		this.memberName = member.getMemberName();
 		this.memberPhoneNumber = member.getMemberPhoneNumber();
 		this.memberAddress = member.getMemberAddress();
-		this.feePaid = member.getFeePaid();
-		this.dateJoined = member.getDateJoined();
+		this.feePaid = member.getFeePaidCents();
+		this.dateJoined = member.getJoinTimestamp();
 	}
 
 	/**
@@ -277,7 +315,7 @@ public abstract class DataTransfer {
 		this.orderId = order.getOrderId();
 		this.orderProduct = order.getProduct();
 		this.orderQuantity = order.getQuantity();
-		this.orderDate = order.getDate();
+		this.orderDate = order.getTimestamp();
 	}
 
 	/**
@@ -287,9 +325,30 @@ public abstract class DataTransfer {
 	 */
 	public void setTransactionFields(Transaction transaction) {
 		this.transactionId = transaction.getTransactionId();
-		this.transactionDate = transaction.getDate();
+		this.transactionDate = transaction.getTimestamp();
 		this.lineItems = transaction.getLineItems();
-		this.checkoutTotal = transaction.getTotalCost();
+		this.checkoutTotal = transaction.getTotalCostCents();
+	}
+
+	/**
+	 * Convert an amount in cents to dollars, keeping the none value recognizable
+	 * 
+	 * @param cents amount in cents
+	 * @return amount in dollars, or the none value
+	 */
+	private static double toDollars(long cents) {
+		return cents == NONE_CENTS ? NONE_DOUBLE : Money.toDollars(cents);
+	}
+
+	/**
+	 * Compute the none value of the date fields once
+	 * 
+	 * @return epoch milliseconds of the none date
+	 */
+	private static long noneTimestamp() {
+		Calendar noneCalendar = Calendar.getInstance();
+		noneCalendar.set(DataTransfer.NONE_YEAR, DataTransfer.NONE_MONTH, DataTransfer.NONE_DAY);
+		return noneCalendar.getTimeInMillis();
 	}
 
 	/**
@@ -299,33 +358,31 @@ public abstract class DataTransfer {
 	 */
 	public void reset() {
 		// member fields
-		Calendar noneCalendar = Calendar.getInstance();
-		noneCalendar.set(DataTransfer.NONE_YEAR, DataTransfer.NONE_MONTH, DataTransfer.NONE_DAY);
-		dateJoined = noneCalendar;
+		dateJoined = DataTransfer.NONE_TIMESTAMP;
 		memberId = DataTransfer.NONE_STRING;
 		memberName = DataTransfer.NONE_STRING;
 		memberAddress = DataTransfer.NONE_STRING;
 		memberPhoneNumber = DataTransfer.NONE_STRING;
-		feePaid = DataTransfer.NONE_INT;
+		feePaid = DataTransfer.NONE_CENTS;
 		// product fields
 		productId = DataTransfer.NONE_STRING;
 		productName = DataTransfer.NONE_STRING;
 		stockOnHand = DataTransfer.NONE_INT;
-		currentPrice = DataTransfer.NONE_DOUBLE;
+		currentPrice = DataTransfer.NONE_CENTS;
 		reorderLevel = DataTransfer.NONE_INT;
 		// order fields
 		orderId = NONE_STRING;
 		orderProduct = NONE_PRODUCT;
 		orderQuantity = NONE_INT;
-		orderDate = noneCalendar;
+		orderDate = NONE_TIMESTAMP;
 		// transaction fields
 		transactionId = NONE_STRING;
-		transactionDate = noneCalendar;
+		transactionDate = NONE_TIMESTAMP;
 		lineItems = NONE_LINE_ITEMS;
 		// checkout fields
 		checkoutQuantity = NONE_INT;
-		checkoutTotal = NONE_DOUBLE;
-		lineTotal = NONE_DOUBLE;
+		checkoutTotal = NONE_CENTS;
+		lineTotal = NONE_CENTS;
 	}
 
 }
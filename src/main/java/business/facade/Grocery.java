@@ -1,28 +1,49 @@
 package business.facade;
 
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import business.entities.LineItem;
 import business.entities.Member;
 import business.entities.Order;
 import business.entities.Product;
+import business.entities.ProductColumns;
 import business.entities.Transaction;
-import business.entities.iterator.FilteredIterator;
 import business.entities.iterator.SafeIterator;
 import business.tests.AutomatedTester;
 
 /**
  * Grocery facade class that encapsulates the complexity of the various functions provided. This
  * class follows a singleton pattern and acts as the sole contact point for the user interface.
+ * The facade may be used from several threads at once. Stock is adjusted atomically without locks,
+ * and price changes of the same product are serialized by per-product locks.
+ * Once data has been saved or retrieved, every change is also appended to a journal, and
+ * retrieving the data replays the journal on top of the last snapshot. Checkpoints write a new
+ * snapshot and start a new journal segment; they hold back changes only while the data is copied
+ * in memory.
  */
 public class Grocery implements Serializable {
 	private static final long serialVersionUID = 1L;
@@ -32,85 +53,298 @@ public class Grocery implements Serializable {
 	private MemberList members = new MemberList();
 	// The coop's outstanding product orders
 	private OrderList orders = new OrderList();
-	// The coop's member transactions
-	private TransactionList transactions = new TransactionList();
+	// The coop's open (not yet ended) transactions. In-flight checkouts are not saved.
+	private transient TransactionList transactions;
+	// Locks serializing price updates of the same product
+	private transient StripedLocks productLocks;
+	// Shared by changes, exclusive while a checkpoint copies the data
+	private transient ReentrantReadWriteLock mutationGate;
+	// Creates restock orders in the background
+	private transient RestockPipeline restockPipeline;
+	// Number of the last snapshot this grocery was saved as or loaded from
+	private long snapshotEpoch;
+	// Journal segment changes are appended to, null while changes are not journaled
+	private transient volatile Journal journal;
+	// Epoch of that journal segment
+	private transient long journalEpoch;
+	// File the grocery was last saved to or retrieved from
+	private transient volatile File dataFile;
+	// Ids of the transactions ended since a running checkpoint copied the data, otherwise null
+	private transient volatile Set<String> endedSinceCapture;
+	// Runs the periodic checkpoints, null unless they were started
+	private transient ScheduledExecutorService checkpoints;
 	// singleton static instance
-	private static Grocery grocery;
+	private static volatile Grocery grocery;
+	// Number of locks product updates are spread over
+	private static final int PRODUCT_LOCK_STRIPES = 256;
+	// Default time a transaction may sit idle before it is treated as an abandoned cart
+	private static final long DEFAULT_TRANSACTION_TIMEOUT_MINUTES = 30;
+	// Abandoned transactions are swept this many times per timeout, but at least every minute
+	private static final long SWEEPS_PER_TIMEOUT = 4;
+	private static final long MAX_SWEEP_INTERVAL = TimeUnit.MINUTES.toNanos(1);
+	// File the grocery is saved to by default
+	private static final String DATA_FILE = "GroceryData";
+	// Appended to the data file name, with the epoch, to name a journal segment
+	private static final String JOURNAL_SUFFIX = ".journal.";
+	// Appended to the data file name while a snapshot is written
+	private static final String TEMPORARY_SUFFIX = ".tmp";
+	// Held while a checkpoint runs
+	private static final Object CHECKPOINT_LOCK = new Object();
+	// How journals opened from now on make changes durable. Without a window, a batch is what
+	// queued up while the previous batch was being forced.
+	private static volatile GroupCommitWriter.Settings journalSettings =
+			new GroupCommitWriter.Settings(GroupCommitWriter.Policy.GROUPED, 0,
+					TimeUnit.MILLISECONDS, 256);
+	// Told about the restock orders of every grocery, none by default
+	private static volatile RestockListener restockListener;
 
 	/**
-	 * A custom collection of Transaction objects. Implemented with a LinkedList.
+	 * Receives the restock orders the grocery creates in the background after checkouts
 	 */
-	private class TransactionList implements Iterable<Transaction>, Serializable {
-		private static final long serialVersionUID = 1L;
-		// LinkedList adaptee
-		private List<Transaction> transactions = new LinkedList<Transaction>();
+	public interface RestockListener {
+		/**
+		 * Called on the restock pipeline thread with the orders created by one batch of checkouts
+		 * 
+		 * @param orders the new or enlarged orders, as they were when they were created
+		 */
+		void restockOrdersCreated(Iterator<Result> orders);
+	}
+
+	/**
+	 * A registry of the transactions that have been begun but not yet ended, indexed by
+	 * transaction id. Ended transactions are released once they are handed to the member.
+	 * Transactions without any activity for longer than the timeout are considered abandoned: a
+	 * lookup treats them as gone, and a sweep over the open transactions evicts them. The sweep
+	 * runs at most once per sweep interval, on the call that first finds the interval passed, so
+	 * inserts and lookups stay lock free and memory tracks in-flight checkouts only.
+	 */
+	private class TransactionList implements Iterable<Transaction> {
+		// ConcurrentHashMap adaptee of open transactions by id
+		private Map<String, OpenTransaction> transactions =
+				new ConcurrentHashMap<String, OpenTransaction>();
+		// Idle time after which an open transaction is evicted
+		private volatile long timeoutNanos =
+				TimeUnit.MINUTES.toNanos(DEFAULT_TRANSACTION_TIMEOUT_MINUTES);
+		// System.nanoTime() after which the next sweep is due
+		private final AtomicLong nextSweep = new AtomicLong(System.nanoTime());
 
 		/**
-		 * Insert transaction into list of transactions.
+		 * Insert transaction into the open transactions.
 		 * 
 		 * @param transaction transaction to add to the list.
 		 * @return true iff transaction is successfully added
 		 */
 		public boolean insertTransaction(Transaction transaction) {
-			return this.transactions.add(transaction);
+			long now = System.nanoTime();
+			evictAbandoned(now);
+			OpenTransaction openTransaction = new OpenTransaction(transaction, now);
+			return this.transactions.putIfAbsent(transaction.getTransactionId(),
+					openTransaction) == null;
 		}
 
 		/**
-		 * Retrieve a transaction object by it's id
+		 * Retrieve an open transaction object by it's id. Counts as activity on the transaction.
 		 * 
 		 * @param id id of desired transaction
-		 * @return transaction with the specified id if it exists. Otherwise, null.
+		 * @return transaction with the specified id if it is open. Otherwise, null.
 		 */
 		public Transaction getTransactionById(String id) {
-			Iterator<Transaction> iterator = this.transactions.iterator();
-			if (!iterator.hasNext()) {
+			long now = System.nanoTime();
+			evictAbandoned(now);
+			OpenTransaction openTransaction = this.transactions.get(id);
+			if (openTransaction == null) {
+				return null;
+			}
+			// Abandoned, but not swept yet
+			if (now - openTransaction.lastActivity >= this.timeoutNanos) {
+				this.transactions.remove(id, openTransaction);
 				return null;
 			}
+			openTransaction.lastActivity = now;
+			return openTransaction.transaction;
+		}
+
+		/**
+		 * Release an ended transaction from the open transactions.
+		 * 
+		 * @param id id of the transaction
+		 * @return the removed transaction, or null if it was not open
+		 */
+		public Transaction removeTransaction(String id) {
+			OpenTransaction openTransaction = this.transactions.remove(id);
+			return openTransaction == null ? null : openTransaction.transaction;
+		}
+
+		/**
+		 * Change the idle time after which open transactions are evicted. Applies to open
+		 * transactions as well.
+		 * 
+		 * @param timeout  idle time
+		 * @param timeUnit unit of timeout
+		 */
+		public void setTimeout(long timeout, TimeUnit timeUnit) {
+			this.timeoutNanos = timeUnit.toNanos(timeout);
+			this.nextSweep.set(System.nanoTime());
+		}
+
+		/**
+		 * Evict the open transactions that have been idle for longer than the timeout, if a sweep
+		 * is due. Only the caller that moves the deadline of the next sweep sweeps; everybody
+		 * else only reads the deadline.
+		 * 
+		 * @param now System.nanoTime() of the call
+		 */
+		private void evictAbandoned(long now) {
+			long due = this.nextSweep.get();
+			if (now - due < 0) {
+				return;
+			}
+			long timeout = this.timeoutNanos;
+			long interval = Math.min(timeout / SWEEPS_PER_TIMEOUT, MAX_SWEEP_INTERVAL);
+			if (!this.nextSweep.compareAndSet(due, now + interval)) {
+				return;
+			}
+			Iterator<OpenTransaction> iterator = this.transactions.values().iterator();
 			while (iterator.hasNext()) {
-				Transaction transaction = iterator.next();
-				if (transaction.getTransactionId().equals(id)) {
-					return transaction;
+				if (now - iterator.next().lastActivity >= timeout) {
+					iterator.remove();
 				}
 			}
-			return null;
 		}
 
 		/**
 		 * TransactionList iterator function.
 		 * 
-		 * @return iterator used to iterate through all transactions stored in list
+		 * @return iterator used to iterate through all open transactions
 		 */
 		@Override
 		public Iterator<Transaction> iterator() {
-			return this.transactions.iterator();
+			long now = System.nanoTime();
+			evictAbandoned(now);
+			long timeout = this.timeoutNanos;
+			List<Transaction> openTransactions = new LinkedList<Transaction>();
+			for (OpenTransaction openTransaction : this.transactions.values()) {
+				if (now - openTransaction.lastActivity < timeout) {
+					openTransactions.add(openTransaction.transaction);
+				}
+			}
+			return openTransactions.iterator();
+		}
+	}
+
+	/**
+	 * An open transaction together with the time it was last used.
+	 */
+	private static class OpenTransaction {
+		private final Transaction transaction;
+		// System.nanoTime() of the last lookup of the transaction
+		private volatile long lastActivity;
+
+		private OpenTransaction(Transaction transaction, long lastActivity) {
+			this.transaction = transaction;
+			this.lastActivity = lastActivity;
 		}
 	}
 
 	/**
-	 * A custom collection of Orders. Implemented with a linked list
+	 * A custom collection of Orders. A product has at most one outstanding order; ordering more of
+	 * a product that already has one increases the quantity of that order. Implemented with a
+	 * linked hash map keyed by order id, plus a hash map from each product to its outstanding
+	 * order, so both lookups take constant time. Orders are created and received
+	 * far less often than products are sold, so the collection is simply guarded by its monitor.
+	 * Iteration over all orders uses a shared snapshot of copies of the orders, with their
+	 * quantities at the time of the copy, that is copied again only after a change.
 	 */
 	private class OrderList implements Iterable<Order>, Serializable {
 		private static final long serialVersionUID = 1L;
-		// LinkedList adaptee used to store Order objects
-		private List<Order> orders = new LinkedList<Order>();
+		// LinkedHashMap adaptee used to store Order objects in the order they were placed
+		private Map<String, Order> orders = new LinkedHashMap<String, Order>();
+		// Outstanding order of each product
+		private Map<Product, Order> productOrders = new HashMap<Product, Order>();
+		// Point-in-time copy of the orders for iteration
+		private SnapshotCache<Order> snapshots = new SnapshotCache<Order>();
 
 		/**
 		 * get all outstanding product orders
 		 * 
-		 * @return iterator of all outstanding orders
+		 * @return iterator of the outstanding orders at the time of the call
 		 */
 		public Iterator<Order> getOutstandingOrders() {
-			return this.orders.iterator();
+			long version = this.snapshots.version();
+			List<Order> snapshot = this.snapshots.get(version);
+			if (snapshot == null) {
+				snapshot = this.snapshots.put(version, copyOrders());
+			}
+			return snapshot.iterator();
+		}
+
+		/**
+		 * get the outstanding order of one product
+		 * 
+		 * @param product the product ordered
+		 * @return the outstanding order for product, or null if there is none
+		 */
+		public synchronized Order getOutstandingOrder(Product product) {
+			return this.productOrders.get(product);
 		}
 
 		/**
-		 * Adds order to list of orders.
+		 * Order a quantity of a product. If the product already has an outstanding order, the
+		 * quantity is added to that order instead of creating another one.
 		 * 
-		 * @param order order to add to the list
-		 * @return true iff order added
+		 * @param product   the product to order
+		 * @param quantity  the quantity to order
+		 * @param timestamp date of a new order as epoch milliseconds
+		 * @return the new order, or the outstanding order the quantity was merged into
 		 */
-		public boolean addOrder(Order order) {
-			return orders.add(order);
+		public synchronized Order placeOrder(Product product, int quantity, long timestamp) {
+			Order order = this.productOrders.get(product);
+			if (order != null) {
+				order.addQuantity(quantity);
+			} else {
+				order = new Order(product, quantity, timestamp);
+				this.orders.put(order.getOrderId(), order);
+				this.productOrders.put(product, order);
+			}
+			this.snapshots.invalidate();
+			Journal journal = Grocery.this.journal;
+			if (journal != null) {
+				journal.placeOrder(order, quantity);
+			}
+			return order;
+		}
+
+		/**
+		 * Add an order read back from a snapshot
+		 * 
+		 * @param order the outstanding order
+		 */
+		public synchronized void loadOrder(Order order) {
+			this.orders.put(order.getOrderId(), order);
+			this.productOrders.put(order.getProduct(), order);
+			this.snapshots.invalidate();
+		}
+
+		/**
+		 * Replay a journaled order. Adds the quantity to the outstanding order with the id, or
+		 * recreates the order if it is not outstanding.
+		 * 
+		 * @param orderId   id of the order
+		 * @param product   the product ordered
+		 * @param quantity  the quantity ordered
+		 * @param timestamp date of the order as epoch milliseconds
+		 */
+		public synchronized void restoreOrder(String orderId, Product product, int quantity,
+				long timestamp) {
+			Order order = this.orders.get(orderId);
+			if (order != null) {
+				order.addQuantity(quantity);
+			} else {
+				order = new Order(orderId, product, quantity, timestamp);
+				this.orders.put(orderId, order);
+				this.productOrders.put(product, order);
+			}
+			this.snapshots.invalidate();
 		}
 
 		/**
@@ -119,15 +353,18 @@ public class Grocery implements Serializable {
 		 * @param orderId id of order to be removed
 		 * @return the removed order item if it was removed, else null
 		 */
-		public Order removeOrder(String orderId) {
-			Iterator<Order> matchedOrders = new FilteredIterator<Order>(this.iterator(),
-					order -> order.getOrderId().equals(orderId));
+		public synchronized Order removeOrder(String orderId) {
+			Order order = this.orders.remove(orderId);
 			// Order with id doesn't exist. Return null.
-			if (!matchedOrders.hasNext()) {
+			if (order == null) {
 				return null;
 			}
-			Order order = matchedOrders.next();
-			this.orders.remove(order);
+			this.snapshots.invalidate();
+			this.productOrders.remove(order.getProduct());
+			Journal journal = Grocery.this.journal;
+			if (journal != null) {
+				journal.processShipment(orderId);
+			}
 			return order;
 		}
 
@@ -135,17 +372,25 @@ public class Grocery implements Serializable {
 		 * Checks whether an order with a given order id exists.
 		 * 
 		 * @param orderId the id of the order
-		 * @return true iff the order exists
+		 * @return the order iff it exists. Otherwise null.
 		 * 
 		 */
-		public Order search(String orderId) {
-			for (Iterator<Order> iterator = orders.iterator(); iterator.hasNext();) {
-				Order order = (Order) iterator.next();
-				if (order.getOrderId().equals(orderId)) {
-					return order;
-				}
+		public synchronized Order search(String orderId) {
+			return this.orders.get(orderId);
+		}
+
+		/**
+		 * Copy the outstanding orders, with their current quantities
+		 * 
+		 * @return copies of the orders, in the order they were placed
+		 */
+		public synchronized List<Order> copyOrders() {
+			List<Order> copies = new ArrayList<Order>(this.orders.size());
+			for (Order order : this.orders.values()) {
+				copies.add(Order.restored(order.getOrderId(), order.getProduct(),
+						order.getQuantity(), order.getTimestamp()));
 			}
-			return null;
+			return copies;
 		}
 
 		/**
@@ -155,76 +400,198 @@ public class Grocery implements Serializable {
 		 */
 		@Override
 		public Iterator<Order> iterator() {
-			return this.orders.iterator();
+			return getOutstandingOrders();
 		}
 
 	}
 
 	/**
-	 * A custom collection of Product objects. Implemented with linked list
+	 * A custom collection of Product objects. The product fields are stored column-wise in a
+	 * ProductColumns store with one dense slot per product, and the Product objects are views over
+	 * their slots. Products are indexed by the normalized (lower case) product id, so lookups do not
+	 * have to walk the whole stock. Lookups are lock free; adding products and scans over the views
+	 * are guarded by the collection's monitor. Iteration uses a shared snapshot of the products,
+	 * views over a copy of the columns, that is copied again only after a product is added or a
+	 * stock or price changes. Changes of stock and price therefore go through the collection.
 	 */
 	private class Stock implements Iterable<Product>, Serializable {
 		private static final long serialVersionUID = 1L;
-		// LinkedList adaptee
-		private List<Product> products = new LinkedList<Product>();
+		// Column store holding the fields of all products
+		private ProductColumns columns = new ProductColumns();
+		// Product views by slot, in the order products were added
+		private List<Product> products = new ArrayList<Product>();
+		// ConcurrentHashMap index of products by lower case id
+		private Map<String, Product> productIds = new ConcurrentHashMap<String, Product>();
+		// Products by name, for prefix searches
+		private PrefixIndex<Product> productNames = new PrefixIndex<Product>();
+		// Point-in-time copy of the products for iteration
+		private SnapshotCache<Product> snapshots = new SnapshotCache<Product>();
+
+		/**
+		 * Creates an empty stock
+		 */
+		public Stock() {
+		}
+
+		/**
+		 * Creates the stock of the products held by a store
+		 * 
+		 * @param columns  store holding the products
+		 * @param products views over all slots of columns, by slot
+		 */
+		public Stock(ProductColumns columns, List<Product> products) {
+			this.columns = columns;
+			for (Product product : products) {
+				String key = product.getProductId().toLowerCase();
+				this.products.add(product);
+				productIds.put(key, product);
+				productNames.add(product.getProductName(), key, product);
+			}
+		}
 
 		/**
-		 * Checks whether a product with a given product id exists.
+		 * Checks whether a product with a given product id exists. Ids are compared ignoring
+		 * case, so every front end finds a product however the id is typed.
 		 * 
 		 * @param productId the id of the product
-		 * @return true iff the product exists
+		 * @return the product iff it exists. Otherwise null.
 		 * 
 		 */
 		public Product search(String productId) {
-			for (Iterator<Product> iterator = products.iterator(); iterator.hasNext();) {
-				Product product = iterator.next();
-				if (product.getProductId().toLowerCase().equals(productId)) {
-					return product;
-				}
-			}
-			return null;
+			// Returns productId itself when it already is lower case
+			return productIds.get(productId.toLowerCase());
 		}
 
 		/**
 		 * Adding a product into the stock
 		 * 
-		 * @param product the product to be added
-		 * @return true iff the product could be added. Currently always true
+		 * @param name         name of the product
+		 * @param productId    id of the product
+		 * @param reorderLevel reorder level of the product
+		 * @param stockOnHand  initial stock of the product
+		 * @param price        price of the product in cents
+		 * @return the added product, or null if a product with the same id is already in stock
 		 */
-		public boolean addProduct(Product product) {
+		public synchronized Product addProduct(String name, String productId, int reorderLevel,
+				int stockOnHand, long price) {
+			String key = productId.toLowerCase();
+			if (productIds.containsKey(key)) {
+				return null;
+			}
+			int slot = columns.allocate(name, productId, reorderLevel, stockOnHand, price);
+			Product product = new Product(columns, slot);
+			Journal journal = Grocery.this.journal;
+			if (journal != null) {
+				journal.addProduct(product);
+			}
 			products.add(product);
-			return true;
+			snapshots.invalidate();
+			productIds.put(key, product);
+			productNames.add(name, key, product);
+			return product;
+		}
+
+		/**
+		 * Add to the stock on hand of a product, safe against concurrent sales and shipments
+		 * 
+		 * @param product  product in stock
+		 * @param quantity quantity to add, negative when stock is sold
+		 * @return stock on hand before the change
+		 */
+		public int addStockOnHand(Product product, int quantity) {
+			int stockOnHand = product.getAndAddStockOnHand(quantity);
+			snapshots.invalidate();
+			return stockOnHand;
+		}
+
+		/**
+		 * Change the price of a product
+		 * 
+		 * @param product product in stock
+		 * @param price   new price in cents
+		 */
+		public void changePrice(Product product, long price) {
+			product.setCurrentPriceCents(price);
+			snapshots.invalidate();
+		}
+
+		/**
+		 * Copy the store holding the products
+		 * 
+		 * @return a copy of the columns
+		 */
+		public synchronized ProductColumns copyColumns() {
+			return columns.copy();
 		}
 
 		/**
 		 * Returns an iterator to all products
 		 * 
-		 * @return iterator to the stock
+		 * @return iterator of the products in stock at the time of the call
 		 */
 		public Iterator<Product> iterator() {
-			return products.iterator();
+			long version = snapshots.version();
+			List<Product> snapshot = snapshots.get(version);
+			if (snapshot == null) {
+				synchronized (this) {
+					ProductColumns copy = columns.copy();
+					List<Product> views = new ArrayList<Product>(copy.size());
+					for (int slot = 0; slot < copy.size(); slot++) {
+						views.add(new Product(copy, slot));
+					}
+					snapshot = snapshots.put(version, views);
+				}
+			}
+			return snapshot.iterator();
 		}
 
 		/**
 		 * Get products whose name start with specified string
 		 * 
 		 * @param name prefix of product name
-		 * @return a list with products whose name starts with name
+		 * @return a list with products whose name starts with name (case insensitive), in name
+		 *         order
 		 */
 		public Iterator<Product> retrieveProductInfo(String name) {
-			Iterator<Product> iterator = this.products.iterator();
-			return new FilteredIterator<Product>(iterator, product -> product.getProductName()
-					.toLowerCase().startsWith(name.toLowerCase()));
+			return this.productNames.startingWith(name);
+		}
+
+		/**
+		 * Get products whose stock on hand is at or below their reorder level
+		 * 
+		 * @return a list with those products, in the order they were added
+		 */
+		public synchronized Iterator<Product> atOrBelowReorderLevel() {
+			List<Product> lowProducts = new ArrayList<Product>();
+			for (int slot : columns.slotsAtOrBelowReorderLevel()) {
+				lowProducts.add(products.get(slot));
+			}
+			return lowProducts.iterator();
+		}
+
+		/**
+		 * Value of the stock on hand of all products at their current prices
+		 * 
+		 * @return inventory value in cents
+		 */
+		public long inventoryValue() {
+			return columns.inventoryValue();
 		}
 	}
 
 	/**
-	 * Custom collection of Member objects. Implemented with linked list.
+	 * Custom collection of Member objects. Implemented with a concurrent hash map keyed by the
+	 * numeric part of the member id, so lookups, inserts and removals never block each other.
+	 * Iteration uses a shared, sorted snapshot that is rebuilt only after members change.
 	 */
 	private class MemberList implements Iterable<Member>, Serializable {
 		private static final long serialVersionUID = 1L;
-		// LinkedList adaptee
-		private List<Member> members = new LinkedList<Member>();
+		// ConcurrentHashMap adaptee
+		private Map<Integer, Member> members = new ConcurrentHashMap<Integer, Member>();
+		// Members by name, for prefix searches
+		private PrefixIndex<Member> memberNames = new PrefixIndex<Member>();
+		// Point-in-time copy of the members for iteration
+		private SnapshotCache<Member> snapshots = new SnapshotCache<Member>();
 
 		/**
 		 * Checks whether a member with a given member id exists.
@@ -233,13 +600,11 @@ public class Grocery implements Serializable {
 		 * @return Member iff member exists. Otherwise null.
 		 */
 		public Member search(String memberId) {
-			for (Iterator<Member> iterator = members.iterator(); iterator.hasNext();) {
-				Member member = iterator.next();
-				if (member.getMemberId().equals(memberId)) {
-					return member;
-				}
+			int memberNumber = Member.parseMemberNumber(memberId);
+			if (memberNumber < 0) {
+				return null;
 			}
-			return null;
+			return members.get(memberNumber);
 		}
 
 		/**
@@ -249,7 +614,13 @@ public class Grocery implements Serializable {
 		 * @return true iff the member could be inserted. Currently always true
 		 */
 		public boolean insertMember(Member member) {
-			members.add(member);
+			Journal journal = Grocery.this.journal;
+			if (journal != null) {
+				journal.addMember(member);
+			}
+			members.put(Member.parseMemberNumber(member.getMemberId()), member);
+			snapshots.invalidate();
+			memberNames.add(member.getMemberName(), member.getMemberId(), member);
 			return true;
 		}
 
@@ -260,36 +631,63 @@ public class Grocery implements Serializable {
 		 * @return member that was removed. Otherwise null if member did not exist.
 		 */
 		public Member removeMember(String memberId) {
-			Member memberToRemove = search(memberId);
-			if (memberToRemove == null) {
+			int memberNumber = Member.parseMemberNumber(memberId);
+			if (memberNumber < 0) {
 				return null;
 			}
-			this.members.remove(memberToRemove);
-			return memberToRemove;
+			Member removedMember = this.members.remove(memberNumber);
+			if (removedMember != null) {
+				Journal journal = Grocery.this.journal;
+				if (journal != null) {
+					journal.removeMember(removedMember.getMemberId());
+				}
+				snapshots.invalidate();
+				memberNames.remove(removedMember.getMemberName(), removedMember.getMemberId());
+			}
+			return removedMember;
 		}
 
 		/**
 		 * Member iterator method
 		 * 
-		 * @return iterator of all members held in linked list
+		 * @return iterator of the members at the time of the call, in the order they joined
 		 */
 		@Override
 		public Iterator<Member> iterator() {
-			return members.iterator();
+			long version = snapshots.version();
+			List<Member> snapshot = snapshots.get(version);
+			if (snapshot == null) {
+				snapshot = snapshots.put(version, sortedMembers());
+			}
+			return snapshot.iterator();
+		}
+
+		/**
+		 * Copy the members sorted by member number
+		 */
+		private List<Member> sortedMembers() {
+			Integer[] memberNumbers = members.keySet().toArray(new Integer[0]);
+			Arrays.sort(memberNumbers);
+			List<Member> sortedMembers = new ArrayList<Member>(memberNumbers.length);
+			for (Integer memberNumber : memberNumbers) {
+				Member member = members.get(memberNumber);
+				// Skip members removed since the keys were copied
+				if (member != null) {
+					sortedMembers.add(member);
+				}
+			}
+			return sortedMembers;
 		}
 
 		/**
 		 * gives you a list of members whose name starts with specified string (case insensitive)
 		 * 
-		 * @param name string of beginning of member name you want
-		 * @return a list with members whose name starts with name
+		 * @param name  string of beginning of member name you want
+		 * @param limit maximum number of members to return
+		 * @return a list with at most limit members whose name starts with name, in name order
 		 */
-		public Iterator<Member> retrieveMemberInfo(String name) {
-			// Convert prefix to lower case to avoid case sensitivity issues.
-			String prefix = name.toLowerCase();
-			Iterator<Member> iterator = this.members.iterator();
-			return new FilteredIterator<Member>(iterator,
-					member -> member.getMemberName().toLowerCase().startsWith(prefix));
+		public Iterator<Member> retrieveMemberInfo(String name, int limit) {
+			return this.memberNames.startingWith(name, limit);
 		}
 	}
 
@@ -297,20 +695,25 @@ public class Grocery implements Serializable {
 	 * Private for the singleton pattern creates the stock and member collection objects
 	 */
 	private Grocery() {
-
+		initTransients();
 	}
 
 	/**
-	 * Supports the singleton pattern
+	 * Supports the singleton pattern. Safe to call from any thread.
 	 * 
 	 * @return the singleton object
 	 */
 	public static Grocery instance() {
-		if (grocery == null) {
-			return grocery = new Grocery();
-		} else {
-			return grocery;
+		Grocery instance = grocery;
+		if (instance == null) {
+			synchronized (Grocery.class) {
+				if (grocery == null) {
+					grocery = new Grocery();
+				}
+				instance = grocery;
+			}
 		}
+		return instance;
 	}
 
 	/**
@@ -320,14 +723,32 @@ public class Grocery implements Serializable {
 	 * @return Result with member fields filled with created Member
 	 */
 	public Result addMember(Request request) {
+		return committed(addMemberWithoutCommit(request));
+	}
+
+	/**
+	 * Add a member without waiting for the journal to make it durable
+	 * 
+	 * @param request request as for addMember
+	 * @return Result as for addMember
+	 */
+	Result addMemberWithoutCommit(Request request) {
 		Result result = new Result();
 		String name = request.getMemberName();
 		String address = request.getMemberAddress();
 		String phoneNumber = request.getMemberPhoneNumber();
 		Calendar joinDate = request.getDateJoined();
-		double feePaid = request.getFeePaid();
+		long feePaid = request.getFeePaidCents();
 		Member member = new Member(name, address, phoneNumber, joinDate, feePaid);
-		if (members.insertMember(member)) {
+		boolean inserted;
+		Lock gate = this.mutationGate.readLock();
+		gate.lock();
+		try {
+			inserted = members.insertMember(member);
+		} finally {
+			gate.unlock();
+		}
+		if (inserted) {
 			result.setResultCode(Result.OPERATION_COMPLETED);
 			result.setMemberFields(member);
 			return result;
@@ -355,13 +776,21 @@ public class Grocery implements Serializable {
 	 *         exist, return a result with appropriate result code.
 	 */
 	public Result removeMember(Request request) {
-		Member removedMember = this.members.removeMember(request.getMemberId());
+		Member removedMember;
+		Lock gate = this.mutationGate.readLock();
+		gate.lock();
+		try {
+			removedMember = this.members.removeMember(request.getMemberId());
+		} finally {
+			gate.unlock();
+		}
 		Result result = new Result();
 		// Member did not exist.
 		if (removedMember == null) {
 			result.setResultCode(Result.NO_SUCH_MEMBER);
 			return result;
 		}
+		commitJournal();
 		result.setResultCode(Result.OPERATION_COMPLETED);
 		result.setMemberFields(removedMember);
 		return result;
@@ -375,7 +804,20 @@ public class Grocery implements Serializable {
 	 * @return an iterator of members whose name start with specified string
 	 */
 	public Iterator<Result> retrieveMemberInfo(Request request) {
-		Iterator<Member> filteredMembers = this.members.retrieveMemberInfo(request.getMemberName());
+		return retrieveMemberInfo(request, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Get a read only list of at most limit results for members that have names that start with
+	 * request.getMemberName()
+	 * 
+	 * @param request the request object which contains specified member name
+	 * @param limit   maximum number of members to return
+	 * @return an iterator of members whose name start with specified string, in name order
+	 */
+	public Iterator<Result> retrieveMemberInfo(Request request, int limit) {
+		Iterator<Member> filteredMembers =
+				this.members.retrieveMemberInfo(request.getMemberName(), limit);
 		return new SafeIterator<Member>(filteredMembers, SafeIterator.MEMBER);
 	}
 
@@ -427,20 +869,38 @@ public class Grocery implements Serializable {
 	 *         object with appropriate result code.
 	 */
 	public Result addProduct(Request instance) {
+		return committed(addProductWithoutCommit(instance));
+	}
+
+	/**
+	 * Add a product to stock without waiting for the journal to make it durable
+	 * 
+	 * @param instance request as for addProduct
+	 * @return Result as for addProduct
+	 */
+	Result addProductWithoutCommit(Request instance) {
 		String productName = instance.getProductName();
 		String productId = instance.getProductId();
 		int productStock = instance.getStockOnHand();
 		int reorderQuantity = instance.getReorderLevel();
-		double productPrice = instance.getCurrentPrice();
-		Product newProduct =
-				new Product(productName, productId, reorderQuantity, productStock, productPrice);
-		this.stock.addProduct(newProduct);
-		// Immediately create order for double of the reorder quantity
-		int orderQuantity = reorderQuantity * 2;
-		Order initialOrder = new Order(newProduct, orderQuantity, Calendar.getInstance());
-		boolean success = this.orders.addOrder(initialOrder);
+		long productPrice = instance.getCurrentPriceCents();
+		Product newProduct;
+		Lock gate = this.mutationGate.readLock();
+		gate.lock();
+		try {
+			newProduct = this.stock.addProduct(productName, productId, reorderQuantity,
+					productStock, productPrice);
+			// Immediately create order for double of the reorder quantity
+			if (newProduct != null) {
+				int orderQuantity = reorderQuantity * 2;
+				this.orders.placeOrder(newProduct, orderQuantity, System.currentTimeMillis());
+			}
+		} finally {
+			gate.unlock();
+		}
 		Result result = new Result();
-		if (!success) {
+		// A product with the same id is already in stock
+		if (newProduct == null) {
 			result.setResultCode(Result.OPERATION_FAILED);
 			return result;
 		}
@@ -459,6 +919,25 @@ public class Grocery implements Serializable {
 		return new SafeIterator<Product>(iterator, SafeIterator.PRODUCT);
 	}
 
+	/**
+	 * Get read only list of products whose stock on hand is at or below their reorder level
+	 * 
+	 * @return SafeIterator of the products that are low on stock
+	 */
+	public Iterator<Result> getProductsAtOrBelowReorderLevel() {
+		Iterator<Product> iterator = this.stock.atOrBelowReorderLevel();
+		return new SafeIterator<Product>(iterator, SafeIterator.PRODUCT);
+	}
+
+	/**
+	 * Get the value of all stock on hand at current prices
+	 * 
+	 * @return inventory value in cents
+	 */
+	public long getInventoryValue() {
+		return this.stock.inventoryValue();
+	}
+
 	/**
 	 * Return readonly list of products whose name start with specified string
 	 * 
@@ -475,13 +954,40 @@ public class Grocery implements Serializable {
 	 * Change price of a product in stock
 	 * 
 	 * @param request Request object filled with product id of product that needs price changed
-	 * @return Result object with filled product fields
+	 * @return Result object with filled product fields. If product does not exist, a Result object
+	 *         is returned with appropriate result code.
 	 */
 	public Result changePrice(Request request) {
+		return committed(changePriceWithoutCommit(request));
+	}
+
+	/**
+	 * Change the price of a product without waiting for the journal to make it durable
+	 * 
+	 * @param request request as for changePrice
+	 * @return Result as for changePrice
+	 */
+	Result changePriceWithoutCommit(Request request) {
 		Result result = new Result();
-		double newPrice = request.getCurrentPrice();
+		long newPrice = request.getCurrentPriceCents();
 		Product product = this.stock.search(request.getProductId());
-		product.setCurrentPrice(newPrice);
+		if (product == null) {
+			result.setResultCode(Result.PRODUCT_NOT_FOUND);
+			return result;
+		}
+		Lock gate = this.mutationGate.readLock();
+		gate.lock();
+		try {
+			synchronized (this.productLocks.lockFor(product)) {
+				this.stock.changePrice(product, newPrice);
+				Journal journal = this.journal;
+				if (journal != null) {
+					journal.changePrice(product.getProductId(), newPrice);
+				}
+			}
+		} finally {
+			gate.unlock();
+		}
 		result.setResultCode(Result.OPERATION_COMPLETED);
 		result.setProductFields(product);
 		return result;
@@ -498,6 +1004,21 @@ public class Grocery implements Serializable {
 		return new SafeIterator<Order>(iterator, SafeIterator.ORDER);
 	}
 
+	/**
+	 * Get the outstanding orders of a single product. A product has at most one outstanding order.
+	 * 
+	 * @param request Request object with product id filled
+	 * @return SafeIterator of the product's outstanding order. Empty if the product does not
+	 *         exist or has nothing on order.
+	 */
+	public Iterator<Result> getOutstandingOrders(Request request) {
+		Product product = this.stock.search(request.getProductId());
+		Order order = product == null ? null : this.orders.getOutstandingOrder(product);
+		Iterator<Order> iterator = order == null ? Collections.<Order>emptyIterator()
+				: Collections.singletonList(order).iterator();
+		return new SafeIterator<Order>(iterator, SafeIterator.ORDER);
+	}
+
 	/**
 	 * Process an outstanding order and update product stock
 	 * 
@@ -505,20 +1026,37 @@ public class Grocery implements Serializable {
 	 * @return Result object with product fields filled from product that had its stock updated
 	 */
 	public Result processShipment(Request request) {
+		return committed(processShipmentWithoutCommit(request));
+	}
+
+	/**
+	 * Process an outstanding order without waiting for the journal to make it durable
+	 * 
+	 * @param request request as for processShipment
+	 * @return Result as for processShipment
+	 */
+	Result processShipmentWithoutCommit(Request request) {
 		Result result = new Result();
 		String orderId = request.getOrderId();
-		Order order = this.orders.search(orderId);
+		Order order;
+		Lock gate = this.mutationGate.readLock();
+		gate.lock();
+		try {
+			// Order no longer outstanding, remove from orders
+			order = this.orders.removeOrder(orderId);
+			// Order was found, update stock with order quantity + stock on hand
+			if (order != null) {
+				this.stock.addStockOnHand(order.getProduct(), order.getQuantity());
+			}
+		} finally {
+			gate.unlock();
+		}
 		// Order was not found
 		if (order == null) {
 			result.setResultCode(Result.ORDER_NOT_FOUND);
 			return result;
 		}
-		// Order was found, update stock with order quantity + stock on hand
 		Product product = order.getProduct();
-		int newStock = product.getStockOnHand() + order.getQuantity();
-		product.setStockOnHand(newStock);
-		// Order no longer outstanding, remove from orders
-		this.orders.removeOrder(orderId);
 		result.setProductFields(product);
 		result.setResultCode(Result.OPERATION_COMPLETED);
 		return result;
@@ -547,12 +1085,15 @@ public class Grocery implements Serializable {
 			result.setResultCode(Result.PRODUCT_NOT_FOUND);
 			return result;
 		}
-		double lineTotal = currentProduct.getCurrentPrice() * checkoutQuantity;
-		currentTransaction.addLineItem(currentProduct, checkoutQuantity);
-		double checkoutCost = currentTransaction.getTotalCost();
+		LineItem lineItem = currentTransaction.addLineItem(currentProduct, checkoutQuantity);
+		// Transaction was ended by another caller in the meantime
+		if (lineItem == null) {
+			result.setResultCode(Result.TRANSACTION_NOT_FOUND);
+			return result;
+		}
 		result.setResultCode(Result.OPERATION_COMPLETED);
-		result.setLineTotal(lineTotal);
-		result.setCheckoutTotal(checkoutCost);
+		result.setLineTotalCents(lineItem.getLineTotalCents());
+		result.setCheckoutTotalCents(currentTransaction.getTotalCostCents());
 		return result;
 	}
 
@@ -575,13 +1116,27 @@ public class Grocery implements Serializable {
 	 * instance variable
 	 * 
 	 * @param request Request object with transaction id and member id.
-	 * @return Result object with filled transaction fields. If member does not exist, a Result
-	 *         object with appropriate result code will be returned.
+	 * @return Result object with filled transaction fields. If the transaction is not open or the
+	 *         member does not exist, a Result object with appropriate result code will be returned.
 	 */
 	public Result endTransaction(Request request) {
+		return committed(endTransactionWithoutCommit(request));
+	}
+
+	/**
+	 * End a transaction without waiting for the journal to make it durable
+	 * 
+	 * @param request request as for endTransaction
+	 * @return Result as for endTransaction
+	 */
+	Result endTransactionWithoutCommit(Request request) {
 		Result result = new Result();
 		String transactionId = request.getTransactionId();
 		Transaction transaction = this.transactions.getTransactionById(transactionId);
+		if (transaction == null) {
+			result.setResultCode(Result.TRANSACTION_NOT_FOUND);
+			return result;
+		}
 		String memberId = request.getMemberId();
 		Member member = this.members.search(memberId);
 		// Member wasn't found, cannot add transaction to their transactions instance variable
@@ -589,18 +1144,51 @@ public class Grocery implements Serializable {
 			result.setResultCode(Result.NO_SUCH_MEMBER);
 			return result;
 		}
-		// Add the transaction to member
-		member.addNewUserTransaction(transaction);
-		// Make any necessary orders for stock that hits reorder level
-		this.updateStock(transaction);
+		Lock gate = this.mutationGate.readLock();
+		gate.lock();
+		try {
+			// Close the transaction. Only one caller can end a transaction.
+			if (!transaction.close()) {
+				result.setResultCode(Result.TRANSACTION_NOT_FOUND);
+				return result;
+			}
+			// Keep the transaction out of the histories a running checkpoint copies
+			Set<String> ended = this.endedSinceCapture;
+			if (ended != null) {
+				ended.add(transactionId);
+			}
+			// Add the transaction to member, it is no longer open
+			this.transactions.removeTransaction(transactionId);
+			member.addNewUserTransaction(transaction);
+			Journal journal = this.journal;
+			if (journal != null) {
+				journal.endTransaction(transaction, member.getMemberId());
+			}
+			// Make any necessary orders for stock that hits reorder level
+			this.updateStock(transaction);
+		} finally {
+			gate.unlock();
+		}
 		result.setResultCode(Result.OPERATION_COMPLETED);
 		result.setTransactionFields(transaction);
 		return result;
 	}
 
 	/**
-	 * Update stock after processing a transaction. Creates orders for products that hit their
-	 * reorder quantities.
+	 * Set how long a begun transaction may go without activity before it is discarded as an
+	 * abandoned cart.
+	 * 
+	 * @param timeout  idle time
+	 * @param timeUnit unit of timeout
+	 */
+	public void setTransactionTimeout(long timeout, TimeUnit timeUnit) {
+		this.transactions.setTimeout(timeout, timeUnit);
+	}
+
+	/**
+	 * Update stock after processing a transaction. Stock is decremented atomically. The sale that
+	 * takes stock from above the reorder level to at or below it hands the product to the restock
+	 * pipeline, which creates the order in the background.
 	 * 
 	 * @param transaction Transaction created from a checkout.
 	 */
@@ -611,26 +1199,76 @@ public class Grocery implements Serializable {
 			LineItem lineItem = iterator.next();
 			Product product = lineItem.getProduct();
 			int lineItemQuantity = lineItem.getQuantity();
-			int stockOnHand = product.getStockOnHand();
+			int stockOnHand = this.stock.addStockOnHand(product, -lineItemQuantity);
 			int reorderLevel = product.getReorderLevel();
 			int newStockOnHand = stockOnHand - lineItemQuantity;
-			product.setStockOnHand(newStockOnHand);
-			// If quantity in stock is less than or equal to reorder level, create new order
-			if (newStockOnHand <= reorderLevel) {
-				int orderQuantity = reorderLevel * 2;
-				Order restockOrder = new Order(product, orderQuantity, Calendar.getInstance());
-				this.orders.addOrder(restockOrder);
-				// Print a message informing user that a restock order was created
-				System.out.println("\nCreating restock order for " + product.getProductName());
-				System.out.println("Order:");
-				System.out.println(" - Order ID: " + restockOrder.getOrderId());
-				System.out.println(" - Order Quantity: " + restockOrder.getQuantity());
-				System.out.println(" - Order Product: " + product.getProductName());
+			// If this sale brought stock down to the reorder level, request a new order
+			if (stockOnHand > reorderLevel && newStockOnHand <= reorderLevel) {
+				this.restockPipeline.reorderLevelReached(product);
 			}
 		}
 		return;
 	}
 
+	/**
+	 * Order restock for a product, called by the restock pipeline. Nothing is ordered if stock has
+	 * been replenished meanwhile. If the product already has an outstanding order, the restock
+	 * quantity is merged into it.
+	 * 
+	 * @param product product that reached its reorder level
+	 * @return the new or enlarged order, or null if none was needed
+	 */
+	private Order createRestockOrder(Product product) {
+		int reorderLevel = product.getReorderLevel();
+		if (product.getStockOnHand() > reorderLevel) {
+			return null;
+		}
+		int orderQuantity = reorderLevel * 2;
+		Lock gate = this.mutationGate.readLock();
+		gate.lock();
+		try {
+			return this.orders.placeOrder(product, orderQuantity, System.currentTimeMillis());
+		} finally {
+			gate.unlock();
+		}
+	}
+
+	/**
+	 * Create the restock pipeline of this grocery
+	 * 
+	 * @return a running pipeline that creates orders with createRestockOrder
+	 */
+	private RestockPipeline newRestockPipeline() {
+		return new RestockPipeline(new RestockPipeline.Restocker() {
+			@Override
+			public Order restock(Product product) {
+				return createRestockOrder(product);
+			}
+
+			@Override
+			public void restocked(List<Order> orders) {
+				RestockListener listener = restockListener;
+				if (listener == null) {
+					return;
+				}
+				List<Result> results = new ArrayList<Result>(orders.size());
+				Iterator<Result> iterator =
+						new SafeIterator<Order>(orders.iterator(), SafeIterator.ORDER);
+				while (iterator.hasNext()) {
+					results.add(iterator.next());
+				}
+				listener.restockOrdersCreated(results.iterator());
+			}
+		});
+	}
+
+	/**
+	 * Wait until the restock orders of all checkouts ended so far have been created
+	 */
+	public void awaitRestockOrders() {
+		this.restockPipeline.flush();
+	}
+
 	/**
 	 * Retrieve a product by its product Id
 	 * 
@@ -652,19 +1290,78 @@ public class Grocery implements Serializable {
 	}
 
 	/**
-	 * Deserialize saved grocery data
+	 * Open transactions, locks, the restock pipeline and the journal are not serialized. Start
+	 * with an empty registry, new locks and a new pipeline after deserialization.
+	 * 
+	 * @param input stream the grocery is read from
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	private void readObject(ObjectInputStream input) throws IOException, ClassNotFoundException {
+		input.defaultReadObject();
+		initTransients();
+	}
+
+	/**
+	 * Create the parts of the grocery that are not serialized
+	 */
+	private void initTransients() {
+		this.transactions = new TransactionList();
+		this.productLocks = new StripedLocks(PRODUCT_LOCK_STRIPES);
+		this.mutationGate = new ReentrantReadWriteLock();
+		this.restockPipeline = newRestockPipeline();
+	}
+
+	/**
+	 * Deserialize saved grocery data from the default data file and replay its journal
 	 * 
 	 * @return instance of Grocery if successful deserialization occured. Otherwise, returns null.
 	 */
 	public static Grocery retrieveData() {
+		return retrieveData(new File(DATA_FILE));
+	}
+
+	/**
+	 * Deserialize saved grocery data and replay the journal segments written since it was saved.
+	 * Later changes are appended to the newest segment. The data file is only ever replaced by a
+	 * complete snapshot, so it always holds the newest complete one; a snapshot left half written
+	 * by an interrupted checkpoint is discarded, and so are segments the snapshot already covers.
+	 * 
+	 * @param dataFile file the grocery was saved to
+	 * @return instance of Grocery if successful deserialization occured. Otherwise, returns null.
+	 */
+	public static synchronized Grocery retrieveData(File dataFile) {
+		Grocery previous = grocery;
+		if (previous != null) {
+			previous.stopCheckpoints();
+			previous.closeJournal();
+		}
+		temporaryFile(dataFile).delete();
+		long[] segments = journalSegments(dataFile);
 		try {
-			FileInputStream savedFile = new FileInputStream("GroceryData");
-			ObjectInputStream inputStream = new ObjectInputStream(savedFile);
-			grocery = (Grocery) inputStream.readObject();
-			Member.retrieve(inputStream);
-			Order.retrieve(inputStream);
-			Transaction.retrieve(inputStream);
-			return grocery;
+			Grocery retrieved;
+			if (SnapshotCodec.isSnapshot(dataFile)) {
+				retrieved = fromSnapshot(SnapshotCodec.read(dataFile));
+			} else if (dataFile.exists()) {
+				retrieved = fromSnapshot(LegacyData.read(dataFile));
+			} else if (segments.length > 0) {
+				// Changes journaled before the first save
+				retrieved = new Grocery();
+			} else {
+				return null;
+			}
+			try {
+				retrieved.openJournal(dataFile, segments);
+			} catch (IOException ioe) {
+				retrieved.restockPipeline.close();
+				throw ioe;
+			}
+			grocery = retrieved;
+			// The previous grocery is replaced, its restock worker can go
+			if (previous != null) {
+				previous.restockPipeline.close();
+			}
+			return retrieved;
 		} catch (ClassNotFoundException cnfe) {
 			cnfe.printStackTrace();
 			return null;
@@ -674,28 +1371,520 @@ public class Grocery implements Serializable {
 		}
 	}
 
+	/**
+	 * Build a grocery from the contents of a snapshot
+	 * 
+	 * @param contents the data read from the snapshot
+	 * @return the grocery, not journaling yet
+	 */
+	private static Grocery fromSnapshot(SnapshotCodec.Contents contents) {
+		Grocery loaded = new Grocery();
+		loaded.snapshotEpoch = contents.epoch;
+		loaded.stock = loaded.new Stock(contents.columns, contents.products);
+		for (Member member : contents.members) {
+			loaded.members.insertMember(member);
+		}
+		for (Order order : contents.orders) {
+			loaded.orders.loadOrder(order);
+		}
+		return loaded;
+	}
 
 	/**
-	 * Serialize Grocery into a data file to be loaded at a later time.
+	 * Serialize the grocery into a data file in the legacy format, for tests and benchmarks of
+	 * the migration
 	 * 
-	 * @return true iff serialization occured without error. Else, return false.
+	 * @param dataFile file to write
+	 * @throws IOException if the file cannot be written
 	 */
-	public static boolean save() {
+	static synchronized void writeLegacyData(File dataFile) throws IOException {
+		Grocery current = instance();
+		List<Member> members = new ArrayList<Member>();
+		Iterator<Member> iterator = current.members.iterator();
+		while (iterator.hasNext()) {
+			members.add(iterator.next());
+		}
+		LegacyData.write(dataFile, new SnapshotCodec.Contents(0, current.stock.copyColumns(),
+				null, members, current.orders.copyOrders()));
+	}
+
+	/**
+	 * Rewrite a legacy data file as a snapshot of epoch 0, the epoch of the journal segment
+	 * written next to legacy data. Files that already are snapshots are left alone.
+	 * 
+	 * @param dataFile the data file
+	 * @return true iff the data file is a snapshot afterwards
+	 */
+	public static synchronized boolean migrateLegacyData(File dataFile) {
 		try {
-			FileOutputStream dataFile = new FileOutputStream("GroceryData");
-			ObjectOutputStream outputStream = new ObjectOutputStream(dataFile);
-			outputStream.writeObject(grocery);
-			Member.save(outputStream);
-			Order.save(outputStream);
-			Transaction.save(outputStream);
-			dataFile.close();
+			if (SnapshotCodec.isSnapshot(dataFile)) {
+				return true;
+			}
+			File temporaryFile = temporaryFile(dataFile);
+			SnapshotCodec.write(temporaryFile, LegacyData.read(dataFile));
+			Files.move(temporaryFile.toPath(), dataFile.toPath(),
+					StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
 			return true;
+		} catch (ClassNotFoundException cnfe) {
+			cnfe.printStackTrace();
+			return false;
 		} catch (IOException ioe) {
 			ioe.printStackTrace();
 			return false;
 		}
 	}
 
+	/**
+	 * Replay the journal segments of the loaded snapshot and open the newest one for appending
+	 * 
+	 * @param dataFile the data file the snapshot was loaded from
+	 * @param segments epochs of the existing journal segments, ascending
+	 * @throws IOException if a segment cannot be read or written
+	 */
+	private void openJournal(File dataFile, long[] segments) throws IOException {
+		Replay replay = new Replay();
+		long epoch = this.snapshotEpoch;
+		for (int index = 0; index < segments.length; index++) {
+			File segment = journalFile(dataFile, segments[index]);
+			if (segments[index] < this.snapshotEpoch) {
+				// Covered by the snapshot, left over from a checkpoint that was interrupted
+				segment.delete();
+			} else if (index < segments.length - 1) {
+				Journal.replay(segment, segments[index], replay);
+			} else {
+				epoch = segments[index];
+			}
+		}
+		this.journal =
+				Journal.recover(journalFile(dataFile, epoch), epoch, replay, journalSettings);
+		this.journalEpoch = epoch;
+		this.dataFile = dataFile;
+		placeMissingRestockOrders();
+	}
+
+	/**
+	 * Order restock for the products at or below their reorder level that have nothing on order.
+	 * The restock pipeline journals its order after the sale that reached the reorder level, so
+	 * a crash in between replays the sale without the order.
+	 */
+	private void placeMissingRestockOrders() {
+		boolean placed = false;
+		Iterator<Product> lowProducts = this.stock.atOrBelowReorderLevel();
+		while (lowProducts.hasNext()) {
+			Product product = lowProducts.next();
+			if (this.orders.getOutstandingOrder(product) == null
+					&& createRestockOrder(product) != null) {
+				placed = true;
+			}
+		}
+		if (placed) {
+			commitJournal();
+		}
+	}
+
+	/**
+	 * Checkpoint the grocery into the default data file
+	 * 
+	 * @return true iff serialization occured without error. Else, return false.
+	 */
+	public static boolean save() {
+		return save(new File(DATA_FILE));
+	}
+
+	/**
+	 * Checkpoint the grocery into a data file to be loaded at a later time. Changes are journaled
+	 * next to the data file from now on. Pending restock orders are created first so that they
+	 * are saved.
+	 * 
+	 * @param dataFile file to save the grocery to
+	 * @return true iff serialization occured without error. Else, return false.
+	 */
+	public static boolean save(File dataFile) {
+		Grocery saved = instance();
+		saved.awaitRestockOrders();
+		return saved.checkpoint(dataFile);
+	}
+
+	/**
+	 * Checkpoint the grocery into the data file it was last saved to or retrieved from
+	 * 
+	 * @return true iff the checkpoint was written. False if there is no data file yet.
+	 */
+	public boolean checkpoint() {
+		File file = this.dataFile;
+		return file != null && checkpoint(file);
+	}
+
+	/**
+	 * Write a consistent snapshot of the grocery and drop the journal segments it covers.
+	 * Changes are held back only while the data is copied in memory and the journal moves on to
+	 * a new segment; the snapshot is written to disk while checkouts go on. A checkpoint that
+	 * fails or is interrupted leaves the previous snapshot and all segments in place.
+	 * 
+	 * @param dataFile file to write the snapshot to
+	 * @return true iff the checkpoint was written
+	 */
+	private boolean checkpoint(File dataFile) {
+		// One checkpoint at a time, they share the temporary file
+		synchronized (CHECKPOINT_LOCK) {
+			try {
+				Checkpoint checkpoint;
+				synchronized (Grocery.class) {
+					// Replaced by retrieveData meanwhile
+					if (grocery != this) {
+						return false;
+					}
+					checkpoint = beginCheckpoint(dataFile);
+				}
+				// Written without holding up retrieveData and the other static methods
+				checkpoint.writeSnapshot();
+				synchronized (Grocery.class) {
+					if (grocery != this) {
+						temporaryFile(dataFile).delete();
+						return false;
+					}
+					checkpoint.install();
+					checkpoint.removeCoveredSegments();
+				}
+				return true;
+			} catch (IOException ioe) {
+				ioe.printStackTrace();
+				return false;
+			} finally {
+				this.endedSinceCapture = null;
+			}
+		}
+	}
+
+	/**
+	 * Start writing checkpoints in the background at a fixed delay, into the data file the
+	 * grocery was last saved to or retrieved from. Replaces earlier periodic checkpoints.
+	 * 
+	 * @param delay    time between the end of a checkpoint and the start of the next one
+	 * @param timeUnit unit of delay
+	 */
+	public synchronized void startCheckpoints(long delay, TimeUnit timeUnit) {
+		stopCheckpoints();
+		this.checkpoints = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "checkpointer");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		this.checkpoints.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				checkpoint();
+			}
+		}, delay, delay, timeUnit);
+	}
+
+	/**
+	 * Stop the periodic checkpoints. A checkpoint that is being written is finished.
+	 */
+	public synchronized void stopCheckpoints() {
+		if (this.checkpoints != null) {
+			this.checkpoints.shutdown();
+			this.checkpoints = null;
+		}
+	}
+
+	/**
+	 * First step of a checkpoint. Holds back changes while it copies the data and moves the
+	 * journal on to a new segment, so the copy contains exactly the changes journaled in earlier
+	 * segments. Transactions ended from now on are noted so that the histories, which are copied
+	 * later, can leave them out.
+	 * 
+	 * @param dataFile file the snapshot will be written to
+	 * @return the checkpoint, ready to write the snapshot
+	 * @throws IOException if the new journal segment cannot be created
+	 */
+	Checkpoint beginCheckpoint(File dataFile) throws IOException {
+		long[] segments = journalSegments(dataFile);
+		long epoch = Math.max(this.journalEpoch, this.snapshotEpoch);
+		if (segments.length > 0) {
+			epoch = Math.max(epoch, segments[segments.length - 1]);
+		}
+		epoch++;
+		Journal next = Journal.create(journalFile(dataFile, epoch), epoch, journalSettings);
+		Journal previous;
+		Checkpoint checkpoint;
+		Lock gate = this.mutationGate.writeLock();
+		gate.lock();
+		try {
+			previous = this.journal;
+			// Records of the new segment must not become durable before those of the old one
+			if (previous != null) {
+				previous.flush();
+			}
+			List<Member> memberCopy = new ArrayList<Member>();
+			Iterator<Member> iterator = this.members.iterator();
+			while (iterator.hasNext()) {
+				memberCopy.add(iterator.next());
+			}
+			checkpoint = new Checkpoint(dataFile, epoch, this.stock.copyColumns(), memberCopy,
+					this.orders.copyOrders());
+			this.endedSinceCapture =
+					Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+			this.journal = next;
+			this.journalEpoch = epoch;
+			this.dataFile = dataFile;
+		} catch (IOException ioe) {
+			next.close();
+			throw ioe;
+		} finally {
+			gate.unlock();
+		}
+		if (previous != null) {
+			previous.close();
+		}
+		return checkpoint;
+	}
+
+	/**
+	 * A checkpoint in progress: the data copied by beginCheckpoint, to be written as the snapshot
+	 * of an epoch. The steps are separate so that tests can stop a checkpoint after each of them.
+	 */
+	class Checkpoint {
+		private final File dataFile;
+		private final long epoch;
+		private final ProductColumns columns;
+		private final List<Member> members;
+		private final List<Order> orders;
+
+		private Checkpoint(File dataFile, long epoch, ProductColumns columns, List<Member> members,
+				List<Order> orders) {
+			this.dataFile = dataFile;
+			this.epoch = epoch;
+			this.columns = columns;
+			this.members = members;
+			this.orders = orders;
+		}
+
+		/**
+		 * Write the copied data as a snapshot next to the data file. Member histories are copied
+		 * now, leaving out the transactions ended after the data was copied.
+		 * 
+		 * @throws IOException if the snapshot cannot be written
+		 */
+		void writeSnapshot() throws IOException {
+			Set<String> excluded = Grocery.this.endedSinceCapture;
+			List<Member> memberCopies = new ArrayList<Member>(this.members.size());
+			for (Member member : this.members) {
+				memberCopies.add(member.copyWithout(excluded));
+			}
+			SnapshotCodec.write(temporaryFile(this.dataFile), new SnapshotCodec.Contents(
+					this.epoch, this.columns, null, memberCopies, this.orders));
+		}
+
+		/**
+		 * Replace the data file with the written snapshot
+		 * 
+		 * @throws IOException if the file cannot be replaced
+		 */
+		void install() throws IOException {
+			Files.move(temporaryFile(this.dataFile).toPath(), this.dataFile.toPath(),
+					StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			Grocery.this.snapshotEpoch = this.epoch;
+		}
+
+		/**
+		 * Delete the journal segments the installed snapshot covers
+		 */
+		void removeCoveredSegments() {
+			for (long segment : journalSegments(this.dataFile)) {
+				if (segment < this.epoch) {
+					journalFile(this.dataFile, segment).delete();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Choose how journals make changes durable. Applies to journals started by later calls of
+	 * save and retrieveData.
+	 * 
+	 * @param settings policy, batch window and batch size of the journal writer
+	 */
+	public static void setJournalSettings(GroupCommitWriter.Settings settings) {
+		journalSettings = settings;
+	}
+
+	/**
+	 * Choose who is told about restock orders. Applies to every grocery, including those retrieved
+	 * later.
+	 * 
+	 * @param listener receives the orders, or null to drop them
+	 */
+	public static void setRestockListener(RestockListener listener) {
+		restockListener = listener;
+	}
+
+	/**
+	 * Wait until the journal records of the calling thread's changes are durable, as far as the
+	 * journal settings require
+	 */
+	static void commitJournal() {
+		Journal.commit();
+	}
+
+	/**
+	 * Number of times the current journal has been forced, for tests and benchmarks
+	 * 
+	 * @return forces of the journal, 0 without a journal
+	 */
+	long journalForceCount() {
+		Journal journal = this.journal;
+		return journal == null ? 0 : journal.forceCount();
+	}
+
+	/**
+	 * Commit the journal records of a change that completed
+	 * 
+	 * @param result Result of the change
+	 * @return the same Result
+	 */
+	private static Result committed(Result result) {
+		if (result.getResultCode() == Result.OPERATION_COMPLETED) {
+			commitJournal();
+		}
+		return result;
+	}
+
+	/**
+	 * Journal segment of an epoch belonging to a data file
+	 * 
+	 * @param dataFile the data file
+	 * @param epoch    epoch of the segment
+	 * @return the segment file next to the data file
+	 */
+	private static File journalFile(File dataFile, long epoch) {
+		return new File(dataFile.getPath() + JOURNAL_SUFFIX + epoch);
+	}
+
+	/**
+	 * File a snapshot is written to before it replaces a data file
+	 */
+	private static File temporaryFile(File dataFile) {
+		return new File(dataFile.getPath() + TEMPORARY_SUFFIX);
+	}
+
+	/**
+	 * Find the journal segments of a data file
+	 * 
+	 * @param dataFile the data file
+	 * @return epochs of the existing segments, ascending
+	 */
+	private static long[] journalSegments(File dataFile) {
+		File directory = dataFile.getAbsoluteFile().getParentFile();
+		String prefix = dataFile.getName() + JOURNAL_SUFFIX;
+		String[] names = directory == null ? null : directory.list();
+		if (names == null) {
+			return new long[0];
+		}
+		long[] epochs = new long[names.length];
+		int count = 0;
+		for (String name : names) {
+			if (name.startsWith(prefix)) {
+				try {
+					epochs[count] = Long.parseLong(name.substring(prefix.length()));
+					count++;
+				} catch (NumberFormatException nfe) {
+					// Not a segment
+				}
+			}
+		}
+		epochs = Arrays.copyOf(epochs, count);
+		Arrays.sort(epochs);
+		return epochs;
+	}
+
+	/**
+	 * Stop journaling changes of this grocery
+	 */
+	private void closeJournal() {
+		Journal current = this.journal;
+		this.journal = null;
+		if (current != null) {
+			try {
+				current.close();
+			} catch (IOException ioe) {
+				ioe.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Applies journaled changes to this grocery. Replay runs before the journal is opened for
+	 * appending, so the changes are not journaled again, and it bypasses the restock pipeline
+	 * since the orders it created are journaled themselves. Orders a crash kept from being
+	 * journaled are placed again once the journal is open.
+	 */
+	private class Replay implements Journal.Replayer {
+		@Override
+		public void addMember(String memberId, String name, String address, String phoneNumber,
+				long joinTimestamp, long feePaidCents) {
+			members.insertMember(
+					new Member(memberId, name, address, phoneNumber, joinTimestamp, feePaidCents));
+		}
+
+		@Override
+		public void removeMember(String memberId) {
+			members.removeMember(memberId);
+		}
+
+		@Override
+		public void addProduct(String productId, String name, int reorderLevel, int stockOnHand,
+				long priceCents) {
+			stock.addProduct(name, productId, reorderLevel, stockOnHand, priceCents);
+		}
+
+		@Override
+		public void changePrice(String productId, long priceCents) {
+			Product product = stock.search(productId);
+			if (product != null) {
+				stock.changePrice(product, priceCents);
+			}
+		}
+
+		@Override
+		public void placeOrder(String orderId, String productId, int quantity, long timestamp) {
+			Product product = stock.search(productId);
+			if (product != null) {
+				orders.restoreOrder(orderId, product, quantity, timestamp);
+			}
+		}
+
+		@Override
+		public void processShipment(String orderId) {
+			Order order = orders.removeOrder(orderId);
+			if (order != null) {
+				stock.addStockOnHand(order.getProduct(), order.getQuantity());
+			}
+		}
+
+		@Override
+		public void endTransaction(String transactionId, String memberId, long timestamp,
+				String[] productIds, int[] quantities, long[] lineTotals) {
+			Transaction transaction = new Transaction(transactionId, timestamp);
+			for (int index = 0; index < productIds.length; index++) {
+				Product product = stock.search(productIds[index]);
+				if (product == null) {
+					continue;
+				}
+				transaction.addLineItem(product, quantities[index], lineTotals[index]);
+				stock.addStockOnHand(product, -quantities[index]);
+			}
+			transaction.close();
+			Member member = members.search(memberId);
+			if (member != null) {
+				member.addNewUserTransaction(transaction);
+			}
+		}
+	}
+
 	/**
 	 * Invokes the AutomatedTest.
 	 * 
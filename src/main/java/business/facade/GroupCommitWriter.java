@@ -0,0 +1,322 @@
+package business.facade;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Appends records to a file channel and makes them durable with as few calls to force() as the
+ * chosen policy allows. Appending only queues a record, in the order of the calls; commit waits
+ * until the record is on disk.
+ * 
+ * With the GROUPED policy a committer thread collects the records of all callers until the
+ * batch window has passed since the first of them or the batch is full, writes them with one
+ * gathering write, forces the channel once and then releases every caller waiting for those
+ * records. PER_OP writes and forces in the committing thread, once per commit. ASYNC uses the
+ * committer like GROUPED but commit does not wait, so the changes of the last window can be lost
+ * in a crash.
+ */
+public class GroupCommitWriter implements Closeable {
+	/**
+	 * When a committed record is durable
+	 */
+	public enum Policy {
+		// Every commit forces the channel before it returns
+		PER_OP,
+		// Commits wait for the force of the batch they are part of
+		GROUPED,
+		// Commits return at once and batches are forced in the background
+		ASYNC
+	}
+
+	/**
+	 * Policy, batch window and batch size of a writer
+	 */
+	public static final class Settings {
+		private final Policy policy;
+		private final long windowNanos;
+		private final int batchSize;
+
+		/**
+		 * @param policy    when committed records are durable
+		 * @param window    time the first record of a batch waits for others to join it
+		 * @param unit      unit of window
+		 * @param batchSize number of records that ends the window early
+		 */
+		public Settings(Policy policy, long window, TimeUnit unit, int batchSize) {
+			this.policy = policy;
+			this.windowNanos = unit.toNanos(window);
+			this.batchSize = Math.max(1, batchSize);
+		}
+
+		public Policy getPolicy() {
+			return this.policy;
+		}
+
+		/**
+		 * Create a writer that appends at the current position of channel
+		 * 
+		 * @param channel open channel, owned by the writer from now on
+		 * @return the writer
+		 */
+		GroupCommitWriter open(FileChannel channel) {
+			return new GroupCommitWriter(channel, this.policy, this.windowNanos, this.batchSize);
+		}
+	}
+
+	private final FileChannel channel;
+	private final Policy policy;
+	private final long windowNanos;
+	private final int batchSize;
+	// Records appended but not yet written, guarded by this
+	private List<ByteBuffer> pending = new ArrayList<ByteBuffer>();
+	// System.nanoTime() when the first pending record was appended
+	private long batchStart;
+	// Sequence number of the last appended record
+	private long appended;
+	// Sequence number of the last record that is on disk
+	private long durable;
+	// Set by flush to end the current window early
+	private boolean flushRequested;
+	// First write or force that failed; the writer is unusable afterwards
+	private IOException failure;
+	private boolean closed;
+	// Number of calls to force(), for tests and benchmarks
+	private long forces;
+	// Writes and forces batches, null for PER_OP
+	private final Thread committer;
+
+	private GroupCommitWriter(FileChannel channel, Policy policy, long windowNanos,
+			int batchSize) {
+		this.channel = channel;
+		this.policy = policy;
+		this.windowNanos = windowNanos;
+		this.batchSize = batchSize;
+		if (policy == Policy.PER_OP) {
+			this.committer = null;
+		} else {
+			this.committer = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					commitBatches();
+				}
+			}, "journal-committer");
+			this.committer.setDaemon(true);
+			this.committer.start();
+		}
+	}
+
+	/**
+	 * Queue a record behind the records appended before it
+	 * 
+	 * @param record the bytes to write, not to be changed afterwards
+	 * @return sequence number of the record, to be passed to commit
+	 * @throws IOException if an earlier write failed or the writer is closed
+	 */
+	public synchronized long append(ByteBuffer record) throws IOException {
+		checkUsable();
+		this.pending.add(record);
+		// Wake the committer to start a window, or to end it once the batch is full
+		if (this.pending.size() == 1) {
+			this.batchStart = System.nanoTime();
+			notifyAll();
+		} else if (this.pending.size() >= this.batchSize) {
+			notifyAll();
+		}
+		return ++this.appended;
+	}
+
+	/**
+	 * Make a record and all records appended before it durable, as far as the policy requires
+	 * 
+	 * @param sequence sequence number returned by append
+	 * @throws IOException if the records could not be written
+	 */
+	public void commit(long sequence) throws IOException {
+		if (this.policy == Policy.PER_OP) {
+			synchronized (this) {
+				checkFailure();
+				if (this.durable < sequence) {
+					writePending();
+				}
+			}
+			return;
+		}
+		if (this.policy == Policy.GROUPED) {
+			awaitDurable(sequence, false);
+		} else {
+			synchronized (this) {
+				checkFailure();
+			}
+		}
+	}
+
+	/**
+	 * Make all appended records durable, whatever the policy
+	 * 
+	 * @throws IOException if the records could not be written
+	 */
+	public void flush() throws IOException {
+		long sequence;
+		synchronized (this) {
+			sequence = this.appended;
+		}
+		if (this.policy == Policy.PER_OP) {
+			commit(sequence);
+		} else {
+			awaitDurable(sequence, true);
+		}
+	}
+
+	/**
+	 * Flush the appended records and close the channel
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			flush();
+		} finally {
+			synchronized (this) {
+				this.closed = true;
+				notifyAll();
+			}
+			if (this.committer != null) {
+				try {
+					this.committer.join();
+				} catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			this.channel.close();
+		}
+	}
+
+	/**
+	 * Number of times the channel has been forced
+	 */
+	public synchronized long forceCount() {
+		return this.forces;
+	}
+
+	/**
+	 * Wait until the committer has made a record durable
+	 * 
+	 * @param sequence the record
+	 * @param now      whether to end the current window instead of waiting for it
+	 */
+	private synchronized void awaitDurable(long sequence, boolean now) throws IOException {
+		if (now && this.durable < sequence) {
+			this.flushRequested = true;
+			notifyAll();
+		}
+		boolean interrupted = false;
+		while (this.durable < sequence) {
+			checkFailure();
+			try {
+				wait();
+			} catch (InterruptedException ie) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Body of the committer thread
+	 */
+	private void commitBatches() {
+		while (true) {
+			List<ByteBuffer> batch;
+			long sequence;
+			synchronized (this) {
+				try {
+					while (this.pending.isEmpty() && !this.closed) {
+						wait();
+					}
+					if (this.pending.isEmpty()) {
+						return;
+					}
+					// Give other records the rest of the window to join the batch
+					long deadline = this.batchStart + this.windowNanos;
+					long remaining;
+					while (!this.closed && !this.flushRequested
+							&& this.pending.size() < this.batchSize
+							&& (remaining = deadline - System.nanoTime()) > 0) {
+						TimeUnit.NANOSECONDS.timedWait(this, remaining);
+					}
+				} catch (InterruptedException ie) {
+					// Only close stops the committer, write what there is
+				}
+				batch = this.pending;
+				sequence = this.appended;
+				this.pending = new ArrayList<ByteBuffer>();
+				this.flushRequested = false;
+			}
+			try {
+				write(batch);
+				this.channel.force(false);
+			} catch (IOException ioe) {
+				synchronized (this) {
+					this.failure = ioe;
+					notifyAll();
+				}
+				return;
+			}
+			synchronized (this) {
+				this.forces++;
+				this.durable = sequence;
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Write and force the pending records in the calling thread, for PER_OP. Called holding this.
+	 */
+	private void writePending() throws IOException {
+		try {
+			write(this.pending);
+			this.pending = new ArrayList<ByteBuffer>();
+			this.channel.force(false);
+			this.forces++;
+			this.durable = this.appended;
+		} catch (IOException ioe) {
+			this.failure = ioe;
+			throw ioe;
+		}
+	}
+
+	/**
+	 * Write records with gathering writes. force(false) is enough afterwards: it also writes the
+	 * file length, which is what appending changes.
+	 */
+	private void write(List<ByteBuffer> records) throws IOException {
+		ByteBuffer[] buffers = records.toArray(new ByteBuffer[records.size()]);
+		int first = 0;
+		while (first < buffers.length) {
+			this.channel.write(buffers, first, buffers.length - first);
+			while (first < buffers.length && !buffers[first].hasRemaining()) {
+				first++;
+			}
+		}
+	}
+
+	private void checkUsable() throws IOException {
+		checkFailure();
+		if (this.closed) {
+			throw new IOException("Journal writer is closed");
+		}
+	}
+
+	private void checkFailure() throws IOException {
+		if (this.failure != null) {
+			throw new IOException("Earlier journal write failed", this.failure);
+		}
+	}
+}
@@ -0,0 +1,474 @@
+package business.facade;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import business.entities.LineItem;
+import business.entities.Member;
+import business.entities.Order;
+import business.entities.Product;
+import business.entities.Transaction;
+
+/**
+ * Write-ahead journal of the changes made through the facade since the last snapshot. Every
+ * change appends one small record, so the cost of making a change durable does not depend on the
+ * size of the data. At startup the records are replayed on top of the snapshot.
+ * 
+ * The file starts with a header naming the snapshot epoch the journal belongs to; a journal left
+ * over from an older snapshot is ignored. Every record is its length, its payload and a CRC32 of
+ * the payload. Replay stops at the first record that is incomplete or damaged, which is where a
+ * crash interrupted the last append, and the file is cut back to the last good record.
+ * 
+ * Records carry the ids of the entities they create, so replay recreates the same ids. Appending a
+ * record only queues it with the GroupCommitWriter; the facade commits the records of a call
+ * before it returns, which makes them durable as the writer's policy requires.
+ */
+class Journal implements Closeable {
+	private static final int MAGIC = 0x474A4E4C;
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 16;
+	// Record types
+	private static final byte ADD_MEMBER = 1;
+	private static final byte REMOVE_MEMBER = 2;
+	private static final byte ADD_PRODUCT = 3;
+	private static final byte CHANGE_PRICE = 4;
+	private static final byte PLACE_ORDER = 5;
+	private static final byte PROCESS_SHIPMENT = 6;
+	private static final byte END_TRANSACTION = 7;
+	private final GroupCommitWriter writer;
+	// Writer and sequence number of the last record each thread appended
+	private static final ThreadLocal<Appended> lastAppended = new ThreadLocal<Appended>() {
+		@Override
+		protected Appended initialValue() {
+			return new Appended();
+		}
+	};
+
+	/**
+	 * The last record a thread appended. It may belong to a journal that has been replaced since.
+	 */
+	private static class Appended {
+		private GroupCommitWriter writer;
+		private long sequence;
+	}
+
+	/**
+	 * Receives the replayed records, applying them to the data without journaling them again
+	 */
+	interface Replayer {
+		void addMember(String memberId, String name, String address, String phoneNumber,
+				long joinTimestamp, long feePaidCents);
+
+		void removeMember(String memberId);
+
+		void addProduct(String productId, String name, int reorderLevel, int stockOnHand,
+				long priceCents);
+
+		void changePrice(String productId, long priceCents);
+
+		/**
+		 * An order was created, or quantity was added to an outstanding order with that id
+		 */
+		void placeOrder(String orderId, String productId, int quantity, long timestamp);
+
+		void processShipment(String orderId);
+
+		/**
+		 * A transaction was ended. The arrays hold the line items, in order.
+		 */
+		void endTransaction(String transactionId, String memberId, long timestamp,
+				String[] productIds, int[] quantities, long[] lineTotals);
+	}
+
+	private Journal(GroupCommitWriter writer) {
+		this.writer = writer;
+	}
+
+	/**
+	 * Start a new, empty journal for a snapshot, replacing any existing file
+	 * 
+	 * @param file     journal file
+	 * @param epoch    epoch of the snapshot the journal continues
+	 * @param settings how records are made durable
+	 * @return the journal, ready for appends
+	 * @throws IOException if the file cannot be written
+	 */
+	static Journal create(File file, long epoch, GroupCommitWriter.Settings settings)
+			throws IOException {
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		header.putInt(MAGIC).putInt(VERSION).putLong(epoch).flip();
+		while (header.hasRemaining()) {
+			channel.write(header);
+		}
+		channel.force(true);
+		return new Journal(settings.open(channel));
+	}
+
+	/**
+	 * Replay the journal of a snapshot and keep appending to it. If the file does not exist or
+	 * belongs to another snapshot, a new journal is started instead.
+	 * 
+	 * @param file     journal file
+	 * @param epoch    epoch of the loaded snapshot
+	 * @param replayer receives the records
+	 * @param settings how records are made durable
+	 * @return the journal, ready for appends
+	 * @throws IOException if the file cannot be read or written
+	 */
+	static Journal recover(File file, long epoch, Replayer replayer,
+			GroupCommitWriter.Settings settings) throws IOException {
+		if (!file.exists()) {
+			return create(file, epoch, settings);
+		}
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		long end;
+		try {
+			end = replay(channel, epoch, replayer);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+		if (end < 0) {
+			channel.close();
+			return create(file, epoch, settings);
+		}
+		// Drop a torn last record
+		channel.truncate(end);
+		channel.position(end);
+		return new Journal(settings.open(channel));
+	}
+
+	/**
+	 * Replay a journal segment that is no longer appended to
+	 * 
+	 * @param file     journal file
+	 * @param epoch    epoch the file must belong to
+	 * @param replayer receives the records
+	 * @return false if the file is not a journal of epoch and nothing was replayed
+	 * @throws IOException if the file cannot be read
+	 */
+	static boolean replay(File file, long epoch, Replayer replayer) throws IOException {
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			return replay(channel, epoch, replayer) >= 0;
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Replay the records of an open journal file
+	 * 
+	 * @return end of the last good record, or -1 if the file is not a journal of epoch
+	 */
+	private static long replay(FileChannel channel, long epoch, Replayer replayer)
+			throws IOException {
+		channel.position(0);
+		DataInputStream input = new DataInputStream(
+				new BufferedInputStream(Channels.newInputStream(channel), 1 << 16));
+		long position;
+		try {
+			if (input.readInt() != MAGIC || input.readInt() != VERSION
+					|| input.readLong() != epoch) {
+				return -1;
+			}
+		} catch (EOFException eofe) {
+			return -1;
+		}
+		position = HEADER_SIZE;
+		long size = channel.size();
+		CRC32 crc = new CRC32();
+		while (position + 8 <= size) {
+			int length = input.readInt();
+			if (length <= 0 || position + 8 + length > size) {
+				break;
+			}
+			byte[] payload = new byte[length];
+			input.readFully(payload);
+			crc.reset();
+			crc.update(payload, 0, length);
+			if (input.readInt() != (int) crc.getValue()) {
+				break;
+			}
+			apply(payload, replayer);
+			position += 8 + length;
+		}
+		return position;
+	}
+
+	/**
+	 * Decode one record payload and hand it to the replayer
+	 */
+	private static void apply(byte[] payload, Replayer replayer) throws IOException {
+		DataInputStream record =
+				new DataInputStream(new ByteArrayInputStream(payload));
+		byte type = record.readByte();
+		switch (type) {
+		case ADD_MEMBER:
+			replayer.addMember(record.readUTF(), record.readUTF(), record.readUTF(),
+					record.readUTF(), record.readLong(), record.readLong());
+			break;
+		case REMOVE_MEMBER:
+			replayer.removeMember(record.readUTF());
+			break;
+		case ADD_PRODUCT:
+			replayer.addProduct(record.readUTF(), record.readUTF(), record.readInt(),
+					record.readInt(), record.readLong());
+			break;
+		case CHANGE_PRICE:
+			replayer.changePrice(record.readUTF(), record.readLong());
+			break;
+		case PLACE_ORDER:
+			replayer.placeOrder(record.readUTF(), record.readUTF(), record.readInt(),
+					record.readLong());
+			break;
+		case PROCESS_SHIPMENT:
+			replayer.processShipment(record.readUTF());
+			break;
+		case END_TRANSACTION:
+			String transactionId = record.readUTF();
+			String memberId = record.readUTF();
+			long timestamp = record.readLong();
+			int count = record.readInt();
+			String[] productIds = new String[count];
+			int[] quantities = new int[count];
+			long[] lineTotals = new long[count];
+			for (int index = 0; index < count; index++) {
+				productIds[index] = record.readUTF();
+				quantities[index] = record.readInt();
+				lineTotals[index] = record.readLong();
+			}
+			replayer.endTransaction(transactionId, memberId, timestamp, productIds, quantities,
+					lineTotals);
+			break;
+		default:
+			throw new IOException("Unknown journal record type " + type);
+		}
+	}
+
+	/**
+	 * Journal a new member
+	 */
+	void addMember(Member member) {
+		RecordWriter record = new RecordWriter(ADD_MEMBER);
+		record.writeString(member.getMemberId());
+		record.writeString(member.getMemberName());
+		record.writeString(member.getMemberAddress());
+		record.writeString(member.getMemberPhoneNumber());
+		record.writeLong(member.getJoinTimestamp());
+		record.writeLong(member.getFeePaidCents());
+		append(record);
+	}
+
+	/**
+	 * Journal the removal of a member
+	 */
+	void removeMember(String memberId) {
+		RecordWriter record = new RecordWriter(REMOVE_MEMBER);
+		record.writeString(memberId);
+		append(record);
+	}
+
+	/**
+	 * Journal a new product with its initial stock
+	 */
+	void addProduct(Product product) {
+		RecordWriter record = new RecordWriter(ADD_PRODUCT);
+		record.writeString(product.getProductId());
+		record.writeString(product.getProductName());
+		record.writeInt(product.getReorderLevel());
+		record.writeInt(product.getStockOnHand());
+		record.writeLong(product.getCurrentPriceCents());
+		append(record);
+	}
+
+	/**
+	 * Journal a price change
+	 */
+	void changePrice(String productId, long priceCents) {
+		RecordWriter record = new RecordWriter(CHANGE_PRICE);
+		record.writeString(productId);
+		record.writeLong(priceCents);
+		append(record);
+	}
+
+	/**
+	 * Journal a quantity ordered, either as a new order or added to an outstanding one
+	 * 
+	 * @param order    the new or enlarged order
+	 * @param quantity quantity this change ordered
+	 */
+	void placeOrder(Order order, int quantity) {
+		RecordWriter record = new RecordWriter(PLACE_ORDER);
+		record.writeString(order.getOrderId());
+		record.writeString(order.getProduct().getProductId());
+		record.writeInt(quantity);
+		record.writeLong(order.getTimestamp());
+		append(record);
+	}
+
+	/**
+	 * Journal a received shipment
+	 */
+	void processShipment(String orderId) {
+		RecordWriter record = new RecordWriter(PROCESS_SHIPMENT);
+		record.writeString(orderId);
+		append(record);
+	}
+
+	/**
+	 * Journal an ended transaction with its line items
+	 */
+	void endTransaction(Transaction transaction, String memberId) {
+		RecordWriter record = new RecordWriter(END_TRANSACTION);
+		record.writeString(transaction.getTransactionId());
+		record.writeString(memberId);
+		record.writeLong(transaction.getTimestamp());
+		List<LineItem> lineItems = transaction.getLineItems();
+		record.writeInt(lineItems.size());
+		Iterator<LineItem> iterator = lineItems.iterator();
+		while (iterator.hasNext()) {
+			LineItem lineItem = iterator.next();
+			record.writeString(lineItem.getProduct().getProductId());
+			record.writeInt(lineItem.getQuantity());
+			record.writeLong(lineItem.getLineTotalCents());
+		}
+		append(record);
+	}
+
+	/**
+	 * Wait until the records the calling thread appended are durable, in whichever journal they
+	 * were appended to
+	 * 
+	 * @throws UncheckedIOException if the records could not be written
+	 */
+	static void commit() {
+		Appended appended = lastAppended.get();
+		if (appended.writer == null) {
+			return;
+		}
+		try {
+			appended.writer.commit(appended.sequence);
+		} catch (IOException ioe) {
+			throw new UncheckedIOException(ioe);
+		}
+	}
+
+	/**
+	 * Write all records appended so far to disk
+	 * 
+	 * @throws IOException if the records could not be written
+	 */
+	void flush() throws IOException {
+		this.writer.flush();
+	}
+
+	/**
+	 * Number of times the journal file has been forced
+	 * 
+	 * @return forces so far
+	 */
+	long forceCount() {
+		return this.writer.forceCount();
+	}
+
+	/**
+	 * Write all records to disk and close the journal file
+	 */
+	@Override
+	public void close() throws IOException {
+		this.writer.close();
+	}
+
+	/**
+	 * Frame a record and queue it at the end of the file. The facade has already applied the
+	 * change in memory, so a failed write cannot be reported as a result code and is thrown.
+	 * 
+	 * @param record the record
+	 * @throws UncheckedIOException if the journal can no longer be written
+	 */
+	private void append(RecordWriter record) {
+		try {
+			Appended appended = lastAppended.get();
+			appended.sequence = this.writer.append(record.frame());
+			appended.writer = this.writer;
+		} catch (IOException ioe) {
+			throw new UncheckedIOException(ioe);
+		}
+	}
+
+	/**
+	 * Builds the payload of one record
+	 */
+	private static class RecordWriter {
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+		private final DataOutputStream output = new DataOutputStream(this.bytes);
+
+		private RecordWriter(byte type) {
+			// Room for the length, filled in by frame()
+			writeInt(0);
+			try {
+				this.output.writeByte(type);
+			} catch (IOException ioe) {
+				throw new UncheckedIOException(ioe);
+			}
+		}
+
+		private void writeString(String value) {
+			try {
+				this.output.writeUTF(value);
+			} catch (IOException ioe) {
+				throw new UncheckedIOException(ioe);
+			}
+		}
+
+		private void writeInt(int value) {
+			try {
+				this.output.writeInt(value);
+			} catch (IOException ioe) {
+				throw new UncheckedIOException(ioe);
+			}
+		}
+
+		private void writeLong(long value) {
+			try {
+				this.output.writeLong(value);
+			} catch (IOException ioe) {
+				throw new UncheckedIOException(ioe);
+			}
+		}
+
+		/**
+		 * Fill in the length and append the CRC
+		 * 
+		 * @return the framed record, ready to be written
+		 */
+		private ByteBuffer frame() {
+			byte[] array = this.bytes.toByteArray();
+			int length = array.length - 4;
+			CRC32 crc = new CRC32();
+			crc.update(array, 4, length);
+			ByteBuffer framed = ByteBuffer.allocate(array.length + 4);
+			framed.putInt(length).put(array, 4, length).putInt((int) crc.getValue()).flip();
+			return framed;
+		}
+	}
+}
@@ -0,0 +1,380 @@
+package business.facade;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.ObjectStreamField;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import business.entities.LineItem;
+import business.entities.Member;
+import business.entities.Money;
+import business.entities.Order;
+import business.entities.Product;
+import business.entities.ProductColumns;
+import business.entities.Timestamps;
+import business.entities.Transaction;
+import business.entities.TransactionHistory;
+
+/**
+ * Data files written before snapshots had a format of their own: the whole grocery serialized,
+ * followed by the member, order and transaction id counters. The entities have changed shape
+ * since, so the file is not read into them. The classes below keep the serialized layout of the
+ * original entities and facade, and the streams map the class names in the file to them. The
+ * result is converted into the contents of a snapshot.
+ * 
+ * Open transactions in the file are dropped, as they are when a snapshot is saved.
+ */
+final class LegacyData {
+	// Layouts by the name of the class they were written as
+	private static final Map<String, Class<?>> LAYOUTS = new HashMap<String, Class<?>>();
+	// Names the layouts were written as
+	private static final Map<Class<?>, String> NAMES = new HashMap<Class<?>, String>();
+
+	static {
+		layout("business.facade.Grocery", SavedGrocery.class);
+		layout("business.facade.Grocery$Stock", SavedGrocery.Stock.class);
+		layout("business.facade.Grocery$MemberList", SavedGrocery.MemberList.class);
+		layout("business.facade.Grocery$OrderList", SavedGrocery.OrderList.class);
+		layout("business.facade.Grocery$TransactionList", SavedGrocery.TransactionList.class);
+		layout("business.entities.Product", SavedProduct.class);
+		layout("business.entities.Member", SavedMember.class);
+		layout("business.entities.Transaction", SavedTransaction.class);
+		layout("business.entities.LineItem", SavedLineItem.class);
+		layout("business.entities.Order", SavedOrder.class);
+	}
+
+	private LegacyData() {
+	}
+
+	private static void layout(String name, Class<?> layout) {
+		LAYOUTS.put(name, layout);
+		NAMES.put(layout, name);
+	}
+
+	/**
+	 * Read a legacy data file and restore the id counters saved with it
+	 * 
+	 * @param file the data file
+	 * @return the data, with epoch 0
+	 * @throws IOException            if the file cannot be read or was not written in this layout
+	 * @throws ClassNotFoundException if the file holds classes that do not exist
+	 */
+	static SnapshotCodec.Contents read(File file) throws IOException, ClassNotFoundException {
+		InputStream input = new FileInputStream(file);
+		try {
+			LayoutInputStream stream = new LayoutInputStream(input);
+			SavedGrocery saved = (SavedGrocery) stream.readObject();
+			int memberIds = (Integer) stream.readObject();
+			int orderIds = (Integer) stream.readObject();
+			int transactionIds = (Integer) stream.readObject();
+			SnapshotCodec.Contents contents = convert(saved);
+			Member.restoreIds(memberIds);
+			Order.restoreIds(orderIds);
+			Transaction.restoreIds(transactionIds);
+			return contents;
+		} finally {
+			input.close();
+		}
+	}
+
+	/**
+	 * Write data in the legacy layout, for tests and benchmarks of the migration
+	 * 
+	 * @param file     file to write
+	 * @param contents the data; orders and line items refer to products by their slot
+	 * @throws IOException if the file cannot be written
+	 */
+	static void write(File file, SnapshotCodec.Contents contents) throws IOException {
+		OutputStream output = new FileOutputStream(file);
+		try {
+			LayoutOutputStream stream = new LayoutOutputStream(output);
+			stream.writeObject(toSaved(contents));
+			stream.writeObject(Member.idHighWaterMark());
+			stream.writeObject(Order.idHighWaterMark());
+			stream.writeObject(Transaction.idHighWaterMark());
+			stream.flush();
+		} finally {
+			output.close();
+		}
+	}
+
+	/**
+	 * Build the entities of the saved grocery
+	 */
+	private static SnapshotCodec.Contents convert(SavedGrocery saved) {
+		ProductColumns columns = new ProductColumns();
+		List<Product> products = new ArrayList<Product>();
+		// Orders and line items refer to the products of the stock
+		Map<SavedProduct, Product> productsBySaved = new IdentityHashMap<SavedProduct, Product>();
+		for (SavedProduct product : saved.stock.products) {
+			product(product, columns, products, productsBySaved);
+		}
+		List<Member> members = new ArrayList<Member>(saved.members.members.size());
+		for (SavedMember member : saved.members.members) {
+			final List<Transaction> history = new ArrayList<Transaction>();
+			for (SavedTransaction transaction : member.transactions) {
+				Transaction restored = Transaction.restored(transaction.transactionId,
+						transaction.date.getTimeInMillis());
+				for (SavedLineItem lineItem : transaction.lineItems) {
+					restored.addLineItem(
+							product(lineItem.product, columns, products, productsBySaved),
+							lineItem.quantity, Money.toCents(lineItem.lineTotal));
+				}
+				restored.close();
+				history.add(restored);
+			}
+			Collections.sort(history, new Comparator<Transaction>() {
+				@Override
+				public int compare(Transaction first, Transaction second) {
+					return Long.compare(first.getTimestamp(), second.getTimestamp());
+				}
+			});
+			members.add(new Member(member.memberId, member.memberName, member.memberAddress,
+					member.memberPhoneNumber, member.dateJoined.getTimeInMillis(),
+					Money.toCents(member.feePaid), new TransactionHistory.Loader() {
+						@Override
+						public List<Transaction> load() {
+							return history;
+						}
+					}));
+		}
+		List<Order> orders = new ArrayList<Order>(saved.orders.orders.size());
+		for (SavedOrder order : saved.orders.orders) {
+			orders.add(Order.restored(order.orderId,
+					product(order.product, columns, products, productsBySaved), order.quantity,
+					order.date.getTimeInMillis()));
+		}
+		return new SnapshotCodec.Contents(0, columns, products, members, orders);
+	}
+
+	/**
+	 * The product a saved product was converted to. Products the stock did not hold are added to
+	 * it when they are first referred to.
+	 */
+	private static Product product(SavedProduct saved, ProductColumns columns,
+			List<Product> products, Map<SavedProduct, Product> productsBySaved) {
+		Product product = productsBySaved.get(saved);
+		if (product == null) {
+			int slot = columns.allocate(saved.productName, saved.productId, saved.reorderLevel,
+					saved.stockOnHand, Money.toCents(saved.currentPrice));
+			product = new Product(columns, slot);
+			products.add(product);
+			productsBySaved.put(saved, product);
+		}
+		return product;
+	}
+
+	/**
+	 * Build the saved layout of snapshot contents
+	 */
+	private static SavedGrocery toSaved(SnapshotCodec.Contents contents) {
+		ProductColumns columns = contents.columns;
+		SavedGrocery saved = new SavedGrocery();
+		SavedProduct[] products = new SavedProduct[columns.size()];
+		for (int slot = 0; slot < products.length; slot++) {
+			SavedProduct product = new SavedProduct();
+			product.productName = columns.getName(slot);
+			product.productId = columns.getId(slot);
+			product.stockOnHand = columns.getStockOnHand(slot);
+			product.reorderLevel = columns.getReorderLevel(slot);
+			product.currentPrice = Money.toDollars(columns.getPrice(slot));
+			products[slot] = product;
+			saved.stock.products.add(product);
+		}
+		for (Member member : contents.members) {
+			SavedMember savedMember = new SavedMember();
+			savedMember.memberId = member.getMemberId();
+			savedMember.memberName = member.getMemberName();
+			savedMember.memberAddress = member.getMemberAddress();
+			savedMember.memberPhoneNumber = member.getMemberPhoneNumber();
+			savedMember.feePaid = member.getFeePaid();
+			savedMember.dateJoined = member.getDateJoined();
+			for (Iterator<Transaction> iterator = member.getTransactions(); iterator.hasNext();) {
+				Transaction transaction = iterator.next();
+				SavedTransaction savedTransaction = new SavedTransaction();
+				savedTransaction.transactionId = transaction.getTransactionId();
+				savedTransaction.date = Timestamps.toCalendar(transaction.getTimestamp());
+				for (LineItem lineItem : transaction.getLineItems()) {
+					SavedLineItem savedLineItem = new SavedLineItem();
+					savedLineItem.product = products[lineItem.getProduct().getSlot()];
+					savedLineItem.quantity = lineItem.getQuantity();
+					savedLineItem.lineTotal = Money.toDollars(lineItem.getLineTotalCents());
+					savedTransaction.lineItems.add(savedLineItem);
+				}
+				savedMember.transactions.add(savedTransaction);
+			}
+			saved.members.members.add(savedMember);
+		}
+		for (Order order : contents.orders) {
+			SavedOrder savedOrder = new SavedOrder();
+			savedOrder.orderId = order.getOrderId();
+			savedOrder.product = products[order.getProduct().getSlot()];
+			savedOrder.quantity = order.getQuantity();
+			savedOrder.date = Timestamps.toCalendar(order.getTimestamp());
+			saved.orders.orders.add(savedOrder);
+		}
+		return saved;
+	}
+
+	/**
+	 * Reads the classes of a legacy file as their layouts
+	 */
+	private static final class LayoutInputStream extends ObjectInputStream {
+		private LayoutInputStream(InputStream input) throws IOException {
+			super(input);
+		}
+
+		@Override
+		protected ObjectStreamClass readClassDescriptor()
+				throws IOException, ClassNotFoundException {
+			ObjectStreamClass written = super.readClassDescriptor();
+			Class<?> layout = LAYOUTS.get(written.getName());
+			if (layout == null) {
+				return written;
+			}
+			// The fields of the layout are read from the stream, so they have to be the same
+			ObjectStreamClass local = ObjectStreamClass.lookup(layout);
+			ObjectStreamField[] writtenFields = written.getFields();
+			ObjectStreamField[] localFields = local.getFields();
+			boolean same = written.getSerialVersionUID() == local.getSerialVersionUID()
+					&& writtenFields.length == localFields.length;
+			for (int index = 0; same && index < writtenFields.length; index++) {
+				same = writtenFields[index].getName().equals(localFields[index].getName())
+						&& writtenFields[index].getTypeCode() == localFields[index].getTypeCode();
+			}
+			if (!same) {
+				throw new InvalidClassException(written.getName(),
+						"not the layout of a legacy data file");
+			}
+			return local;
+		}
+	}
+
+	/**
+	 * Writes the layouts under the names of the classes they stand for
+	 */
+	private static final class LayoutOutputStream extends ObjectOutputStream {
+		// Flag of a class descriptor for a class written with default serialization
+		private static final byte SC_SERIALIZABLE = 0x02;
+
+		private LayoutOutputStream(OutputStream output) throws IOException {
+			super(output);
+		}
+
+		@Override
+		protected void writeClassDescriptor(ObjectStreamClass descriptor) throws IOException {
+			String name = NAMES.get(descriptor.forClass());
+			if (name == null) {
+				super.writeClassDescriptor(descriptor);
+				return;
+			}
+			// The layouts have no superclass and no writeObject method of their own
+			writeUTF(name);
+			writeLong(descriptor.getSerialVersionUID());
+			writeByte(SC_SERIALIZABLE);
+			ObjectStreamField[] fields = descriptor.getFields();
+			writeShort(fields.length);
+			for (ObjectStreamField field : fields) {
+				writeByte(field.getTypeCode());
+				writeUTF(field.getName());
+				if (!field.isPrimitive()) {
+					String typeName = NAMES.get(field.getType());
+					writeObject(typeName == null ? field.getTypeString()
+							: "L" + typeName.replace('.', '/') + ";");
+				}
+			}
+		}
+	}
+
+	/**
+	 * Layout of the facade. Its collections are inner classes, as they were.
+	 */
+	private static final class SavedGrocery implements Serializable {
+		private static final long serialVersionUID = 1L;
+		private Stock stock = new Stock();
+		private MemberList members = new MemberList();
+		private OrderList orders = new OrderList();
+		private TransactionList transactions = new TransactionList();
+
+		private class Stock implements Serializable {
+			private static final long serialVersionUID = 1L;
+			private List<SavedProduct> products = new LinkedList<SavedProduct>();
+		}
+
+		private class MemberList implements Serializable {
+			private static final long serialVersionUID = 1L;
+			private List<SavedMember> members = new LinkedList<SavedMember>();
+		}
+
+		private class OrderList implements Serializable {
+			private static final long serialVersionUID = 1L;
+			private List<SavedOrder> orders = new LinkedList<SavedOrder>();
+		}
+
+		private class TransactionList implements Serializable {
+			private static final long serialVersionUID = 1L;
+			private List<SavedTransaction> transactions = new LinkedList<SavedTransaction>();
+		}
+	}
+
+	private static final class SavedProduct implements Serializable {
+		private static final long serialVersionUID = 1L;
+		private String productName;
+		private String productId;
+		private int stockOnHand;
+		private int reorderLevel;
+		private double currentPrice;
+	}
+
+	private static final class SavedMember implements Serializable {
+		private static final long serialVersionUID = 1L;
+		private String memberId;
+		private String memberName;
+		private String memberAddress;
+		private String memberPhoneNumber;
+		private double feePaid;
+		private Calendar dateJoined;
+		private List<SavedTransaction> transactions = new LinkedList<SavedTransaction>();
+	}
+
+	private static final class SavedTransaction implements Serializable {
+		private static final long serialVersionUID = 1L;
+		private String transactionId;
+		private Calendar date;
+		private LinkedList<SavedLineItem> lineItems = new LinkedList<SavedLineItem>();
+	}
+
+	private static final class SavedLineItem implements Serializable {
+		private static final long serialVersionUID = 1L;
+		private SavedProduct product;
+		private int quantity;
+		private double lineTotal;
+	}
+
+	private static final class SavedOrder implements Serializable {
+		// Computed from the original class, which did not declare one
+		private static final long serialVersionUID = 8135504001794686063L;
+		private String orderId;
+		private SavedProduct product;
+		private int quantity;
+		private Calendar date;
+	}
+}
@@ -0,0 +1,124 @@
+package business.facade;
+
+import java.io.Serializable;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Case insensitive index of items by name that answers "all items whose name starts with" queries
+ * without looking at the items that do not match. Implemented with a ConcurrentSkipListMap keyed by
+ * the lower case name, so a query seeks to the first name at or after the prefix and stops at the
+ * first name that no longer starts with it. Queries may run while items are added and removed.
+ *
+ * @param <T> type of the indexed items
+ */
+class PrefixIndex<T> implements Serializable {
+	private static final long serialVersionUID = 1L;
+	// Separates the lower case name from the item key so that equal names do not collide
+	private static final char KEY_SEPARATOR = '\u0000';
+	// ConcurrentSkipListMap adaptee, sorted by lower case name and then by item key
+	private ConcurrentSkipListMap<String, T> entries = new ConcurrentSkipListMap<String, T>();
+
+	/**
+	 * Add an item to the index
+	 * 
+	 * @param name name the item is found by
+	 * @param key  unique key of the item, e.g. its id
+	 * @param item the item
+	 */
+	public void add(String name, String key, T item) {
+		this.entries.put(indexKey(name, key), item);
+	}
+
+	/**
+	 * Remove an item from the index
+	 * 
+	 * @param name name the item was added with
+	 * @param key  key the item was added with
+	 * @return the removed item, or null if it was not indexed
+	 */
+	public T remove(String name, String key) {
+		return this.entries.remove(indexKey(name, key));
+	}
+
+	/**
+	 * Get all items whose name starts with prefix, ignoring case, in name order
+	 * 
+	 * @param prefix start of the name
+	 * @return iterator of the matching items
+	 */
+	public Iterator<T> startingWith(String prefix) {
+		return startingWith(prefix, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Get at most limit items whose name starts with prefix, ignoring case, in name order
+	 * 
+	 * @param prefix start of the name
+	 * @param limit  maximum number of items to return
+	 * @return iterator of the matching items
+	 */
+	public Iterator<T> startingWith(String prefix, int limit) {
+		String lowerCasePrefix = prefix.toLowerCase();
+		Iterator<Map.Entry<String, T>> tail =
+				this.entries.tailMap(lowerCasePrefix, true).entrySet().iterator();
+		return new PrefixIterator<T>(tail, lowerCasePrefix, limit);
+	}
+
+	/**
+	 * Build the map key of an item
+	 */
+	private static String indexKey(String name, String key) {
+		return name.toLowerCase() + KEY_SEPARATOR + key;
+	}
+
+	/**
+	 * Iterator over the sorted entries at or after a prefix that stops at the first entry which
+	 * does not start with the prefix, or once limit items have been yielded.
+	 */
+	private static class PrefixIterator<T> implements Iterator<T> {
+		private Iterator<Map.Entry<String, T>> entries;
+		private String prefix;
+		private int remaining;
+		private T item;
+
+		private PrefixIterator(Iterator<Map.Entry<String, T>> entries, String prefix, int limit) {
+			this.entries = entries;
+			this.prefix = prefix;
+			this.remaining = limit;
+			getNextItem();
+		}
+
+		@Override
+		public boolean hasNext() {
+			return this.item != null;
+		}
+
+		@Override
+		public T next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException("No such element");
+			}
+			T returnValue = this.item;
+			getNextItem();
+			return returnValue;
+		}
+
+		/**
+		 * Find the next entry that still matches the prefix
+		 */
+		private void getNextItem() {
+			this.item = null;
+			if (this.remaining <= 0 || !this.entries.hasNext()) {
+				return;
+			}
+			Map.Entry<String, T> entry = this.entries.next();
+			if (entry.getKey().startsWith(this.prefix)) {
+				this.item = entry.getValue();
+				this.remaining--;
+			}
+		}
+	}
+}
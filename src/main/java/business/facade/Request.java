@@ -3,35 +3,65 @@ package business.facade;
 import java.util.Calendar;
 
 /**
- * Subclass of DataTransfer that represents a request sent from UI to Grocery instance. Follows
- * singleton pattern.
+ * Subclass of DataTransfer that represents a request sent from UI to Grocery instance. Callers
+ * that may run concurrently use their own requests, either new ones or the reusable request of
+ * their thread. The shared singleton remains for the single threaded user interface and tester.
  */
 public class Request extends DataTransfer {
 	// singleton static instance
 	private static Request request = null;
+	// Reusable request of each thread, so high rate callers do not allocate one per call
+	private static final ThreadLocal<Request> threadRequests = new ThreadLocal<Request>() {
+		@Override
+		protected Request initialValue() {
+			return new Request();
+		}
+	};
 	// dates used in filtering member transactions
 	private Calendar startDate;
 	private Calendar endDate;
 
 	/**
-	 * This is a singleton class. Hence the private constructor.
+	 * Creates a request with all fields set to none, owned by a single call
 	 */
-	private Request() {
+	public Request() {
 
 	}
 
 	/**
-	 * Returns the only instance of the class.
+	 * Returns the shared instance of the class. Kept for single threaded callers; concurrent
+	 * callers use forCurrentThread() or their own requests instead.
 	 * 
-	 * @return the only instance
+	 * @return the shared instance
 	 */
-	public static Request instance() {
+	public static synchronized Request instance() {
 		if (Request.request == null) {
 			Request.request = new Request();
 		}
 		return Request.request;
 	}
 
+	/**
+	 * Returns the calling thread's reusable request, reset to none. The request must not be handed
+	 * to other threads or kept past the next call of this method on the same thread.
+	 * 
+	 * @return the thread's request
+	 */
+	public static Request forCurrentThread() {
+		Request threadRequest = threadRequests.get();
+		threadRequest.reset();
+		return threadRequest;
+	}
+
+	/**
+	 * Reset all fields, including the filter dates, to none
+	 */
+	@Override
+	public void reset() {
+		super.reset();
+		this.startDate = null;
+		this.endDate = null;
+	}
 
 	/**
 	 * Getter for startDate
@@ -0,0 +1,184 @@
+package business.facade;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import business.entities.Order;
+import business.entities.Product;
+
+/**
+ * Background stage that turns "stock reached the reorder level" events into restock orders.
+ * Checkouts only enqueue an event and return. A single worker thread drains whatever events have
+ * piled up, handles each product of the batch once however many hits it received, and reports
+ * all orders created by the batch at once.
+ */
+class RestockPipeline {
+	// Pending events, in the order they were published
+	private final BlockingQueue<Event> events = new LinkedBlockingQueue<Event>();
+	// Decides whether a product needs an order and creates it
+	private final Restocker restocker;
+	// Handles the events
+	private final Thread worker;
+	// Published by close, the worker stops after the batch holding it
+	private static final Event STOP = new Event(null, null);
+	// How often a waiting flush checks that the worker still runs
+	private static final long FLUSH_POLL_MILLIS = 100;
+
+	/**
+	 * Creates the restock order of a product, if one is still needed
+	 */
+	interface Restocker {
+		/**
+		 * Called on the pipeline thread for every product that reached its reorder level
+		 * 
+		 * @param product the product
+		 * @return the new or enlarged order, or null if no order was needed
+		 */
+		Order restock(Product product);
+
+		/**
+		 * Called on the pipeline thread with the orders created by one batch, if there are any
+		 * 
+		 * @param orders the new or enlarged orders
+		 */
+		void restocked(List<Order> orders);
+	}
+
+	/**
+	 * Creates the pipeline and starts its worker thread. The worker is a daemon, so it does not
+	 * keep the program alive.
+	 * 
+	 * @param restocker creates the orders
+	 */
+	RestockPipeline(Restocker restocker) {
+		this.restocker = restocker;
+		this.worker = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				processEvents();
+			}
+		}, "restock-pipeline");
+		this.worker.setDaemon(true);
+		this.worker.start();
+	}
+
+	/**
+	 * Publish that a product's stock reached its reorder level. Never blocks.
+	 * 
+	 * @param product the product
+	 */
+	void reorderLevelReached(Product product) {
+		this.events.add(new Event(product, null));
+	}
+
+	/**
+	 * Wait until every event published before the call has been handled. Returns at once if the
+	 * pipeline was closed.
+	 */
+	void flush() {
+		CountDownLatch handled = new CountDownLatch(1);
+		this.events.add(new Event(null, handled));
+		try {
+			// A marker published after the pipeline was closed is never handled
+			while (!handled.await(FLUSH_POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+				if (!this.worker.isAlive()) {
+					return;
+				}
+			}
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Handle the events published so far, then stop the worker. Events published after the call
+	 * are not handled.
+	 */
+	void close() {
+		this.events.add(STOP);
+		try {
+			this.worker.join();
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Worker loop, handles the events in batches until it is closed
+	 */
+	private void processEvents() {
+		List<Event> batch = new ArrayList<Event>();
+		while (true) {
+			try {
+				batch.add(this.events.take());
+			} catch (InterruptedException ie) {
+				return;
+			}
+			this.events.drainTo(batch);
+			boolean stop = batch.remove(STOP);
+			processBatch(batch);
+			batch.clear();
+			if (stop) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Restock each product of the batch once, then notify and release waiting flushes
+	 * 
+	 * @param batch events taken from the queue
+	 */
+	private void processBatch(List<Event> batch) {
+		Set<Product> products = new LinkedHashSet<Product>();
+		List<CountDownLatch> flushes = new ArrayList<CountDownLatch>();
+		for (Event event : batch) {
+			if (event.product != null) {
+				products.add(event.product);
+			} else {
+				flushes.add(event.handled);
+			}
+		}
+		List<Order> restockOrders = new ArrayList<Order>();
+		for (Product product : products) {
+			try {
+				Order restockOrder = this.restocker.restock(product);
+				if (restockOrder != null) {
+					restockOrders.add(restockOrder);
+				}
+			} catch (RuntimeException re) {
+				// Keep the pipeline running for the other products
+				re.printStackTrace();
+			}
+		}
+		if (!restockOrders.isEmpty()) {
+			try {
+				this.restocker.restocked(restockOrders);
+			} catch (RuntimeException re) {
+				re.printStackTrace();
+			}
+		}
+		for (CountDownLatch handled : flushes) {
+			handled.countDown();
+		}
+	}
+
+	/**
+	 * A product that reached its reorder level, or a flush marker
+	 */
+	private static class Event {
+		private final Product product;
+		private final CountDownLatch handled;
+
+		private Event(Product product, CountDownLatch handled) {
+			this.product = product;
+			this.handled = handled;
+		}
+	}
+}
@@ -0,0 +1,83 @@
+package business.facade;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Read-only, point-in-time copy of a collection, rebuilt lazily after the collection changes.
+ * Writers only bump a version number; the first reader after a change copies the collection and
+ * every later reader shares that copy until the next change. Reports therefore iterate a
+ * consistent view without holding locks, and a steady stream of reports does not copy the
+ * collection again and again.
+ * 
+ * Usage: read version(), call get(version), and if it returns null build a copy of the collection
+ * and hand it to put(version, copy). A copy built while a writer was active is tagged with the
+ * version read before the copy, so it is discarded by the next reader.
+ *
+ * @param <T> type of the collection items
+ */
+class SnapshotCache<T> implements Serializable {
+	private static final long serialVersionUID = 1L;
+	// Incremented by every change of the collection
+	private final AtomicLong version = new AtomicLong();
+	// Latest copy, not saved
+	private transient volatile Snapshot<T> snapshot;
+
+	/**
+	 * Record a change of the collection
+	 */
+	void invalidate() {
+		this.version.incrementAndGet();
+	}
+
+	/**
+	 * Current version of the collection
+	 * 
+	 * @return version to pass to get and put
+	 */
+	long version() {
+		return this.version.get();
+	}
+
+	/**
+	 * Get the copy of the collection at a version
+	 * 
+	 * @param version version read before
+	 * @return the copy, or null if there is no copy of that version
+	 */
+	List<T> get(long version) {
+		Snapshot<T> current = this.snapshot;
+		if (current == null || current.version != version) {
+			return null;
+		}
+		return current.items;
+	}
+
+	/**
+	 * Store a copy of the collection
+	 * 
+	 * @param version version read before the copy was made
+	 * @param items   the copy, not modified afterwards
+	 * @return read-only view of items
+	 */
+	List<T> put(long version, List<T> items) {
+		List<T> readOnlyItems = Collections.unmodifiableList(items);
+		this.snapshot = new Snapshot<T>(version, readOnlyItems);
+		return readOnlyItems;
+	}
+
+	/**
+	 * A copy together with the version it was taken at
+	 */
+	private static class Snapshot<T> {
+		private final long version;
+		private final List<T> items;
+
+		private Snapshot(long version, List<T> items) {
+			this.version = version;
+			this.items = items;
+		}
+	}
+}
@@ -0,0 +1,569 @@
+package business.facade;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import business.entities.LineItem;
+import business.entities.Member;
+import business.entities.Order;
+import business.entities.Product;
+import business.entities.ProductColumns;
+import business.entities.Transaction;
+import business.entities.TransactionHistory;
+
+/**
+ * Binary format of the grocery snapshots. Reading it needs no reflection and creates no objects
+ * besides the entities themselves, and the file is read through memory mapped buffers, so loading
+ * is mostly sequential page reads.
+ * 
+ * The file starts with a fixed size header: magic number, version, snapshot epoch, the high water
+ * marks of the member, order and transaction ids, and the offsets of the sections. The sections
+ * are the products, members, orders, transactions, transaction index and string table. Every
+ * text is stored once in the string table and referred to by its index. Generated ids are stored
+ * as the number they were generated from, and products are referred to by their slot. Indexes,
+ * ids and counts are varints; stock, reorder levels and prices are fixed width columns. The
+ * transactions section holds the history of each member in turn, in the order of the members
+ * section, and the transaction index holds the offset of each member's history in it.
+ * 
+ * Histories are not read with the rest of the snapshot. Each member gets a loader that reads its
+ * history from the mapped transactions section the first time it is used, so the grocery can
+ * serve requests once products and members are read. The mapping stays valid after the snapshot
+ * file is replaced by the next checkpoint.
+ * 
+ * Version 1 snapshots have no transaction index; their histories are read with the members.
+ * 
+ * Each section is mapped as one buffer and must be smaller than 2 GB.
+ */
+final class SnapshotCodec {
+	private static final int MAGIC = 0x47534E50;
+	private static final int VERSION = 2;
+	// Version without the transaction index
+	private static final int UNINDEXED_VERSION = 1;
+	// Magic, version, epoch and three id high water marks, followed by the section offsets
+	private static final int FIXED_HEADER_SIZE = 4 + 4 + 8 + 3 * 4;
+	private static final int SECTIONS = 6;
+	private static final int HEADER_SIZE = FIXED_HEADER_SIZE + SECTIONS * 8;
+	private static final int PRODUCTS = 0;
+	private static final int MEMBERS = 1;
+	private static final int ORDERS = 2;
+	private static final int TRANSACTIONS = 3;
+	private static final int TRANSACTION_INDEX = 4;
+	private static final int STRINGS = 5;
+
+	private SnapshotCodec() {
+	}
+
+	/**
+	 * The data held by a snapshot
+	 */
+	static final class Contents {
+		final long epoch;
+		final ProductColumns columns;
+		// Views over the slots of columns, filled when a snapshot is read
+		final List<Product> products;
+		final List<Member> members;
+		final List<Order> orders;
+
+		/**
+		 * @param epoch    epoch of the snapshot
+		 * @param columns  the products; orders and line items refer to products by their slot
+		 * @param products views over all slots of columns, or null when writing
+		 * @param members  the members; their histories are read when they are used
+		 * @param orders   the outstanding orders
+		 */
+		Contents(long epoch, ProductColumns columns, List<Product> products, List<Member> members,
+				List<Order> orders) {
+			this.epoch = epoch;
+			this.columns = columns;
+			this.products = products;
+			this.members = members;
+			this.orders = orders;
+		}
+	}
+
+	/**
+	 * Checks whether a file starts like a snapshot in this format
+	 * 
+	 * @param file the file
+	 * @return true iff the file exists and has the magic number of the format
+	 * @throws IOException if the file cannot be read
+	 */
+	static boolean isSnapshot(File file) throws IOException {
+		if (!file.exists() || file.length() < FIXED_HEADER_SIZE) {
+			return false;
+		}
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			ByteBuffer magic = ByteBuffer.allocate(4);
+			while (magic.hasRemaining() && channel.read(magic) >= 0) {
+				// Read the whole magic number
+			}
+			return magic.getInt(0) == MAGIC;
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Write a snapshot and force it to disk. The id high water marks are taken from the entity
+	 * classes at the time of the call.
+	 * 
+	 * @param file     file to write, replaced if it exists
+	 * @param contents the data
+	 * @throws IOException if the file cannot be written
+	 */
+	static void write(File file, Contents contents) throws IOException {
+		FileOutputStream outputFile = new FileOutputStream(file);
+		try {
+			SectionWriter output = new SectionWriter(new BufferedOutputStream(outputFile, 1 << 16));
+			long[] offsets = new long[SECTIONS];
+			Map<String, Integer> strings = new HashMap<String, Integer>();
+			List<String> stringTable = new ArrayList<String>();
+			output.skip(HEADER_SIZE);
+			offsets[PRODUCTS] = output.position();
+			writeProducts(output, contents.columns, strings, stringTable);
+			offsets[MEMBERS] = output.position();
+			output.writeInt(contents.members.size());
+			for (Member member : contents.members) {
+				output.writeVarint(number(Member.parseMemberNumber(member.getMemberId())));
+				output.writeVarint(intern(member.getMemberName(), strings, stringTable));
+				output.writeVarint(intern(member.getMemberAddress(), strings, stringTable));
+				output.writeVarint(intern(member.getMemberPhoneNumber(), strings, stringTable));
+				output.writeLong(member.getJoinTimestamp());
+				output.writeLong(member.getFeePaidCents());
+			}
+			offsets[ORDERS] = output.position();
+			output.writeInt(contents.orders.size());
+			for (Order order : contents.orders) {
+				output.writeVarint(number(Order.parseOrderNumber(order.getOrderId())));
+				output.writeVarint(order.getProduct().getSlot());
+				output.writeInt(order.getQuantity());
+				output.writeLong(order.getTimestamp());
+			}
+			offsets[TRANSACTIONS] = output.position();
+			int[] historyOffsets = new int[contents.members.size()];
+			for (int index = 0; index < historyOffsets.length; index++) {
+				historyOffsets[index] = sectionOffset(output.position() - offsets[TRANSACTIONS]);
+				writeHistory(output, contents.members.get(index));
+			}
+			offsets[TRANSACTION_INDEX] = output.position();
+			for (int historyOffset : historyOffsets) {
+				output.writeInt(historyOffset);
+			}
+			offsets[STRINGS] = output.position();
+			output.writeInt(stringTable.size());
+			for (String string : stringTable) {
+				byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+				output.writeVarint(bytes.length);
+				output.write(bytes);
+			}
+			output.flush();
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			header.putInt(MAGIC).putInt(VERSION).putLong(contents.epoch);
+			header.putInt(Member.idHighWaterMark()).putInt(Order.idHighWaterMark())
+					.putInt(Transaction.idHighWaterMark());
+			for (long offset : offsets) {
+				header.putLong(offset);
+			}
+			header.flip();
+			FileChannel channel = outputFile.getChannel();
+			while (header.hasRemaining()) {
+				channel.write(header, header.position());
+			}
+			channel.force(true);
+		} finally {
+			outputFile.close();
+		}
+	}
+
+	/**
+	 * Products section: count, the fixed width stock, reorder level and price columns, then the
+	 * string indexes of the name and id of every product
+	 */
+	private static void writeProducts(SectionWriter output, ProductColumns columns,
+			Map<String, Integer> strings, List<String> stringTable) throws IOException {
+		int count = columns.size();
+		output.writeInt(count);
+		for (int slot = 0; slot < count; slot++) {
+			output.writeInt(columns.getStockOnHand(slot));
+		}
+		for (int slot = 0; slot < count; slot++) {
+			output.writeInt(columns.getReorderLevel(slot));
+		}
+		for (int slot = 0; slot < count; slot++) {
+			output.writeLong(columns.getPrice(slot));
+		}
+		for (int slot = 0; slot < count; slot++) {
+			output.writeVarint(intern(columns.getName(slot), strings, stringTable));
+			output.writeVarint(intern(columns.getId(slot), strings, stringTable));
+		}
+	}
+
+	/**
+	 * History of a member: transaction count, then the transaction records. Only one history is
+	 * read at a time, so writing does not bring every history into memory at once.
+	 */
+	private static void writeHistory(SectionWriter output, Member member) throws IOException {
+		List<Transaction> history = new ArrayList<Transaction>();
+		Iterator<Transaction> transactions = member.getTransactions();
+		while (transactions.hasNext()) {
+			history.add(transactions.next());
+		}
+		output.writeVarint(history.size());
+		for (Transaction transaction : history) {
+			writeTransaction(output, transaction);
+		}
+	}
+
+	/**
+	 * Transaction record: id number, date, line count, then slot, quantity and total of each line
+	 */
+	private static void writeTransaction(SectionWriter output, Transaction transaction)
+			throws IOException {
+		output.writeVarint(number(Transaction.parseTransactionNumber(
+				transaction.getTransactionId())));
+		output.writeLong(transaction.getTimestamp());
+		List<LineItem> lineItems = transaction.getLineItems();
+		output.writeVarint(lineItems.size());
+		for (LineItem lineItem : lineItems) {
+			output.writeVarint(lineItem.getProduct().getSlot());
+			output.writeVarint(lineItem.getQuantity());
+			output.writeVarlong(lineItem.getLineTotalCents());
+		}
+	}
+
+	/**
+	 * Read a snapshot. The id counters of the entity classes are moved past the saved high water
+	 * marks.
+	 * 
+	 * @param file the snapshot file
+	 * @return the data
+	 * @throws IOException if the file cannot be read or is not a snapshot
+	 */
+	static Contents read(File file) throws IOException {
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			long size = channel.size();
+			if (size < FIXED_HEADER_SIZE) {
+				throw new IOException("Snapshot is too short: " + file);
+			}
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, FIXED_HEADER_SIZE);
+			int version = header.getInt() == MAGIC ? header.getInt() : -1;
+			if (version != VERSION && version != UNINDEXED_VERSION) {
+				throw new IOException("Not a snapshot: " + file);
+			}
+			long epoch = header.getLong();
+			int memberIds = header.getInt();
+			int orderIds = header.getInt();
+			int transactionIds = header.getInt();
+			long[] offsets = readOffsets(channel, version, size);
+			String[] strings = readStrings(map(channel, offsets, STRINGS));
+			ProductColumns columns = new ProductColumns();
+			List<Product> products =
+					readProducts(map(channel, offsets, PRODUCTS), columns, strings);
+			ByteBuffer memberSection = map(channel, offsets, MEMBERS);
+			ByteBuffer transactionSection = map(channel, offsets, TRANSACTIONS);
+			ByteBuffer historyOffsets = version == VERSION
+					? map(channel, offsets, TRANSACTION_INDEX) : null;
+			int memberCount = memberSection.getInt();
+			List<Member> members = new ArrayList<Member>(memberCount);
+			for (int index = 0; index < memberCount; index++) {
+				String memberId = Member.memberIdOf(readVarint(memberSection));
+				String name = strings[readVarint(memberSection)];
+				String address = strings[readVarint(memberSection)];
+				String phoneNumber = strings[readVarint(memberSection)];
+				long joinTimestamp = memberSection.getLong();
+				long feePaid = memberSection.getLong();
+				TransactionHistory.Loader history;
+				if (historyOffsets == null) {
+					// Histories follow each other without an index and are read right away
+					int transactionCount = readVarint(memberSection);
+					List<Transaction> transactions = new ArrayList<Transaction>(transactionCount);
+					for (int transaction = 0; transaction < transactionCount; transaction++) {
+						transactions.add(readTransaction(transactionSection, products));
+					}
+					history = new ReadHistory(transactions);
+				} else {
+					history = new MappedHistory(transactionSection, historyOffsets.getInt(),
+							products);
+				}
+				members.add(new Member(memberId, name, address, phoneNumber, joinTimestamp,
+						feePaid, history));
+			}
+			ByteBuffer orderSection = map(channel, offsets, ORDERS);
+			int orderCount = orderSection.getInt();
+			List<Order> orders = new ArrayList<Order>(orderCount);
+			for (int index = 0; index < orderCount; index++) {
+				String orderId = Order.orderIdOf(readVarint(orderSection));
+				Product product = products.get(readVarint(orderSection));
+				orders.add(Order.restored(orderId, product, orderSection.getInt(),
+						orderSection.getLong()));
+			}
+			Member.restoreIds(memberIds);
+			Order.restoreIds(orderIds);
+			Transaction.restoreIds(transactionIds);
+			return new Contents(epoch, columns, products, members, orders);
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Read the section offsets of the header and add the file size as the end of the last section
+	 */
+	private static long[] readOffsets(FileChannel channel, int version, long size)
+			throws IOException {
+		long[] offsets = new long[SECTIONS + 1];
+		if (version == UNINDEXED_VERSION) {
+			// Same sections without the transaction index, which is left empty
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, FIXED_HEADER_SIZE,
+					(SECTIONS - 1) * 8);
+			for (int section = 0; section < TRANSACTION_INDEX; section++) {
+				offsets[section] = header.getLong();
+			}
+			offsets[STRINGS] = header.getLong();
+			offsets[TRANSACTION_INDEX] = offsets[STRINGS];
+		} else {
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, FIXED_HEADER_SIZE,
+					SECTIONS * 8);
+			for (int section = 0; section < SECTIONS; section++) {
+				offsets[section] = header.getLong();
+			}
+		}
+		offsets[SECTIONS] = size;
+		return offsets;
+	}
+
+	/**
+	 * Map one section of the file
+	 */
+	private static MappedByteBuffer map(FileChannel channel, long[] offsets, int section)
+			throws IOException {
+		long length = offsets[section + 1] - offsets[section];
+		if (length < 0 || length > Integer.MAX_VALUE) {
+			throw new IOException("Snapshot section " + section + " has bad length " + length);
+		}
+		return channel.map(FileChannel.MapMode.READ_ONLY, offsets[section], length);
+	}
+
+	private static String[] readStrings(ByteBuffer section) {
+		String[] strings = new String[section.getInt()];
+		byte[] bytes = new byte[64];
+		for (int index = 0; index < strings.length; index++) {
+			int length = readVarint(section);
+			if (length > bytes.length) {
+				bytes = new byte[Math.max(length, bytes.length * 2)];
+			}
+			section.get(bytes, 0, length);
+			strings[index] = new String(bytes, 0, length, StandardCharsets.UTF_8);
+		}
+		return strings;
+	}
+
+	private static List<Product> readProducts(ByteBuffer section, ProductColumns columns,
+			String[] strings) {
+		int count = section.getInt();
+		int[] stockOnHand = new int[count];
+		int[] reorderLevels = new int[count];
+		long[] prices = new long[count];
+		IntBuffer ints = section.asIntBuffer();
+		ints.get(stockOnHand);
+		ints.get(reorderLevels);
+		section.position(section.position() + 8 * count);
+		LongBuffer longs = section.asLongBuffer();
+		longs.get(prices);
+		section.position(section.position() + 8 * count);
+		List<Product> products = new ArrayList<Product>(count);
+		for (int slot = 0; slot < count; slot++) {
+			String name = strings[readVarint(section)];
+			String id = strings[readVarint(section)];
+			columns.allocate(name, id, reorderLevels[slot], stockOnHand[slot], prices[slot]);
+			products.add(new Product(columns, slot));
+		}
+		return products;
+	}
+
+	private static Transaction readTransaction(ByteBuffer section, List<Product> products) {
+		Transaction transaction = Transaction.restored(
+				Transaction.transactionIdOf(readVarint(section)), section.getLong());
+		int lineCount = readVarint(section);
+		for (int line = 0; line < lineCount; line++) {
+			Product product = products.get(readVarint(section));
+			int quantity = readVarint(section);
+			transaction.addLineItem(product, quantity, readVarlong(section));
+		}
+		transaction.close();
+		return transaction;
+	}
+
+	/**
+	 * History of one member that was read with the member
+	 */
+	private static final class ReadHistory implements TransactionHistory.Loader {
+		private final List<Transaction> transactions;
+
+		ReadHistory(List<Transaction> transactions) {
+			this.transactions = transactions;
+		}
+
+		@Override
+		public List<Transaction> load() {
+			return this.transactions;
+		}
+	}
+
+	/**
+	 * Reads the history of one member from the mapped transactions section
+	 */
+	private static final class MappedHistory implements TransactionHistory.Loader {
+		private final ByteBuffer section;
+		private final int offset;
+		private final List<Product> products;
+
+		MappedHistory(ByteBuffer section, int offset, List<Product> products) {
+			this.section = section;
+			this.offset = offset;
+			this.products = products;
+		}
+
+		@Override
+		public List<Transaction> load() {
+			// Each loader reads through its own view, so histories can be read concurrently
+			ByteBuffer history = this.section.duplicate();
+			history.position(this.offset);
+			int count = readVarint(history);
+			List<Transaction> transactions = new ArrayList<Transaction>(count);
+			for (int index = 0; index < count; index++) {
+				transactions.add(readTransaction(history, this.products));
+			}
+			return transactions;
+		}
+	}
+
+	/**
+	 * Offset of a history in the transactions section, which is mapped as one buffer
+	 */
+	private static int sectionOffset(long offset) throws IOException {
+		if (offset > Integer.MAX_VALUE) {
+			throw new IOException("Transactions section is larger than 2 GB");
+		}
+		return (int) offset;
+	}
+
+	/**
+	 * Index of a string in the string table, adding it if it is not there yet
+	 */
+	private static int intern(String string, Map<String, Integer> strings,
+			List<String> stringTable) {
+		Integer index = strings.get(string);
+		if (index == null) {
+			index = stringTable.size();
+			strings.put(string, index);
+			stringTable.add(string);
+		}
+		return index;
+	}
+
+	/**
+	 * Check the number parsed from a generated id
+	 */
+	private static int number(int parsed) throws IOException {
+		if (parsed < 0) {
+			throw new IOException("Id was not generated and cannot be written");
+		}
+		return parsed;
+	}
+
+	/**
+	 * Read an unsigned LEB128 varint
+	 */
+	static int readVarint(ByteBuffer buffer) {
+		return (int) readVarlong(buffer);
+	}
+
+	static long readVarlong(ByteBuffer buffer) {
+		long value = 0;
+		int shift = 0;
+		byte next;
+		do {
+			next = buffer.get();
+			value |= (long) (next & 0x7F) << shift;
+			shift += 7;
+		} while (next < 0);
+		return value;
+	}
+
+	/**
+	 * Buffered output that counts its position and writes varints and big endian numbers
+	 */
+	static final class SectionWriter {
+		private final OutputStream output;
+		private long position;
+
+		SectionWriter(OutputStream output) {
+			this.output = output;
+		}
+
+		void skip(int count) throws IOException {
+			for (int index = 0; index < count; index++) {
+				this.output.write(0);
+			}
+			this.position += count;
+		}
+
+		void write(byte[] bytes) throws IOException {
+			this.output.write(bytes);
+			this.position += bytes.length;
+		}
+
+		void writeInt(int value) throws IOException {
+			this.output.write(value >>> 24);
+			this.output.write(value >>> 16);
+			this.output.write(value >>> 8);
+			this.output.write(value);
+			this.position += 4;
+		}
+
+		void writeLong(long value) throws IOException {
+			writeInt((int) (value >>> 32));
+			writeInt((int) value);
+		}
+
+		void writeVarint(int value) throws IOException {
+			writeVarlong(value & 0xFFFFFFFFL);
+		}
+
+		void writeVarlong(long value) throws IOException {
+			while ((value & ~0x7FL) != 0) {
+				this.output.write((int) (value & 0x7F) | 0x80);
+				value >>>= 7;
+				this.position++;
+			}
+			this.output.write((int) value);
+			this.position++;
+		}
+
+		void flush() throws IOException {
+			this.output.flush();
+		}
+
+		long position() {
+			return this.position;
+		}
+	}
+}
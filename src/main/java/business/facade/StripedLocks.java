@@ -0,0 +1,37 @@
+package business.facade;
+
+/**
+ * A fixed set of lock objects shared out by hash code. Operations on different keys usually get
+ * different locks and run in parallel, while operations on the same key are serialized, without
+ * having to keep a lock per key.
+ */
+class StripedLocks {
+	// Lock objects, the length is a power of two
+	private final Object[] locks;
+
+	/**
+	 * Creates the locks
+	 * 
+	 * @param stripes minimum number of locks, rounded up to a power of two
+	 */
+	StripedLocks(int stripes) {
+		int size = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+		this.locks = new Object[size];
+		for (int index = 0; index < size; index++) {
+			this.locks[index] = new Object();
+		}
+	}
+
+	/**
+	 * Get the lock guarding a key
+	 * 
+	 * @param key object whose hash code selects the lock
+	 * @return the lock object to synchronize on
+	 */
+	Object lockFor(Object key) {
+		int hash = key.hashCode();
+		// Spread the high bits so keys differing only there land on different locks
+		hash ^= (hash >>> 16);
+		return this.locks[hash & (this.locks.length - 1)];
+	}
+}
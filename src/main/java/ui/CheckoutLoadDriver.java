@@ -0,0 +1,172 @@
+package ui;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import business.facade.Grocery;
+import business.facade.Request;
+import business.facade.Result;
+
+/**
+ * Load generator for the CheckoutServer. Opens a number of terminal connections (lanes) that each
+ * run single item checkouts as fast as the server answers, and reports checkouts per second.
+ * 
+ * Run without arguments to start a local server with a seeded member and product and measure
+ * 1 to 256 lanes. Run with "host port memberId productId [lanes] [checkoutsPerLane]" to drive a
+ * server that is already running.
+ */
+public class CheckoutLoadDriver {
+	// Checkouts each lane runs when not given on the command line
+	private static final int DEFAULT_CHECKOUTS_PER_LANE = 200;
+	// Largest lane count of the local sweep
+	private static final int MAX_LANES = 256;
+
+	/**
+	 * Run lanes against a server and measure the throughput
+	 * 
+	 * @param host             server host
+	 * @param port             server port
+	 * @param memberId         member the checkouts are charged to
+	 * @param productId        product every checkout buys one of
+	 * @param lanes            number of simultaneous terminal connections
+	 * @param checkoutsPerLane checkouts run by each lane
+	 * @return checkouts per second over all lanes
+	 * @throws IOException if a lane fails or the server rejects a command
+	 */
+	public static double run(final String host, final int port, final String memberId,
+			final String productId, int lanes, final int checkoutsPerLane) throws IOException {
+		final CountDownLatch start = new CountDownLatch(1);
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int lane = 0; lane < lanes; lane++) {
+			Thread thread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try (Socket socket = new Socket(host, port)) {
+						socket.setTcpNoDelay(true);
+						start.await();
+						runLane(socket, memberId, productId, checkoutsPerLane);
+					} catch (Throwable throwable) {
+						failure.compareAndSet(null, throwable);
+					}
+				}
+			}, "checkout-lane-" + lane);
+			thread.start();
+			threads.add(thread);
+		}
+		long begin = System.nanoTime();
+		start.countDown();
+		try {
+			for (Thread thread : threads) {
+				thread.join();
+			}
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for lanes", ie);
+		}
+		long elapsed = System.nanoTime() - begin;
+		if (failure.get() != null) {
+			throw new IOException("Lane failed", failure.get());
+		}
+		return (double) lanes * checkoutsPerLane * 1_000_000_000L / Math.max(1, elapsed);
+	}
+
+	/**
+	 * Run the checkouts of one lane over its connection
+	 */
+	private static void runLane(Socket socket, String memberId, String productId, int checkouts)
+			throws IOException {
+		BufferedReader input = new BufferedReader(
+				new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+		Writer output = new BufferedWriter(
+				new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+		for (int checkout = 0; checkout < checkouts; checkout++) {
+			String transactionId = call(input, output, "BEGIN");
+			call(input, output, "ADD " + transactionId + " " + productId + " 1");
+			call(input, output, "END " + transactionId + " " + memberId);
+		}
+		call(input, output, "QUIT");
+	}
+
+	/**
+	 * Send one command and wait for its response
+	 * 
+	 * @return the response after "OK ", or the whole response if it is not OK or ERR
+	 * @throws IOException if the server answered with ERR or disconnected
+	 */
+	private static String call(BufferedReader input, Writer output, String command)
+			throws IOException {
+		output.write(command);
+		output.write('\n');
+		output.flush();
+		String response = input.readLine();
+		if (response == null) {
+			throw new IOException("Server closed the connection");
+		}
+		if (response.startsWith("ERR")) {
+			throw new IOException(command + ": " + response);
+		}
+		return response.startsWith("OK ") ? response.substring(3) : response;
+	}
+
+	/**
+	 * Seed a member and a product with plenty of stock into a grocery
+	 * 
+	 * @return member id and product id
+	 */
+	private static String[] seed(Grocery grocery) {
+		Request request = new Request();
+		request.setMemberName("Load Driver");
+		request.setMemberAddress("Lane 1");
+		request.setMemberPhoneNumber("555-0199");
+		request.setDateJoined(Calendar.getInstance());
+		request.setFeePaid(0.0);
+		String memberId = grocery.addMember(request).getMemberId();
+		request.reset();
+		request.setProductId("load-driver-" + System.nanoTime());
+		request.setProductName("Load driver item");
+		request.setStockOnHand(Integer.MAX_VALUE);
+		request.setReorderLevel(0);
+		request.setCurrentPrice(1.0);
+		Result result = grocery.addProduct(request);
+		return new String[] {memberId, result.getProductId()};
+	}
+
+	/**
+	 * Runs the load test, see the class comment for the arguments
+	 * 
+	 * @param args command line arguments
+	 * @throws IOException if the load test fails
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length >= 4) {
+			int lanes = args.length > 4 ? Integer.parseInt(args[4]) : 1;
+			int checkouts = args.length > 5 ? Integer.parseInt(args[5])
+					: DEFAULT_CHECKOUTS_PER_LANE;
+			double throughput = run(args[0], Integer.parseInt(args[1]), args[2], args[3], lanes,
+					checkouts);
+			System.out.printf("%d lanes: %.0f checkouts/s%n", lanes, throughput);
+			return;
+		}
+		Grocery grocery = Grocery.instance();
+		String[] ids = seed(grocery);
+		try (CheckoutServer server = new CheckoutServer(grocery, 0)) {
+			for (int lanes = 1; lanes <= MAX_LANES; lanes *= 2) {
+				double throughput = run("localhost", server.getPort(), ids[0], ids[1], lanes,
+						DEFAULT_CHECKOUTS_PER_LANE);
+				System.out.printf("%d lanes: %.0f checkouts/s%n", lanes, throughput);
+			}
+		}
+	}
+}
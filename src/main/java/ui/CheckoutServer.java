@@ -0,0 +1,274 @@
+package ui;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import business.facade.Grocery;
+import business.facade.Request;
+import business.facade.Result;
+
+/**
+ * Local TCP server that lets point of sale terminals check out members concurrently. Every
+ * terminal connection is served by its own thread, a virtual thread when the JVM has them, so
+ * hundreds of lanes can be open on one machine. Each connection talks a line based protocol, one
+ * command per line answered by one response line:
+ * 
+ * <pre>
+ * BEGIN                                  -> OK transactionId
+ * ADD transactionId productId quantity   -> OK lineTotalCents checkoutTotalCents
+ * END transactionId memberId             -> OK checkoutTotalCents
+ * QUIT                                   -> BYE, then the connection is closed
+ * </pre>
+ * 
+ * Failures are answered with ERR and a reason such as PRODUCT_NOT_FOUND. Fields are separated by
+ * white space, so ids containing spaces cannot be used over the protocol.
+ */
+public class CheckoutServer implements AutoCloseable {
+	// Port used when none is given on the command line
+	public static final int DEFAULT_PORT = 3720;
+	private final Grocery grocery;
+	private final ServerSocket serverSocket;
+	// Runs one task per terminal connection
+	private final ExecutorService terminals;
+	// Open terminal connections, closed when the server closes
+	private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * Creates the server and starts accepting terminal connections on the loopback address
+	 * 
+	 * @param grocery facade the terminals check out against
+	 * @param port    port to listen on, 0 for any free port
+	 * @throws IOException if the port cannot be bound
+	 */
+	public CheckoutServer(Grocery grocery, int port) throws IOException {
+		this.grocery = grocery;
+		this.serverSocket = new ServerSocket(port, 1024, InetAddress.getLoopbackAddress());
+		this.terminals = newTerminalExecutor();
+		Thread acceptor = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				acceptTerminals();
+			}
+		}, "checkout-acceptor");
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+
+	/**
+	 * Port the server listens on
+	 * 
+	 * @return the bound port
+	 */
+	public int getPort() {
+		return this.serverSocket.getLocalPort();
+	}
+
+	/**
+	 * Stop accepting terminals and close all open connections
+	 */
+	@Override
+	public void close() throws IOException {
+		this.serverSocket.close();
+		for (Socket connection : this.connections) {
+			connection.close();
+		}
+		this.terminals.shutdownNow();
+	}
+
+	/**
+	 * Accept loop, hands every connection to its own thread
+	 */
+	private void acceptTerminals() {
+		while (!this.serverSocket.isClosed()) {
+			final Socket connection;
+			try {
+				connection = this.serverSocket.accept();
+			} catch (IOException ioe) {
+				// Closed by close()
+				return;
+			}
+			this.connections.add(connection);
+			this.terminals.execute(new Runnable() {
+				@Override
+				public void run() {
+					serveTerminal(connection);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Read commands from a terminal until it quits or disconnects
+	 * 
+	 * @param connection the terminal connection
+	 */
+	private void serveTerminal(Socket connection) {
+		try {
+			connection.setTcpNoDelay(true);
+			BufferedReader input = new BufferedReader(
+					new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8));
+			Writer output = new BufferedWriter(
+					new OutputStreamWriter(connection.getOutputStream(), StandardCharsets.UTF_8));
+			// Reused for every command of this terminal
+			Request request = new Request();
+			String line;
+			while ((line = input.readLine()) != null) {
+				String[] fields = line.trim().split("\\s+");
+				String command = fields[0].toUpperCase();
+				if (command.equals("QUIT")) {
+					output.write("BYE\n");
+					output.flush();
+					break;
+				}
+				request.reset();
+				output.write(execute(command, fields, request));
+				output.write('\n');
+				output.flush();
+			}
+		} catch (SocketException se) {
+			// Terminal disconnected or server closed
+		} catch (IOException ioe) {
+			ioe.printStackTrace();
+		} finally {
+			this.connections.remove(connection);
+			try {
+				connection.close();
+			} catch (IOException ioe) {
+				// Nothing left to release
+			}
+		}
+	}
+
+	/**
+	 * Execute one protocol command against the facade
+	 * 
+	 * @param command upper case command name
+	 * @param fields  command name followed by its arguments
+	 * @param request request to fill in
+	 * @return the response line, without line terminator
+	 */
+	private String execute(String command, String[] fields, Request request) {
+		Result result;
+		switch (command) {
+		case "BEGIN":
+			if (fields.length != 1) {
+				return "ERR USAGE BEGIN";
+			}
+			result = this.grocery.beginTransaction();
+			return "OK " + result.getTransactionId();
+		case "ADD":
+			if (fields.length != 4) {
+				return "ERR USAGE ADD transactionId productId quantity";
+			}
+			request.setTransactionId(fields[1]);
+			request.setProductId(fields[2]);
+			try {
+				request.setCheckoutQuantity(Integer.parseInt(fields[3]));
+			} catch (NumberFormatException nfe) {
+				return "ERR BAD_QUANTITY";
+			}
+			result = this.grocery.addTransactionLineItem(request);
+			if (result.getResultCode() != Result.OPERATION_COMPLETED) {
+				return "ERR " + describe(result.getResultCode());
+			}
+			return "OK " + result.getLineTotalCents() + " " + result.getCheckoutTotalCents();
+		case "END":
+			if (fields.length != 3) {
+				return "ERR USAGE END transactionId memberId";
+			}
+			request.setTransactionId(fields[1]);
+			request.setMemberId(fields[2]);
+			result = this.grocery.endTransaction(request);
+			if (result.getResultCode() != Result.OPERATION_COMPLETED) {
+				return "ERR " + describe(result.getResultCode());
+			}
+			return "OK " + result.getCheckoutTotalCents();
+		default:
+			return "ERR UNKNOWN_COMMAND";
+		}
+	}
+
+	/**
+	 * Protocol name of a result code
+	 * 
+	 * @param resultCode code returned by the facade
+	 * @return name sent to the terminal
+	 */
+	private static String describe(int resultCode) {
+		switch (resultCode) {
+		case Result.PRODUCT_NOT_FOUND:
+			return "PRODUCT_NOT_FOUND";
+		case Result.NO_SUCH_MEMBER:
+			return "NO_SUCH_MEMBER";
+		case Result.TRANSACTION_NOT_FOUND:
+			return "TRANSACTION_NOT_FOUND";
+		case Result.ORDER_NOT_FOUND:
+			return "ORDER_NOT_FOUND";
+		default:
+			return "OPERATION_FAILED";
+		}
+	}
+
+	/**
+	 * Executor with one thread per task. Uses virtual threads when the running JVM provides them
+	 * and falls back to a cached pool of daemon platform threads otherwise, so the server still
+	 * runs on older JVMs.
+	 * 
+	 * @return the executor
+	 */
+	private static ExecutorService newTerminalExecutor() {
+		try {
+			Method virtualExecutor = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) virtualExecutor.invoke(null);
+		} catch (ReflectiveOperationException roe) {
+			return Executors.newCachedThreadPool(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable task) {
+					Thread thread = new Thread(task, "checkout-terminal");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+	}
+
+	/**
+	 * Runs the server until the process is stopped. Loads saved data if there is any.
+	 * 
+	 * @param args optional port to listen on
+	 * @throws IOException if the port cannot be bound
+	 */
+	public static void main(String[] args) throws IOException {
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+		Grocery grocery = null;
+		if (new File("GroceryData").exists()) {
+			grocery = Grocery.retrieveData();
+		}
+		if (grocery == null) {
+			grocery = Grocery.instance();
+		}
+		CheckoutServer server = new CheckoutServer(grocery, port);
+		System.out.println("Checkout server listening on port " + server.getPort());
+		try {
+			Thread.currentThread().join();
+		} catch (InterruptedException ie) {
+			server.close();
+		}
+	}
+}
@@ -0,0 +1,48 @@
+package ui;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Pool of equally sized direct buffers. Direct buffers are expensive to allocate and are freed
+ * only by the garbage collector, so network connections borrow them from the pool and give them
+ * back when they close instead of allocating their own.
+ */
+class DirectBufferPool {
+	private final int bufferSize;
+	// Buffers that are currently not in use
+	private final ConcurrentLinkedQueue<ByteBuffer> freeBuffers =
+			new ConcurrentLinkedQueue<ByteBuffer>();
+
+	/**
+	 * Creates an empty pool, buffers are allocated on demand
+	 * 
+	 * @param bufferSize capacity of every buffer in bytes
+	 */
+	DirectBufferPool(int bufferSize) {
+		this.bufferSize = bufferSize;
+	}
+
+	/**
+	 * Borrow a cleared buffer
+	 * 
+	 * @return a buffer from the pool, or a new one if the pool is empty
+	 */
+	ByteBuffer acquire() {
+		ByteBuffer buffer = this.freeBuffers.poll();
+		if (buffer == null) {
+			return ByteBuffer.allocateDirect(this.bufferSize);
+		}
+		buffer.clear();
+		return buffer;
+	}
+
+	/**
+	 * Return a buffer to the pool. The caller must not use it afterwards.
+	 * 
+	 * @param buffer buffer obtained from acquire
+	 */
+	void release(ByteBuffer buffer) {
+		this.freeBuffers.offer(buffer);
+	}
+}
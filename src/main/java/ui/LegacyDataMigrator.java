@@ -0,0 +1,31 @@
+package ui;
+
+import java.io.File;
+
+import business.facade.Grocery;
+
+/**
+ * Rewrites a data file saved by serializing the whole grocery as a snapshot in the binary format.
+ * Legacy files still load without migrating them, and the next checkpoint rewrites them anyway;
+ * migrating ahead of time only makes the first start after an upgrade fast.
+ */
+public class LegacyDataMigrator {
+	/**
+	 * Migrates the data file and reports the outcome
+	 * 
+	 * @param args optional path of the data file, GroceryData by default
+	 */
+	public static void main(String[] args) {
+		File dataFile = new File(args.length > 0 ? args[0] : "GroceryData");
+		if (!dataFile.exists()) {
+			System.out.println("No data file at " + dataFile);
+			System.exit(1);
+		}
+		if (Grocery.migrateLegacyData(dataFile)) {
+			System.out.println(dataFile + " is a binary snapshot");
+		} else {
+			System.out.println("Could not migrate " + dataFile);
+			System.exit(1);
+		}
+	}
+}
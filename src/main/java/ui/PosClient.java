@@ -0,0 +1,115 @@
+package ui;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+import ui.PosFrameCodec.Frame;
+import ui.PosFrameCodec.MalformedFrameException;
+
+/**
+ * Blocking client stub for the binary point of sale protocol. Every call sends one request frame
+ * and waits for its response. A client belongs to one terminal and is not safe for use by several
+ * threads at once.
+ */
+public class PosClient implements AutoCloseable {
+	private final SocketChannel channel;
+	private final ByteBuffer output = ByteBuffer.allocate(PosFrameCodec.MAX_FRAME_SIZE);
+	// Received bytes, in write mode
+	private final ByteBuffer input = ByteBuffer.allocate(4 * PosFrameCodec.MAX_FRAME_SIZE);
+	// Reused for every call
+	private final Frame request = new Frame();
+	private final Frame response = new Frame();
+
+	/**
+	 * Connect to a PosServer
+	 * 
+	 * @param host server host
+	 * @param port server port
+	 * @throws IOException if the connection fails
+	 */
+	public PosClient(String host, int port) throws IOException {
+		this.channel = SocketChannel.open(new InetSocketAddress(host, port));
+		this.channel.socket().setTcpNoDelay(true);
+	}
+
+	/**
+	 * Begin a transaction
+	 * 
+	 * @return response with the status and the transaction id, valid until the next call
+	 * @throws IOException if the connection fails
+	 */
+	public Frame begin() throws IOException {
+		this.request.reset();
+		this.request.opcode = PosFrameCodec.BEGIN;
+		return call();
+	}
+
+	/**
+	 * Add a line item to a transaction
+	 * 
+	 * @param transactionId id of the open transaction
+	 * @param productId     id of the product bought
+	 * @param quantity      quantity bought
+	 * @return response with the status and the totals in cents, valid until the next call
+	 * @throws IOException if the connection fails
+	 */
+	public Frame add(String transactionId, String productId, int quantity) throws IOException {
+		this.request.reset();
+		this.request.opcode = PosFrameCodec.ADD;
+		this.request.transactionId = transactionId;
+		this.request.productId = productId;
+		this.request.quantity = quantity;
+		return call();
+	}
+
+	/**
+	 * End a transaction and charge it to a member
+	 * 
+	 * @param transactionId id of the open transaction
+	 * @param memberId      id of the member
+	 * @return response with the status and the total in cents, valid until the next call
+	 * @throws IOException if the connection fails
+	 */
+	public Frame end(String transactionId, String memberId) throws IOException {
+		this.request.reset();
+		this.request.opcode = PosFrameCodec.END;
+		this.request.transactionId = transactionId;
+		this.request.memberId = memberId;
+		return call();
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.channel.close();
+	}
+
+	/**
+	 * Send the request and wait for the response
+	 */
+	private Frame call() throws IOException {
+		this.output.clear();
+		PosFrameCodec.writeRequest(this.request, this.output);
+		this.output.flip();
+		while (this.output.hasRemaining()) {
+			this.channel.write(this.output);
+		}
+		try {
+			while (true) {
+				this.input.flip();
+				boolean decoded = PosFrameCodec.readResponse(this.input, this.response);
+				this.input.compact();
+				if (decoded) {
+					return this.response;
+				}
+				if (this.channel.read(this.input) < 0) {
+					throw new EOFException("Server closed the connection");
+				}
+			}
+		} catch (MalformedFrameException mfe) {
+			throw new IOException(mfe.getMessage(), mfe);
+		}
+	}
+}
@@ -0,0 +1,274 @@
+package ui;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import business.facade.Result;
+
+/**
+ * Encoder and decoder of the binary point of sale protocol. Every frame is a 4 byte big endian
+ * length of the rest of the frame, followed by an opcode byte and the fields of that opcode.
+ * Strings are a 2 byte length followed by that many UTF-8 bytes. Requests and responses use the
+ * same opcodes; a response adds a status byte holding the facade result code right after the
+ * opcode.
+ * 
+ * <pre>
+ * BEGIN request:  (no fields)                            response: transactionId
+ * ADD request:    transactionId productId int quantity  response: long lineTotalCents
+ *                                                                 long checkoutTotalCents
+ * END request:    transactionId memberId                response: long checkoutTotalCents
+ * </pre>
+ * 
+ * The response fields are only present when the status is Result.OPERATION_COMPLETED. Responses
+ * are sent in the order the requests arrived, so a client may pipeline requests. Frames, ids
+ * included, must fit in MAX_FRAME_SIZE bytes.
+ */
+public final class PosFrameCodec {
+	public static final byte BEGIN = 1;
+	public static final byte ADD = 2;
+	public static final byte END = 3;
+	// Largest frame accepted, including the length prefix
+	public static final int MAX_FRAME_SIZE = 1024;
+	// Size of the length prefix
+	private static final int LENGTH_SIZE = 4;
+
+	private PosFrameCodec() {
+	}
+
+	/**
+	 * Fields of a request or response frame. Frames are mutable so that a connection can decode
+	 * into the same object again and again.
+	 */
+	public static final class Frame {
+		public byte opcode;
+		public byte status;
+		public String transactionId;
+		public String productId;
+		public String memberId;
+		public int quantity;
+		public long lineTotalCents;
+		public long checkoutTotalCents;
+
+		/**
+		 * Clear all fields
+		 */
+		public void reset() {
+			this.opcode = 0;
+			this.status = 0;
+			this.transactionId = null;
+			this.productId = null;
+			this.memberId = null;
+			this.quantity = 0;
+			this.lineTotalCents = 0;
+			this.checkoutTotalCents = 0;
+		}
+	}
+
+	/**
+	 * Thrown for frames that cannot be decoded. The connection should be closed.
+	 */
+	public static final class MalformedFrameException extends Exception {
+		private static final long serialVersionUID = 1L;
+
+		public MalformedFrameException(String message) {
+			super(message);
+		}
+	}
+
+	/**
+	 * Encode a request frame
+	 * 
+	 * @param frame  request with opcode and the fields of the opcode set
+	 * @param output buffer to append the frame to
+	 */
+	public static void writeRequest(Frame frame, ByteBuffer output) {
+		int start = beginFrame(output, frame.opcode);
+		switch (frame.opcode) {
+		case ADD:
+			writeString(output, frame.transactionId);
+			writeString(output, frame.productId);
+			output.putInt(frame.quantity);
+			break;
+		case END:
+			writeString(output, frame.transactionId);
+			writeString(output, frame.memberId);
+			break;
+		default:
+			break;
+		}
+		endFrame(output, start);
+	}
+
+	/**
+	 * Encode a response frame
+	 * 
+	 * @param frame  response with opcode, status and the fields of the opcode set
+	 * @param output buffer to append the frame to
+	 */
+	public static void writeResponse(Frame frame, ByteBuffer output) {
+		int start = beginFrame(output, frame.opcode);
+		output.put(frame.status);
+		if (frame.status == Result.OPERATION_COMPLETED) {
+			switch (frame.opcode) {
+			case BEGIN:
+				writeString(output, frame.transactionId);
+				break;
+			case ADD:
+				output.putLong(frame.lineTotalCents);
+				output.putLong(frame.checkoutTotalCents);
+				break;
+			case END:
+				output.putLong(frame.checkoutTotalCents);
+				break;
+			default:
+				break;
+			}
+		}
+		endFrame(output, start);
+	}
+
+	/**
+	 * Decode the next request frame if it has fully arrived
+	 * 
+	 * @param input buffer in read mode; its position moves past the frame only if one is decoded
+	 * @param frame frame to fill in
+	 * @return true iff a frame was decoded
+	 * @throws MalformedFrameException if the frame is too long or does not match its opcode
+	 */
+	public static boolean readRequest(ByteBuffer input, Frame frame)
+			throws MalformedFrameException {
+		int end = frameEnd(input);
+		if (end < 0) {
+			return false;
+		}
+		frame.reset();
+		try {
+			frame.opcode = input.get();
+			switch (frame.opcode) {
+			case BEGIN:
+				break;
+			case ADD:
+				frame.transactionId = readString(input);
+				frame.productId = readString(input);
+				frame.quantity = input.getInt();
+				break;
+			case END:
+				frame.transactionId = readString(input);
+				frame.memberId = readString(input);
+				break;
+			default:
+				throw new MalformedFrameException("Unknown opcode " + frame.opcode);
+			}
+		} catch (BufferUnderflowException bue) {
+			throw new MalformedFrameException("Frame shorter than its fields");
+		}
+		checkFrameEnd(input, end);
+		return true;
+	}
+
+	/**
+	 * Decode the next response frame if it has fully arrived
+	 * 
+	 * @param input buffer in read mode; its position moves past the frame only if one is decoded
+	 * @param frame frame to fill in
+	 * @return true iff a frame was decoded
+	 * @throws MalformedFrameException if the frame is too long or does not match its opcode
+	 */
+	public static boolean readResponse(ByteBuffer input, Frame frame)
+			throws MalformedFrameException {
+		int end = frameEnd(input);
+		if (end < 0) {
+			return false;
+		}
+		frame.reset();
+		try {
+			frame.opcode = input.get();
+			frame.status = input.get();
+			if (frame.status == Result.OPERATION_COMPLETED) {
+				switch (frame.opcode) {
+				case BEGIN:
+					frame.transactionId = readString(input);
+					break;
+				case ADD:
+					frame.lineTotalCents = input.getLong();
+					frame.checkoutTotalCents = input.getLong();
+					break;
+				case END:
+					frame.checkoutTotalCents = input.getLong();
+					break;
+				default:
+					throw new MalformedFrameException("Unknown opcode " + frame.opcode);
+				}
+			}
+		} catch (BufferUnderflowException bue) {
+			throw new MalformedFrameException("Frame shorter than its fields");
+		}
+		checkFrameEnd(input, end);
+		return true;
+	}
+
+	/**
+	 * Find where the next frame ends and skip its length prefix
+	 * 
+	 * @return position after the frame, or -1 if the frame has not fully arrived
+	 */
+	private static int frameEnd(ByteBuffer input) throws MalformedFrameException {
+		if (input.remaining() < LENGTH_SIZE) {
+			return -1;
+		}
+		int length = input.getInt(input.position());
+		if (length < 1 || length > MAX_FRAME_SIZE - LENGTH_SIZE) {
+			throw new MalformedFrameException("Bad frame length " + length);
+		}
+		if (input.remaining() < LENGTH_SIZE + length) {
+			return -1;
+		}
+		input.position(input.position() + LENGTH_SIZE);
+		return input.position() + length;
+	}
+
+	/**
+	 * Make sure the fields used up exactly the frame length
+	 */
+	private static void checkFrameEnd(ByteBuffer input, int end) throws MalformedFrameException {
+		if (input.position() != end) {
+			throw new MalformedFrameException("Frame length does not match its fields");
+		}
+	}
+
+	/**
+	 * Reserve the length prefix and write the opcode
+	 * 
+	 * @return position of the length prefix
+	 */
+	private static int beginFrame(ByteBuffer output, byte opcode) {
+		int start = output.position();
+		output.putInt(0);
+		output.put(opcode);
+		return start;
+	}
+
+	/**
+	 * Fill in the length prefix of a frame written from start
+	 */
+	private static void endFrame(ByteBuffer output, int start) {
+		output.putInt(start, output.position() - start - LENGTH_SIZE);
+	}
+
+	private static void writeString(ByteBuffer output, String value) {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		output.putShort((short) bytes.length);
+		output.put(bytes);
+	}
+
+	private static String readString(ByteBuffer input) throws MalformedFrameException {
+		int length = input.getShort() & 0xFFFF;
+		if (length > input.remaining()) {
+			throw new MalformedFrameException("String longer than frame");
+		}
+		byte[] bytes = new byte[length];
+		input.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,400 @@
+package ui;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import business.facade.Grocery;
+import business.facade.Request;
+import business.facade.Result;
+import ui.PosFrameCodec.Frame;
+import ui.PosFrameCodec.MalformedFrameException;
+
+/**
+ * Non-blocking server for the binary point of sale protocol described in PosFrameCodec. A single
+ * selector thread reads and decodes the frames of all terminals and writes the responses back.
+ * The Grocery checkout methods may wait for the journal to be forced, so the selector hands the
+ * decoded frames of a connection to a pool of workers and goes on serving the other terminals;
+ * a worker hands the batch back once it has called the facade for every frame. A connection has
+ * at most one batch at the workers, so its responses keep the order of its requests.
+ * 
+ * Each connection borrows a read and a write buffer from a pool of direct buffers, and its
+ * request, response and Request objects are reused for every batch, so serving a frame allocates
+ * little more than the decoded ids.
+ */
+public class PosServer implements AutoCloseable {
+	// Port used when none is given on the command line
+	public static final int DEFAULT_PORT = 3721;
+	// Workers used when no number is given
+	public static final int DEFAULT_WORKERS = 16;
+	// Size of the pooled connection buffers, room for many pipelined frames
+	private static final int BUFFER_SIZE = 16 * 1024;
+	// Most frames of a connection handed to a worker at once; each needs room for a full response
+	private static final int BATCH_SIZE = BUFFER_SIZE / PosFrameCodec.MAX_FRAME_SIZE;
+	private final Grocery grocery;
+	private final Selector selector;
+	private final ServerSocketChannel serverChannel;
+	private final DirectBufferPool buffers = new DirectBufferPool(BUFFER_SIZE);
+	// Call the facade for the batches of the connections
+	private final ExecutorService workers;
+	// Connections whose batch the workers have finished, to be answered by the selector thread
+	private final Queue<Connection> answered = new ConcurrentLinkedQueue<Connection>();
+	// Set by close(), the selector thread then shuts everything down
+	private volatile boolean closing;
+
+	/**
+	 * Creates the server with the default number of workers and starts its selector thread on the
+	 * loopback address
+	 * 
+	 * @param grocery facade the terminals check out against
+	 * @param port    port to listen on, 0 for any free port
+	 * @throws IOException if the port cannot be bound
+	 */
+	public PosServer(Grocery grocery, int port) throws IOException {
+		this(grocery, port, DEFAULT_WORKERS);
+	}
+
+	/**
+	 * Creates the server and starts its selector thread on the loopback address
+	 * 
+	 * @param grocery facade the terminals check out against
+	 * @param port    port to listen on, 0 for any free port
+	 * @param workers number of threads calling the facade; connections waiting for the journal
+	 *                each hold one, and their commits are forced together
+	 * @throws IOException if the port cannot be bound
+	 */
+	public PosServer(Grocery grocery, int port, int workers) throws IOException {
+		this.grocery = grocery;
+		this.workers = Executors.newFixedThreadPool(workers, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread worker = new Thread(runnable, "pos-worker");
+				worker.setDaemon(true);
+				return worker;
+			}
+		});
+		this.selector = Selector.open();
+		this.serverChannel = ServerSocketChannel.open();
+		this.serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+		this.serverChannel.configureBlocking(false);
+		this.serverChannel.register(this.selector, SelectionKey.OP_ACCEPT);
+		Thread selectorThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				selectLoop();
+			}
+		}, "pos-selector");
+		selectorThread.setDaemon(true);
+		selectorThread.start();
+	}
+
+	/**
+	 * Port the server listens on
+	 * 
+	 * @return the bound port
+	 */
+	public int getPort() {
+		return this.serverChannel.socket().getLocalPort();
+	}
+
+	/**
+	 * Stop the server and close all connections
+	 */
+	@Override
+	public void close() throws IOException {
+		this.closing = true;
+		this.selector.wakeup();
+	}
+
+	/**
+	 * Selector loop, runs until the server is closed and then closes all channels
+	 */
+	private void selectLoop() {
+		try {
+			while (!this.closing) {
+				this.selector.select();
+				Connection connection;
+				while ((connection = this.answered.poll()) != null) {
+					connection.answerBatch();
+				}
+				Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					handle(key);
+				}
+			}
+			for (SelectionKey key : this.selector.keys()) {
+				if (key.attachment() instanceof Connection) {
+					((Connection) key.attachment()).close();
+				}
+			}
+			this.serverChannel.close();
+			this.selector.close();
+		} catch (IOException ioe) {
+			ioe.printStackTrace();
+		} finally {
+			this.workers.shutdown();
+		}
+	}
+
+	/**
+	 * Handle a ready key, closing its connection on errors
+	 */
+	private void handle(SelectionKey key) {
+		try {
+			if (!key.isValid()) {
+				return;
+			}
+			if (key.isAcceptable()) {
+				accept();
+				return;
+			}
+			Connection connection = (Connection) key.attachment();
+			if (key.isReadable()) {
+				connection.read();
+			}
+			if (key.isValid() && key.isWritable() && connection.flush()) {
+				// Frames may have waited for output room
+				connection.dispatch();
+			}
+		} catch (IOException | MalformedFrameException e) {
+			Object attachment = key.attachment();
+			if (attachment instanceof Connection) {
+				((Connection) attachment).close();
+			}
+		}
+	}
+
+	/**
+	 * Accept all pending terminal connections
+	 */
+	private void accept() throws IOException {
+		SocketChannel channel;
+		while ((channel = this.serverChannel.accept()) != null) {
+			channel.configureBlocking(false);
+			channel.socket().setTcpNoDelay(true);
+			SelectionKey key = channel.register(this.selector, SelectionKey.OP_READ);
+			key.attach(new Connection(channel, key));
+		}
+	}
+
+	/**
+	 * Execute a decoded request against the facade and fill in the response. Runs on a worker.
+	 */
+	private void execute(Frame request, Frame response, Request facadeRequest) {
+		response.reset();
+		response.opcode = request.opcode;
+		facadeRequest.reset();
+		Result result;
+		switch (request.opcode) {
+		case PosFrameCodec.BEGIN:
+			result = this.grocery.beginTransaction();
+			response.transactionId = result.getTransactionId();
+			break;
+		case PosFrameCodec.ADD:
+			facadeRequest.setTransactionId(request.transactionId);
+			facadeRequest.setProductId(request.productId);
+			facadeRequest.setCheckoutQuantity(request.quantity);
+			result = this.grocery.addTransactionLineItem(facadeRequest);
+			response.lineTotalCents = result.getLineTotalCents();
+			response.checkoutTotalCents = result.getCheckoutTotalCents();
+			break;
+		default:
+			facadeRequest.setTransactionId(request.transactionId);
+			facadeRequest.setMemberId(request.memberId);
+			result = this.grocery.endTransaction(facadeRequest);
+			response.checkoutTotalCents = result.getCheckoutTotalCents();
+			break;
+		}
+		response.status = (byte) result.getResultCode();
+	}
+
+	/**
+	 * State of one terminal connection. The buffers and the busy flag belong to the selector
+	 * thread; the frames of a batch and the Request belong to the worker while the batch is out.
+	 */
+	private class Connection implements Runnable {
+		private final SocketChannel channel;
+		private final SelectionKey key;
+		// Bytes received but not yet decoded, in write mode
+		private ByteBuffer input = buffers.acquire();
+		// Encoded responses not yet sent, in write mode
+		private ByteBuffer output = buffers.acquire();
+		// Frames of the current batch, reused for every batch
+		private final Frame[] requests = new Frame[BATCH_SIZE];
+		private final Frame[] responses = new Frame[BATCH_SIZE];
+		private final Request facadeRequest = new Request();
+		private int batchSize;
+		// Set while a batch is at the workers
+		private boolean busy;
+
+		private Connection(SocketChannel channel, SelectionKey key) {
+			this.channel = channel;
+			this.key = key;
+			for (int index = 0; index < BATCH_SIZE; index++) {
+				this.requests[index] = new Frame();
+				this.responses[index] = new Frame();
+			}
+		}
+
+		/**
+		 * Read what has arrived, then hand it to a worker
+		 */
+		private void read() throws IOException, MalformedFrameException {
+			if (this.channel.read(this.input) < 0) {
+				close();
+				return;
+			}
+			dispatch();
+		}
+
+		/**
+		 * Hand the complete frames in the input to a worker, as many as there is room for full
+		 * responses. Frames left in the input are dispatched once the batch is answered or the
+		 * responses before them are sent, without waiting for more bytes to arrive.
+		 */
+		private void dispatch() throws MalformedFrameException {
+			if (this.busy) {
+				return;
+			}
+			int room = Math.min(BATCH_SIZE, this.output.remaining() / PosFrameCodec.MAX_FRAME_SIZE);
+			int count = 0;
+			this.input.flip();
+			while (count < room && PosFrameCodec.readRequest(this.input, this.requests[count])) {
+				count++;
+			}
+			this.input.compact();
+			if (count > 0) {
+				this.batchSize = count;
+				this.busy = true;
+				updateInterest();
+				workers.execute(this);
+			}
+		}
+
+		/**
+		 * Worker side: call the facade for every frame of the batch, then hand the connection
+		 * back to the selector thread
+		 */
+		@Override
+		public void run() {
+			try {
+				for (int index = 0; index < this.batchSize; index++) {
+					execute(this.requests[index], this.responses[index], this.facadeRequest);
+				}
+			} finally {
+				answered.add(this);
+				selector.wakeup();
+			}
+		}
+
+		/**
+		 * Selector side: encode the responses of the finished batch, send them and dispatch the
+		 * next batch
+		 */
+		private void answerBatch() {
+			if (this.output == null) {
+				// Closed while the batch was out
+				return;
+			}
+			for (int index = 0; index < this.batchSize; index++) {
+				PosFrameCodec.writeResponse(this.responses[index], this.output);
+			}
+			this.busy = false;
+			try {
+				if (flush()) {
+					dispatch();
+				}
+			} catch (IOException | MalformedFrameException e) {
+				close();
+			}
+		}
+
+		/**
+		 * Send pending responses, waiting for OP_WRITE if the socket cannot take them all
+		 * 
+		 * @return true iff all responses were sent
+		 */
+		private boolean flush() throws IOException {
+			this.output.flip();
+			this.channel.write(this.output);
+			boolean pending = this.output.hasRemaining();
+			this.output.compact();
+			updateInterest();
+			return !pending;
+		}
+
+		/**
+		 * Wait for OP_WRITE while responses are pending, and for OP_READ unless a batch is out;
+		 * bytes arriving meanwhile stay in the socket, which pushes back on the terminal
+		 */
+		private void updateInterest() {
+			int interestOps = 0;
+			if (this.output.position() > 0) {
+				interestOps |= SelectionKey.OP_WRITE;
+			}
+			if (!this.busy && this.input.hasRemaining()) {
+				interestOps |= SelectionKey.OP_READ;
+			}
+			if (this.key.interestOps() != interestOps) {
+				this.key.interestOps(interestOps);
+			}
+		}
+
+		/**
+		 * Close the channel and give the buffers back
+		 */
+		private void close() {
+			this.key.cancel();
+			try {
+				this.channel.close();
+			} catch (IOException ioe) {
+				// Nothing left to release
+			}
+			if (this.input != null) {
+				buffers.release(this.input);
+				buffers.release(this.output);
+				this.input = null;
+				this.output = null;
+			}
+		}
+	}
+
+	/**
+	 * Runs the server until the process is stopped. Loads saved data if there is any.
+	 * 
+	 * @param args optional port to listen on and number of workers
+	 * @throws IOException if the port cannot be bound
+	 */
+	public static void main(String[] args) throws IOException {
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+		int workers = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_WORKERS;
+		Grocery grocery = null;
+		if (new File("GroceryData").exists()) {
+			grocery = Grocery.retrieveData();
+		}
+		if (grocery == null) {
+			grocery = Grocery.instance();
+		}
+		PosServer server = new PosServer(grocery, port, workers);
+		System.out.println("POS server listening on port " + server.getPort());
+		try {
+			Thread.currentThread().join();
+		} catch (InterruptedException ie) {
+			server.close();
+		}
+	}
+}
@@ -4,7 +4,6 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.text.DateFormat;
-import java.text.NumberFormat;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.GregorianCalendar;
@@ -12,6 +11,7 @@ import java.util.Iterator;
 import java.util.List;
 
 import business.entities.LineItem;
+import business.entities.Money;
 import business.facade.Grocery;
 import business.facade.Request;
 import business.facade.Result;
@@ -44,6 +44,12 @@ public class UserInterface {
 	 * private constructor for singleton pattern
 	 */
 	private UserInterface() {
+		Grocery.setRestockListener(new Grocery.RestockListener() {
+			@Override
+			public void restockOrdersCreated(Iterator<Result> orders) {
+				notifyRestockOrders(orders);
+			}
+		});
 		if (getYesOrNoInput("Look for saved data: (yes or no): ")) {
 			retrieveData();
 		} else if (getYesOrNoInput(
@@ -221,16 +227,32 @@ public class UserInterface {
 		return output;
 	}
 
+	/**
+	 * Print a message informing the user of restock orders created in the background
+	 * 
+	 * @param orders the new orders
+	 */
+	private void notifyRestockOrders(Iterator<Result> orders) {
+		StringBuilder message = new StringBuilder("\nCreating restock orders:");
+		while (orders.hasNext()) {
+			Result order = orders.next();
+			message.append("\nOrder:");
+			message.append("\n - Order ID: ").append(order.getOrderId());
+			message.append("\n - Order Quantity: ").append(order.getOrderQuantity());
+			message.append("\n - Order Product: ")
+					.append(order.getOrderProduct().getProductName());
+		}
+		System.out.println(message);
+	}
+
 	/**
 	 * method to format dollar amounts
 	 * 
-	 * @param amount - amount in dollar to format
+	 * @param amount - amount in cents to format
 	 * @return the proper format in the form of a string
 	 */
-	private String formatDollar(double amount) {
-		NumberFormat dollarFormat = NumberFormat.getCurrencyInstance();
-		String output = dollarFormat.format(amount);
-		return output;
+	private String formatDollar(long amount) {
+		return Money.format(amount);
 	}
 
 	/**
@@ -287,7 +309,7 @@ public class UserInterface {
 			System.out.println("Address: " + result.getMemberAddress());
 			System.out.println("Phone Number: " + result.getMemberPhoneNumber());
 			System.out.println("Join Date: " + formatCalendar(result.getDateJoined()));
-			System.out.println("Fee Paid: " + formatDollar(result.getFeePaid()));
+			System.out.println("Fee Paid: " + formatDollar(result.getFeePaidCents()));
 			// Add a new line
 			System.out.println();
 		}
@@ -306,7 +328,7 @@ public class UserInterface {
 			System.out.println("Member Join Date: " + formatCalendar(result.getDateJoined()));
 			System.out.println("Member Address: " + result.getMemberAddress());
 			System.out.println("Member Phone Number: " + result.getMemberPhoneNumber());
-			System.out.println("Member Fee Paid: " + formatDollar(result.getFeePaid()) + "\n");
+			System.out.println("Member Fee Paid: " + formatDollar(result.getFeePaidCents()) + "\n");
 		}
 	}
 
@@ -321,14 +343,14 @@ public class UserInterface {
 		while (iterator.hasNext()) {
 			LineItem lineItem = iterator.next();
 			String productName = lineItem.getProduct().getProductName();
-			double productPrice = lineItem.getProduct().getCurrentPrice();
+			long productPrice = lineItem.getProduct().getCurrentPriceCents();
 			int quantity = lineItem.getQuantity();
 			String output = " - ";
 			output += "id " + lineItem.getProduct().getProductId();
 			output += ": " + productName;
 			output += " @" + formatDollar(productPrice);
 			output += " Qty: " + quantity;
-			output += " Line: " + formatDollar(quantity * productPrice);
+			output += " Line: " + formatDollar(lineItem.getLineTotalCents());
 			System.out.println(output);
 		}
 	}
@@ -364,7 +386,7 @@ public class UserInterface {
 			System.out.println("Date: " + formatCalendar(result.getTransactionDate()));
 			printTransactionLineItems(result.getLineItems());
 			System.out.println(
-					"Total Transaction Cost: " + formatDollar(result.getCheckoutTotal()) + "\n");
+					"Total Transaction Cost: " + formatDollar(result.getCheckoutTotalCents()) + "\n");
 		}
 		System.out.println("--End of transactions--\n");
 	}
@@ -434,7 +456,7 @@ public class UserInterface {
 			output += " ID: " + result.getProductId();
 			output += "\n    - Name: " + result.getProductName();
 			output += "\n    - Qty: " + result.getStockOnHand();
-			output += "\n    - Price: " + formatDollar(result.getCurrentPrice());
+			output += "\n    - Price: " + formatDollar(result.getCurrentPriceCents());
 			output += "\n    - Reorder Qty: " + result.getReorderLevel();
 			System.out.println(output);
 		}
@@ -474,7 +496,7 @@ public class UserInterface {
 			System.out.println("ID: " + result.getProductId());
 			System.out.println("Name: " + result.getProductName());
 			System.out.println("In Stock: " + result.getStockOnHand());
-			System.out.println("Current Price: " + formatDollar(result.getCurrentPrice()));
+			System.out.println("Current Price: " + formatDollar(result.getCurrentPriceCents()));
 			System.out.println("Reorder Level: " + result.getReorderLevel());
 			// Print new line to help readability
 			System.out.println();
@@ -534,10 +556,10 @@ public class UserInterface {
 			Result productInformation = grocery.searchProduct(checkoutItemRequest);
 			System.out.println("--------------");
 			System.out.println("Product name: " + productInformation.getProductName());
-			System.out.println("Unit price: " + formatDollar(productInformation.getCurrentPrice()));
+			System.out.println("Unit price: " + formatDollar(productInformation.getCurrentPriceCents()));
 			System.out.println("Quantity: " + checkoutItemRequest.getCheckoutQuantity());
-			System.out.println("Line Total: " + formatDollar(lineItemResult.getLineTotal()));
-			System.out.println("Total Cost: " + formatDollar(lineItemResult.getCheckoutTotal()));
+			System.out.println("Line Total: " + formatDollar(lineItemResult.getLineTotalCents()));
+			System.out.println("Total Cost: " + formatDollar(lineItemResult.getCheckoutTotalCents()));
 			boolean shouldContinue = getYesOrNoInput("Add more items for checkout? (yes/no): ");
 			if (!shouldContinue) {
 				moreItems = false;
@@ -557,6 +579,11 @@ public class UserInterface {
 					+ " was not found.");
 			return;
 		}
+		if (endTransactionResult.getResultCode() == Result.TRANSACTION_NOT_FOUND) {
+			System.out.println("Failed to finalize transaction " + transactionId
+					+ " because it is no longer open.");
+			return;
+		}
 		System.out.println(
 				"Successfully completed transaction " + endTransactionResult.getTransactionId());
 	}
@@ -581,7 +608,7 @@ public class UserInterface {
 			return;
 		}
 		System.out.println("New price for " + priceChangeResult.getProductName() + " is "
-				+ formatDollar(priceChangeResult.getCurrentPrice()));
+				+ formatDollar(priceChangeResult.getCurrentPriceCents()));
 		return;
 	}
 
@@ -0,0 +1,121 @@
+package business.entities;
+
+import java.util.Calendar;
+import java.util.LinkedList;
+
+/**
+ * Compares the heap used per entity now that dates are stored as epoch milliseconds with the
+ * layout the entities had when every one of them held its own Calendar. Heap deltas depend on the
+ * collector, so this is not run by the test suite; run its main method with an optional instance
+ * count.
+ */
+public class FootprintBenchmark {
+    /**
+     * Creates one instance for an index
+     */
+    private interface Factory {
+        Object create(int index);
+    }
+
+    /**
+     * Layout of a Transaction before the change: id, Calendar date and line items.
+     */
+    private static class CalendarTransaction {
+        private String transactionId;
+        private Calendar date;
+        private LinkedList<LineItem> lineItems;
+
+        private CalendarTransaction(int id) {
+            this.transactionId = "T" + id;
+            this.date = Calendar.getInstance();
+            this.lineItems = new LinkedList<LineItem>();
+        }
+    }
+
+    /**
+     * Layout of an Order before the change: id, product, quantity and Calendar date.
+     */
+    private static class CalendarOrder {
+        private String orderId;
+        private Product product;
+        private int quantity;
+        private Calendar date;
+
+        private CalendarOrder(int id, Product product) {
+            this.orderId = "R" + id;
+            this.product = product;
+            this.quantity = 1;
+            this.date = Calendar.getInstance();
+        }
+    }
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        final Product product = new Product("name", "id", 1, 1, 1.0);
+        long calendarTransaction = bytesPerInstance(count, new Factory() {
+            @Override
+            public Object create(int index) {
+                return new CalendarTransaction(index);
+            }
+        });
+        long transaction = bytesPerInstance(count, new Factory() {
+            @Override
+            public Object create(int index) {
+                return new Transaction();
+            }
+        });
+        long calendarOrder = bytesPerInstance(count, new Factory() {
+            @Override
+            public Object create(int index) {
+                return new CalendarOrder(index, product);
+            }
+        });
+        long order = bytesPerInstance(count, new Factory() {
+            @Override
+            public Object create(int index) {
+                return new Order(product, 1, System.currentTimeMillis());
+            }
+        });
+        long detachedProduct = bytesPerInstance(count, new Factory() {
+            @Override
+            public Object create(int index) {
+                return new Product("name", "id", 1, 1, 1.0);
+            }
+        });
+        System.out.println("Bytes per Transaction: " + calendarTransaction + " with Calendar, "
+                + transaction + " with epoch millis");
+        System.out.println("Bytes per Order: " + calendarOrder + " with Calendar, " + order
+                + " with epoch millis");
+        System.out.println("Bytes per detached Product: " + detachedProduct);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int attempt = 0; attempt < 4; attempt++) {
+            System.gc();
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Average heap bytes retained by each object the factory creates.
+     */
+    private static long bytesPerInstance(int count, Factory factory) {
+        Object[] retained = new Object[count];
+        long before = usedHeap();
+        for (int index = 0; index < count; index++) {
+            retained[index] = factory.create(index);
+        }
+        long after = usedHeap();
+        // Keep the objects reachable until after the measurement
+        if (retained[count - 1] == null) {
+            throw new IllegalStateException();
+        }
+        return (after - before) / count;
+    }
+}
@@ -0,0 +1,73 @@
+package business.entities;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.Test;
+
+public class IdAllocatorTest {
+
+    @Test
+    public void singleThreadNumbersInOrder() {
+        IdAllocator allocator = new IdAllocator(4);
+        for (int expected = 1; expected <= 10; expected++) {
+            assertEquals(expected, allocator.next());
+        }
+        assertEquals(12, allocator.highWaterMark());
+    }
+
+    @Test
+    public void threadsNeverShareANumber() throws Exception {
+        final IdAllocator allocator = new IdAllocator(8);
+        final Set<Integer> numbers = ConcurrentHashMap.newKeySet();
+        final int perThread = 10_000;
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int thread = 0; thread < 4; thread++) {
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int count = 0; count < perThread; count++) {
+                        assertTrue(numbers.add(allocator.next()));
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(4 * perThread, numbers.size());
+    }
+
+    @Test
+    public void restoreSkipsReservedNumbers() {
+        IdAllocator allocator = new IdAllocator(4);
+        allocator.next();
+        int saved = allocator.highWaterMark();
+        IdAllocator restarted = new IdAllocator(4);
+        restarted.next();
+        restarted.restore(saved);
+        assertEquals(saved + 1, restarted.next());
+        // Restoring an older mark never moves numbering backwards
+        restarted.restore(1);
+        assertEquals(saved + 5, restarted.next());
+    }
+
+    @Test
+    public void reserveKeepsBlocksUnlessItRaisesTheMark() {
+        IdAllocator allocator = new IdAllocator(4);
+        assertEquals(1, allocator.next());
+        // An id that was handed out already does not cost the thread its block
+        allocator.reserve("M1", "M");
+        assertEquals(2, allocator.next());
+        allocator.reserve("M9", "M");
+        assertEquals(10, allocator.next());
+    }
+}
@@ -0,0 +1,47 @@
+package business.entities;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class MemberTest {
+
+    @Test
+    public void parseMemberNumber() {
+        assertEquals(12, Member.parseMemberNumber("M12"));
+        assertEquals(Integer.MAX_VALUE, Member.parseMemberNumber("M" + Integer.MAX_VALUE));
+        assertEquals(-1, Member.parseMemberNumber("M"));
+        assertEquals(-1, Member.parseMemberNumber("m12"));
+        assertEquals(-1, Member.parseMemberNumber("M1a"));
+        assertEquals(-1, Member.parseMemberNumber("M99999999999"));
+        assertEquals(0, Member.parseMemberNumber("M0"));
+        assertEquals(-1, Member.parseMemberNumber("M0012"));
+        assertEquals(-1, Member.parseMemberNumber("M00"));
+    }
+
+    @Test
+    public void generatedIdsParse() {
+        Member member = new Member("name", "address", "phone", Calendar.getInstance(), 1.0);
+        String memberId = member.getMemberId();
+        assertEquals(Integer.parseInt(memberId.substring(1)), Member.parseMemberNumber(memberId));
+    }
+
+    @Test
+    public void loadedAndCopiedMembersDoNotReserveIds() {
+        int mark = Member.idHighWaterMark();
+        // An id beyond the mark, as if the snapshot restoring the mark were still being read
+        Member loaded = new Member(Member.memberIdOf(mark + 1000), "name", "address", "phone", 0L,
+                100L, new TransactionHistory.Loader() {
+                    @Override
+                    public List<Transaction> load() {
+                        return Collections.emptyList();
+                    }
+                });
+        loaded.copyWithout(Collections.<String>emptySet());
+        assertEquals(mark, Member.idHighWaterMark());
+    }
+}
@@ -0,0 +1,25 @@
+package business.entities;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class MoneyTest {
+
+    @Test
+    public void convertsBetweenDollarsAndCents() {
+        assertEquals(111, Money.toCents(1.11));
+        assertEquals(456, Money.toCents(4.56));
+        assertEquals(-5, Money.toCents(-0.05));
+        assertTrue(Money.toDollars(111) == 1.11);
+        assertTrue(Money.toDollars(Money.toCents(23.23)) == 23.23);
+    }
+
+    @Test
+    public void formatsCents() {
+        assertEquals(Money.format(12345), Money.format(12345));
+        assertTrue(Money.format(12345).contains("123"));
+        assertTrue(Money.format(12345).contains("45"));
+    }
+}
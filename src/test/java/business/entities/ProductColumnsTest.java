@@ -0,0 +1,39 @@
+package business.entities;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class ProductColumnsTest {
+
+    @Test
+    public void viewsReadAndWriteSlots() {
+        ProductColumns columns = new ProductColumns(1);
+        for (int index = 0; index < 5; index++) {
+            assertEquals(index, columns.allocate("name" + index, "id" + index, 3, index, 100));
+        }
+        Product product = new Product(columns, 4);
+        assertEquals("name4", product.getProductName());
+        assertEquals("id4", product.getProductId());
+        product.setStockOnHand(7);
+        product.setCurrentPrice(1.25);
+        assertEquals(7, columns.getStockOnHand(4));
+        assertEquals(7, product.getAndAddStockOnHand(-3));
+        assertEquals(4, product.getStockOnHand());
+        assertEquals(125, columns.getPrice(4));
+        assertEquals(new Product("other", "id4", 0, 0, 0), product);
+    }
+
+    @Test
+    public void scansColumns() {
+        ProductColumns columns = new ProductColumns(1);
+        columns.allocate("a", "a", 5, 10, 150);
+        columns.allocate("b", "b", 5, 5, 200);
+        columns.allocate("c", "c", 5, 6, 1);
+        columns.allocate("d", "d", 5, -2, 300);
+        columns.allocate("e", "e", 0, 0, 7);
+        assertArrayEquals(new int[] {1, 3, 4}, columns.slotsAtOrBelowReorderLevel());
+        assertEquals(10 * 150 + 5 * 200 + 6 * 1, columns.inventoryValue());
+    }
+}
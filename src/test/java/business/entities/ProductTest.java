@@ -2,6 +2,11 @@ package business.entities;
 
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
 import static org.junit.Assert.*;
 
 public class ProductTest {
@@ -14,4 +19,27 @@ public class ProductTest {
 
         assertEquals(product1, product2);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void detachedProductsHaveTheirOwnStoreAndSerializeAlone() throws Exception {
+        product1 = new Product("Tomato", "1", 1, 1, 9.99);
+        product2 = new Product("Basil", "2", 3, 4, 1.25);
+        assertTrue(product1.isDetached());
+        assertTrue(product2.isDetached());
+        product1.setCurrentPriceCents(5);
+        assertEquals(125, product2.getCurrentPriceCents());
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream output = new ObjectOutputStream(bytes);
+        output.writeObject(product2);
+        output.close();
+        // Only the product's own fields are written, not its store
+        assertTrue(bytes.size() < 512);
+        Product copy = (Product) new ObjectInputStream(
+                new ByteArrayInputStream(bytes.toByteArray())).readObject();
+        assertEquals("Basil", copy.getProductName());
+        assertEquals(4, copy.getStockOnHand());
+        assertEquals(3, copy.getReorderLevel());
+        assertEquals(125, copy.getCurrentPriceCents());
+        assertTrue(copy.isDetached());
+    }
+}
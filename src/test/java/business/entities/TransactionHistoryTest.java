@@ -0,0 +1,81 @@
+package business.entities;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+
+public class TransactionHistoryTest {
+
+    private static Transaction transactionAt(long timestamp) {
+        return new Transaction(timestamp);
+    }
+
+    private static List<Transaction> toList(Iterator<Transaction> iterator) {
+        List<Transaction> list = new ArrayList<Transaction>();
+        iterator.forEachRemaining(list::add);
+        return list;
+    }
+
+    @Test
+    public void betweenIsInclusiveAndOrdered() {
+        TransactionHistory history = new TransactionHistory();
+        Transaction t30 = transactionAt(30);
+        Transaction t10 = transactionAt(10);
+        Transaction t20 = transactionAt(20);
+        Transaction t20b = transactionAt(20);
+        Transaction t40 = transactionAt(40);
+        history.add(t30);
+        history.add(t10);
+        history.add(t20);
+        history.add(t40);
+        history.add(t20b);
+        assertEquals(5, history.size());
+        List<Transaction> range = toList(history.between(20, 30));
+        assertEquals(3, range.size());
+        assertEquals(t20, range.get(0));
+        assertEquals(t20b, range.get(1));
+        assertEquals(t30, range.get(2));
+        assertEquals(5, toList(history.between(0, 100)).size());
+        assertFalse(history.between(41, 100).hasNext());
+        assertFalse(history.between(30, 20).hasNext());
+        assertEquals(t10, history.iterator().next());
+    }
+
+    @Test
+    public void lazyHistoryIsReadOnFirstUse() {
+        final Transaction t10 = transactionAt(10);
+        final Transaction t20 = transactionAt(20);
+        final int[] loads = new int[1];
+        TransactionHistory history = new TransactionHistory(new TransactionHistory.Loader() {
+            @Override
+            public List<Transaction> load() {
+                loads[0]++;
+                return Arrays.asList(t10, t20);
+            }
+        });
+        assertFalse(history.isLoaded());
+        // Copies of an unread history share its loader
+        TransactionHistory copy = history.copyWithout(Collections.<String>emptySet());
+        assertFalse(history.isLoaded());
+        assertEquals(0, loads[0]);
+        Transaction t15 = transactionAt(15);
+        history.add(t15);
+        assertTrue(history.isLoaded());
+        assertEquals(1, loads[0]);
+        assertEquals(Arrays.asList(t10, t15, t20), toList(history.iterator()));
+        assertEquals(2, toList(copy.between(0, 100)).size());
+        assertEquals(2, loads[0]);
+        // Loaded histories leave out the excluded transactions
+        TransactionHistory without =
+                history.copyWithout(Collections.singleton(t15.getTransactionId()));
+        assertEquals(Arrays.asList(t10, t20), toList(without.iterator()));
+    }
+}
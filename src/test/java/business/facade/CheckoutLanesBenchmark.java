@@ -0,0 +1,43 @@
+package business.facade;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures checkouts per second of parallel checkout lanes over disjoint products, against the
+ * same number of checkouts run by a single lane. On a machine with several cores the lanes should
+ * scale with the lane count. Not run by the test suite; run its main method with optional
+ * arguments "maxLanes checkoutsPerLane".
+ */
+public class CheckoutLanesBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int maxLanes = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int checkouts = args.length > 1 ? Integer.parseInt(args[1]) : 20_000;
+        Grocery grocery = Grocery.instance();
+        String memberId = GroceryConcurrencyTest.addMember(grocery);
+        // Warm up the checkout path before measuring
+        run(grocery, memberId, 1, checkouts);
+        for (int lanes = 1; lanes <= maxLanes; lanes *= 2) {
+            double serialized = run(grocery, memberId, 1, lanes * checkouts);
+            double parallel = run(grocery, memberId, lanes, checkouts);
+            System.out.printf("%2d lanes %10.0f checkouts/s, serialized %10.0f checkouts/s, "
+                    + "speedup %5.2f%n", lanes, parallel, serialized, parallel / serialized);
+        }
+    }
+
+    /**
+     * Run lanes lanes over products of their own, each checking out checkouts times
+     *
+     * @return checkouts per second over all lanes
+     */
+    private static double run(Grocery grocery, String memberId, int lanes, int checkouts)
+            throws Exception {
+        List<String> productIds = new ArrayList<String>();
+        for (int lane = 0; lane < lanes; lane++) {
+            productIds.add(GroceryConcurrencyTest.addProduct(grocery));
+        }
+        long elapsed = GroceryConcurrencyTest.runLanes(grocery, memberId, productIds, checkouts);
+        return (double) lanes * checkouts * 1e9 / Math.max(1, elapsed);
+    }
+}
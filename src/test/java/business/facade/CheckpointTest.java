@@ -0,0 +1,279 @@
+package business.facade;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.util.Calendar;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import helpers.RandomHelper;
+
+/**
+ * Checkpoints stopped after each of their steps, as a crash of the process would leave them, and
+ * checkpoints running while checkouts go on. The stopped checkpoints are simulated in this JVM;
+ * one test kills a forked JVM while it writes snapshots.
+ */
+public class CheckpointTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    File dataFile;
+    Grocery grocery;
+    String memberId;
+
+    @Before
+    public void setup() {
+        this.dataFile = new File(folder.getRoot(), "GroceryData");
+        assertTrue(Grocery.save(dataFile));
+        this.grocery = Grocery.instance();
+        Request request = new Request();
+        request.setMemberName("Morgan");
+        request.setMemberAddress("2 Checkpoint Rd");
+        request.setMemberPhoneNumber("555-0102");
+        request.setFeePaid(10.0);
+        request.setDateJoined(Calendar.getInstance());
+        this.memberId = grocery.addMember(request).getMemberId();
+    }
+
+    private String addProduct(int stockOnHand) {
+        String productId = "c" + RandomHelper.randomInt(0, Integer.MAX_VALUE - 1);
+        Request request = new Request();
+        request.setProductId(productId);
+        request.setProductName("Checkpointed Lentils");
+        request.setStockOnHand(stockOnHand);
+        request.setCurrentPrice(1.00);
+        request.setReorderLevel(0);
+        assertEquals(Result.OPERATION_COMPLETED, grocery.addProduct(request).getResultCode());
+        return productId;
+    }
+
+    private void checkout(String productId, int quantity) {
+        Request request = new Request();
+        request.setTransactionId(grocery.beginTransaction().getTransactionId());
+        request.setProductId(productId);
+        request.setCheckoutQuantity(quantity);
+        grocery.addTransactionLineItem(request);
+        request.setMemberId(memberId);
+        assertEquals(Result.OPERATION_COMPLETED, grocery.endTransaction(request).getResultCode());
+    }
+
+    private int stockOf(Grocery grocery, String productId) {
+        Request request = new Request();
+        request.setProductId(productId);
+        return grocery.searchProduct(request).getStockOnHand();
+    }
+
+    private int transactionsOf(Grocery grocery) {
+        Request request = new Request();
+        request.setMemberId(memberId);
+        Calendar start = Calendar.getInstance();
+        start.add(Calendar.DATE, -1);
+        Calendar end = Calendar.getInstance();
+        end.add(Calendar.DATE, 1);
+        request.setStartDate(start);
+        request.setEndDate(end);
+        int count = 0;
+        for (Iterator<Result> iterator = grocery.getMembersTransactions(request); iterator
+                .hasNext(); iterator.next()) {
+            count++;
+        }
+        return count;
+    }
+
+    private int journalSegments() {
+        int count = 0;
+        for (String name : folder.getRoot().list()) {
+            if (name.startsWith("GroceryData.journal.")) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Test
+    public void changesDuringCheckpointAreKeptOnce() throws IOException {
+        String before = addProduct(100);
+        checkout(before, 10);
+        Grocery.Checkpoint checkpoint = grocery.beginCheckpoint(dataFile);
+        String during = addProduct(100);
+        checkout(before, 5);
+        checkout(during, 7);
+        checkpoint.writeSnapshot();
+        checkpoint.install();
+        checkpoint.removeCoveredSegments();
+        assertEquals(1, journalSegments());
+        Grocery retrieved = Grocery.retrieveData(dataFile);
+        assertEquals(85, stockOf(retrieved, before));
+        assertEquals(93, stockOf(retrieved, during));
+        assertEquals(3, transactionsOf(retrieved));
+    }
+
+    @Test
+    public void crashWhileWritingSnapshotKeepsPreviousSnapshot() throws IOException {
+        String productId = addProduct(100);
+        checkout(productId, 10);
+        Grocery.Checkpoint checkpoint = grocery.beginCheckpoint(dataFile);
+        checkout(productId, 5);
+        checkpoint.writeSnapshot();
+        // The process died half way through writing the snapshot
+        File temporaryFile = new File(dataFile.getPath() + ".tmp");
+        RandomAccessFile snapshot = new RandomAccessFile(temporaryFile, "rw");
+        snapshot.setLength(snapshot.length() / 2);
+        snapshot.close();
+        assertEquals(2, journalSegments());
+        Grocery retrieved = Grocery.retrieveData(dataFile);
+        assertEquals(85, stockOf(retrieved, productId));
+        assertEquals(2, transactionsOf(retrieved));
+        assertTrue(!temporaryFile.exists());
+        // Both segments are needed until the next checkpoint completes
+        assertEquals(2, journalSegments());
+        assertTrue(retrieved.checkpoint());
+        assertEquals(1, journalSegments());
+        assertEquals(85, stockOf(Grocery.retrieveData(dataFile), productId));
+    }
+
+    @Test
+    public void crashAfterInstallSkipsCoveredSegment() throws IOException {
+        String productId = addProduct(100);
+        checkout(productId, 10);
+        Grocery.Checkpoint checkpoint = grocery.beginCheckpoint(dataFile);
+        checkout(productId, 5);
+        checkpoint.writeSnapshot();
+        checkpoint.install();
+        // The process died before the covered segment was deleted
+        assertEquals(2, journalSegments());
+        Grocery retrieved = Grocery.retrieveData(dataFile);
+        assertEquals(85, stockOf(retrieved, productId));
+        assertEquals(2, transactionsOf(retrieved));
+        assertEquals(1, journalSegments());
+    }
+
+    @Test
+    public void backgroundCheckpointsDoNotStopCheckouts() throws Exception {
+        final String productId = addProduct(10_000);
+        grocery.startCheckpoints(1, TimeUnit.MILLISECONDS);
+        try {
+            for (int sale = 0; sale < 200; sale++) {
+                checkout(productId, 1);
+            }
+        } finally {
+            grocery.stopCheckpoints();
+        }
+        Grocery retrieved = Grocery.retrieveData(dataFile);
+        assertEquals(9_800, stockOf(retrieved, productId));
+        assertEquals(200, transactionsOf(retrieved));
+    }
+
+    @Test(timeout = 60_000)
+    public void killedProcessKeepsEveryDurableCheckout() throws Exception {
+        File temporaryFile = new File(dataFile.getPath() + ".tmp");
+        String java = new File(new File(System.getProperty("java.home"), "bin"), "java").getPath();
+        Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                CheckpointingProcess.class.getName(), dataFile.getPath())
+                        .redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        String[] ready;
+        try {
+            BufferedReader output =
+                    new BufferedReader(new InputStreamReader(process.getInputStream()));
+            ready = output.readLine().split(" ");
+            // Kill the process while it writes a snapshot
+            while (temporaryFile.length() == 0) {
+                Thread.sleep(1);
+            }
+        } finally {
+            process.destroyForcibly();
+            process.waitFor();
+        }
+        Grocery retrieved = Grocery.retrieveData(dataFile);
+        this.memberId = ready[0];
+        int sold = CheckpointingProcess.STOCK - stockOf(retrieved, ready[1]);
+        assertTrue(sold >= CheckpointingProcess.CHECKOUTS);
+        assertEquals(sold, transactionsOf(retrieved));
+    }
+
+    /**
+     * Checks out one item at a time and checkpoints after each checkout until it is killed.
+     * Prints the member id and the product id once the first checkouts are durable.
+     */
+    public static class CheckpointingProcess {
+        static final int STOCK = 1_000_000;
+        static final int CHECKOUTS = 20;
+
+        public static void main(String[] args) {
+            Grocery grocery = Grocery.instance();
+            // Enough products that writing a snapshot takes a while
+            for (int index = 0; index < 20_000; index++) {
+                Request request = new Request();
+                request.setProductId("filler" + index);
+                request.setProductName("Filler " + index);
+                request.setStockOnHand(10);
+                request.setCurrentPrice(1.00);
+                request.setReorderLevel(0);
+                grocery.addProduct(request);
+            }
+            if (!Grocery.save(new File(args[0]))) {
+                System.exit(1);
+            }
+            Request request = new Request();
+            request.setMemberName("Killed");
+            request.setMemberAddress("3 Crash Ct");
+            request.setMemberPhoneNumber("555-0103");
+            request.setFeePaid(10.0);
+            request.setDateJoined(Calendar.getInstance());
+            request.setMemberId(grocery.addMember(request).getMemberId());
+            request.setProductId("killed");
+            request.setProductName("Killed Lentils");
+            request.setStockOnHand(STOCK);
+            request.setReorderLevel(0);
+            grocery.addProduct(request);
+            request.setCheckoutQuantity(1);
+            for (int checkout = 0; checkout < CHECKOUTS; checkout++) {
+                checkoutOne(grocery, request);
+            }
+            System.out.println(request.getMemberId() + " " + request.getProductId());
+            System.out.flush();
+            while (true) {
+                checkoutOne(grocery, request);
+                grocery.checkpoint();
+            }
+        }
+
+        private static void checkoutOne(Grocery grocery, Request request) {
+            request.setTransactionId(grocery.beginTransaction().getTransactionId());
+            grocery.addTransactionLineItem(request);
+            grocery.endTransaction(request);
+        }
+    }
+
+    private int restockWorkers() {
+        int count = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().equals("restock-pipeline") && thread.isAlive()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Test
+    public void retrieveStopsTheReplacedRestockWorker() {
+        Grocery.retrieveData(dataFile);
+        int workers = restockWorkers();
+        for (int retrieve = 0; retrieve < 5; retrieve++) {
+            Grocery.retrieveData(dataFile);
+        }
+        assertEquals(workers, restockWorkers());
+        // The replaced grocery no longer waits for its pipeline
+        grocery.awaitRestockOrders();
+    }
+}
@@ -0,0 +1,210 @@
+package business.facade;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import helpers.RandomHelper;
+
+public class CommandPipelineTest {
+    private static final int PRODUCERS = 4;
+    private static final int CHECKOUTS = 500;
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void producersShareOneWriter() throws Exception {
+        final Grocery grocery = Grocery.instance();
+        // A small ring makes the producers wrap around and wait for the writer
+        try (final CommandPipeline pipeline = new CommandPipeline(grocery, 8)) {
+            Request request = new Request();
+            request.setMemberName(RandomHelper.randomString());
+            request.setMemberAddress("4 Ring Rd");
+            request.setMemberPhoneNumber("555-0123");
+            request.setDateJoined(Calendar.getInstance());
+            request.setFeePaid(1.0);
+            final String memberId = get(pipeline.addMember(request)).getMemberId();
+            request = new Request();
+            final String productId = "ring" + System.nanoTime();
+            request.setProductId(productId);
+            request.setProductName("Ring item");
+            request.setStockOnHand(10_000);
+            request.setReorderLevel(0);
+            request.setCurrentPrice(0.5);
+            assertEquals(Result.OPERATION_COMPLETED,
+                    get(pipeline.addProduct(request)).getResultCode());
+            List<Thread> threads = new ArrayList<Thread>();
+            final List<Throwable> failures = new ArrayList<Throwable>();
+            for (int producer = 0; producer < PRODUCERS; producer++) {
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            for (int checkout = 0; checkout < CHECKOUTS; checkout++) {
+                                checkout(grocery, pipeline, memberId, productId);
+                            }
+                        } catch (Throwable throwable) {
+                            synchronized (failures) {
+                                failures.add(throwable);
+                            }
+                        }
+                    }
+                });
+                thread.start();
+                threads.add(thread);
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            assertTrue(failures.toString(), failures.isEmpty());
+            request = new Request();
+            request.setProductId(productId);
+            assertEquals(10_000 - PRODUCERS * CHECKOUTS,
+                    grocery.searchProduct(request).getStockOnHand());
+        }
+    }
+
+    @Test
+    public void batchIsCommittedOnce() throws Exception {
+        Grocery.setJournalSettings(new GroupCommitWriter.Settings(
+                GroupCommitWriter.Policy.PER_OP, 0, TimeUnit.MILLISECONDS, 256));
+        try {
+            assertTrue(Grocery.save(folder.newFile("GroceryData")));
+        } finally {
+            Grocery.setJournalSettings(new GroupCommitWriter.Settings(
+                    GroupCommitWriter.Policy.GROUPED, 0, TimeUnit.MILLISECONDS, 256));
+        }
+        Grocery grocery = Grocery.instance();
+        final String productId = "batch" + System.nanoTime();
+        Request request = new Request();
+        request.setProductId(productId);
+        request.setProductName("Batch item");
+        request.setStockOnHand(10);
+        request.setReorderLevel(0);
+        request.setCurrentPrice(0.5);
+        assertEquals(Result.OPERATION_COMPLETED, grocery.addProduct(request).getResultCode());
+        try (CommandPipeline pipeline = new CommandPipeline(grocery, 256)) {
+            long forces = grocery.journalForceCount();
+            // The writer waits inside the first command while the others queue up behind it
+            final CountDownLatch release = new CountDownLatch(1);
+            Request held = new Request() {
+                @Override
+                public long getCurrentPriceCents() {
+                    try {
+                        release.await();
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return super.getCurrentPriceCents();
+                }
+            };
+            held.setProductId(productId);
+            held.setCurrentPrice(1.0);
+            List<CompletableFuture<Result>> futures = new ArrayList<CompletableFuture<Result>>();
+            futures.add(pipeline.changePrice(held));
+            for (int change = 0; change < 100; change++) {
+                request = new Request();
+                request.setProductId(productId);
+                request.setCurrentPrice(2.0 + change);
+                futures.add(pipeline.changePrice(request));
+            }
+            release.countDown();
+            for (CompletableFuture<Result> future : futures) {
+                assertEquals(Result.OPERATION_COMPLETED, get(future).getResultCode());
+            }
+            // One force for the held command, one for the queued batch
+            assertTrue(grocery.journalForceCount() - forces <= 2);
+        }
+    }
+
+    @Test(expected = ExecutionException.class)
+    public void closedPipelineRejectsCommands() throws Exception {
+        CommandPipeline pipeline = new CommandPipeline(Grocery.instance(), 4);
+        pipeline.close();
+        pipeline.changePrice(new Request()).get(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void commandsSubmittedWhileClosingComplete() throws Exception {
+        Grocery grocery = Grocery.instance();
+        final String productId = "closing" + System.nanoTime();
+        Request request = new Request();
+        request.setProductId(productId);
+        request.setProductName("Closing item");
+        request.setStockOnHand(10);
+        request.setReorderLevel(0);
+        request.setCurrentPrice(0.5);
+        assertEquals(Result.OPERATION_COMPLETED, grocery.addProduct(request).getResultCode());
+        final CommandPipeline pipeline = new CommandPipeline(grocery, 8);
+        final List<CompletableFuture<Result>> futures = new ArrayList<CompletableFuture<Result>>();
+        final CountDownLatch started = new CountDownLatch(PRODUCERS);
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int producer = 0; producer < PRODUCERS; producer++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    started.countDown();
+                    for (int change = 0; change < CHECKOUTS; change++) {
+                        Request request = new Request();
+                        request.setProductId(productId);
+                        request.setCurrentPrice(1.0);
+                        CompletableFuture<Result> future = pipeline.changePrice(request);
+                        synchronized (futures) {
+                            futures.add(future);
+                        }
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        started.await();
+        pipeline.close();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        // Every command ran before the close or failed because of it, none is left hanging
+        for (CompletableFuture<Result> future : futures) {
+            try {
+                assertEquals(Result.OPERATION_COMPLETED, get(future).getResultCode());
+            } catch (ExecutionException ee) {
+                assertTrue(ee.getCause() instanceof IllegalStateException);
+            }
+        }
+    }
+
+    /**
+     * Submits the line item and the end of a transaction without waiting in between. The ring
+     * executes them in the order they were submitted.
+     */
+    private static void checkout(Grocery grocery, CommandPipeline pipeline, String memberId,
+            String productId) throws Exception {
+        String transactionId = grocery.beginTransaction().getTransactionId();
+        Request lineItem = new Request();
+        lineItem.setTransactionId(transactionId);
+        lineItem.setProductId(productId);
+        lineItem.setCheckoutQuantity(1);
+        Request end = new Request();
+        end.setTransactionId(transactionId);
+        end.setMemberId(memberId);
+        CompletableFuture<Result> added = pipeline.addTransactionLineItem(lineItem);
+        CompletableFuture<Result> ended = pipeline.endTransaction(end);
+        assertEquals(Result.OPERATION_COMPLETED, get(added).getResultCode());
+        assertEquals(Result.OPERATION_COMPLETED, get(ended).getResultCode());
+    }
+
+    private static Result get(CompletableFuture<Result> future) throws Exception {
+        return future.get(10, TimeUnit.SECONDS);
+    }
+}
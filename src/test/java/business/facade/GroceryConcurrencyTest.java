@@ -0,0 +1,169 @@
+package business.facade;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import helpers.RandomHelper;
+
+public class GroceryConcurrencyTest {
+    private static final int INITIAL_STOCK = 1_000_000;
+    private static final int CHECKOUTS_PER_LANE = 2_000;
+
+    /**
+     * Runs checkout lanes over disjoint products and checks that no stock update was lost. The
+     * throughput per lane count is measured by CheckoutLanesBenchmark.
+     */
+    @Test
+    public void parallelLanesOverDisjointProducts() throws Exception {
+        Grocery grocery = Grocery.instance();
+        String memberId = addMember(grocery);
+        for (int lanes = 1; lanes <= 4; lanes *= 2) {
+            List<String> productIds = new ArrayList<String>();
+            for (int lane = 0; lane < lanes; lane++) {
+                productIds.add(addProduct(grocery));
+            }
+            runLanes(grocery, memberId, productIds, CHECKOUTS_PER_LANE);
+            for (String productId : productIds) {
+                Request request = new Request();
+                request.setProductId(productId);
+                assertEquals(INITIAL_STOCK - CHECKOUTS_PER_LANE,
+                        grocery.searchProduct(request).getStockOnHand());
+            }
+        }
+    }
+
+    /**
+     * Two lanes hammering the same product must not lose any decrement.
+     */
+    @Test
+    public void parallelLanesOverSameProduct() throws Exception {
+        Grocery grocery = Grocery.instance();
+        String memberId = addMember(grocery);
+        String productId = addProduct(grocery);
+        List<String> productIds = new ArrayList<String>();
+        productIds.add(productId);
+        productIds.add(productId);
+        runLanes(grocery, memberId, productIds, CHECKOUTS_PER_LANE);
+        Request request = new Request();
+        request.setProductId(productId);
+        assertEquals(INITIAL_STOCK - 2 * CHECKOUTS_PER_LANE,
+                grocery.searchProduct(request).getStockOnHand());
+    }
+
+    /**
+     * Lanes selling the same product past its reorder level create exactly one restock order.
+     */
+    @Test
+    public void reorderFiresOncePerCrossing() throws Exception {
+        Grocery grocery = Grocery.instance();
+        String memberId = addMember(grocery);
+        // The initial order of 200 is received first, then the sales end 10 units above zero
+        String productId = addProduct(grocery, 2 * CHECKOUTS_PER_LANE - 190, 100);
+        Request request = new Request();
+        request.setProductId(productId);
+        request.setOrderId(grocery.getOutstandingOrders(request).next().getOrderId());
+        assertEquals(Result.OPERATION_COMPLETED, grocery.processShipment(request).getResultCode());
+        assertEquals(0, countOrders(grocery.getOutstandingOrders(request)));
+        List<String> productIds = new ArrayList<String>();
+        productIds.add(productId);
+        productIds.add(productId);
+        runLanes(grocery, memberId, productIds, CHECKOUTS_PER_LANE);
+        grocery.awaitRestockOrders();
+        assertEquals(10, grocery.searchProduct(request).getStockOnHand());
+        assertEquals(1, countOrders(grocery.getOutstandingOrders(request)));
+    }
+
+    private static int countOrders(Iterator<Result> orders) {
+        int count = 0;
+        while (orders.hasNext()) {
+            orders.next();
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Starts one thread per product id, each checking out one unit of its product per
+     * transaction checkouts times, and returns the elapsed nanoseconds.
+     */
+    static long runLanes(final Grocery grocery, final String memberId, List<String> productIds,
+            final int checkouts) throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (final String productId : productIds) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        checkout(grocery, memberId, productId, checkouts);
+                    } catch (Throwable throwable) {
+                        failure.compareAndSet(null, throwable);
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long elapsed = System.nanoTime() - begin;
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        return elapsed;
+    }
+
+    private static void checkout(Grocery grocery, String memberId, String productId,
+            int checkouts) {
+        for (int checkout = 0; checkout < checkouts; checkout++) {
+            Request request = Request.forCurrentThread();
+            String transactionId = grocery.beginTransaction().getTransactionId();
+            request.setTransactionId(transactionId);
+            request.setProductId(productId);
+            request.setCheckoutQuantity(1);
+            assertEquals(Result.OPERATION_COMPLETED,
+                    grocery.addTransactionLineItem(request).getResultCode());
+            request.setMemberId(memberId);
+            assertEquals(Result.OPERATION_COMPLETED,
+                    grocery.endTransaction(request).getResultCode());
+        }
+    }
+
+    static String addMember(Grocery grocery) {
+        Request request = new Request();
+        request.setMemberName(RandomHelper.randomString());
+        request.setMemberAddress(RandomHelper.randomString());
+        request.setMemberPhoneNumber(RandomHelper.randomString());
+        request.setDateJoined(Calendar.getInstance());
+        request.setFeePaid(10.0);
+        return grocery.addMember(request).getMemberId();
+    }
+
+    static String addProduct(Grocery grocery) {
+        return addProduct(grocery, INITIAL_STOCK, 0);
+    }
+
+    private static String addProduct(Grocery grocery, int stockOnHand, int reorderLevel) {
+        Request request = new Request();
+        request.setProductId("lane" + RandomHelper.randomInt(0, Integer.MAX_VALUE - 1));
+        request.setProductName(RandomHelper.randomString());
+        request.setStockOnHand(stockOnHand);
+        request.setCurrentPrice(1.25);
+        request.setReorderLevel(reorderLevel);
+        assertEquals(Result.OPERATION_COMPLETED, grocery.addProduct(request).getResultCode());
+        return request.getProductId();
+    }
+}
@@ -3,8 +3,11 @@ package business.facade;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Before;
 import org.junit.BeforeClass;
@@ -29,4 +32,330 @@ public class GroceryTest {
                 RandomHelper.randomString(), Calendar.getInstance(),
                 RandomHelper.randomDouble(1.0, 100.0));
     }
+
+    /**
+     * Adds a product with a random id and returns the id it was added with.
+     */
+    private String addRandomProduct(String name) {
+        String productId = "p" + RandomHelper.randomInt(0, Integer.MAX_VALUE - 1);
+        Request request = Request.instance();
+        request.setProductId(productId);
+        request.setProductName(name);
+        request.setStockOnHand(50);
+        request.setCurrentPrice(2.50);
+        request.setReorderLevel(5);
+        assertEquals(Result.OPERATION_COMPLETED, grocery.addProduct(request).getResultCode());
+        return productId;
+    }
+
+    @Test
+    public void searchProductUsesNormalizedId() {
+        String productId = addRandomProduct("Apple");
+        Request request = Request.instance();
+        request.setProductId(productId.toLowerCase());
+        Result result = grocery.searchProduct(request);
+        assertEquals(Result.OPERATION_COMPLETED, result.getResultCode());
+        assertEquals(productId, result.getProductId());
+        request.setProductId(productId.toUpperCase());
+        assertEquals(productId, grocery.searchProduct(request).getProductId());
+        request.setProductId(productId + "missing");
+        assertEquals(Result.PRODUCT_NOT_FOUND, grocery.searchProduct(request).getResultCode());
+    }
+
+    @Test
+    public void addProductRejectsDuplicateId() {
+        String productId = addRandomProduct("Pear");
+        Request request = Request.instance();
+        request.setProductId(productId);
+        request.setProductName("Another Pear");
+        assertEquals(Result.OPERATION_FAILED, grocery.addProduct(request).getResultCode());
+        request.setProductId(productId);
+        assertEquals("Pear", grocery.searchProduct(request).getProductName());
+    }
+
+    @Test
+    public void changePriceOfMissingProduct() {
+        Request request = Request.instance();
+        request.setProductId("no such product");
+        request.setCurrentPrice(1.0);
+        assertEquals(Result.PRODUCT_NOT_FOUND, grocery.changePrice(request).getResultCode());
+    }
+
+    @Test
+    public void searchAndRemoveMemberById() {
+        String memberId = addMember("Jordan");
+        Request request = Request.instance();
+        // A leading zero makes it another id
+        request.setMemberId("M0" + memberId.substring(1));
+        assertEquals(Result.NO_SUCH_MEMBER, grocery.searchMembership(request).getResultCode());
+        request.setMemberId(memberId);
+        assertEquals(Result.OPERATION_COMPLETED, grocery.searchMembership(request).getResultCode());
+        assertEquals(Result.OPERATION_COMPLETED, grocery.removeMember(request).getResultCode());
+        assertEquals(Result.NO_SUCH_MEMBER, grocery.searchMembership(request).getResultCode());
+        assertEquals(Result.NO_SUCH_MEMBER, grocery.removeMember(request).getResultCode());
+        request.setMemberId("X" + memberId);
+        assertEquals(Result.NO_SUCH_MEMBER, grocery.searchMembership(request).getResultCode());
+    }
+
+    /**
+     * Adds a member and returns the id it was given.
+     */
+    private String addMember(String name) {
+        Request request = Request.instance();
+        request.setMemberName(name);
+        request.setMemberAddress("1 Main St");
+        request.setMemberPhoneNumber("555-0100");
+        request.setFeePaid(10.0);
+        request.setDateJoined(Calendar.getInstance());
+        return grocery.addMember(request).getMemberId();
+    }
+
+    @Test
+    public void endedTransactionIsReleased() {
+        String memberId = addMember("Casey");
+        String productId = addRandomProduct("Bread");
+        String transactionId = grocery.beginTransaction().getTransactionId();
+        Request request = Request.instance();
+        request.setTransactionId(transactionId);
+        request.setProductId(productId);
+        request.setCheckoutQuantity(2);
+        assertEquals(Result.OPERATION_COMPLETED,
+                grocery.addTransactionLineItem(request).getResultCode());
+        request.setMemberId(memberId);
+        assertEquals(Result.OPERATION_COMPLETED, grocery.endTransaction(request).getResultCode());
+        assertEquals(Result.TRANSACTION_NOT_FOUND, grocery.endTransaction(request).getResultCode());
+        assertEquals(Result.TRANSACTION_NOT_FOUND,
+                grocery.addTransactionLineItem(request).getResultCode());
+    }
+
+    @Test
+    public void abandonedTransactionExpires() {
+        String productId = addRandomProduct("Milk");
+        grocery.setTransactionTimeout(0, TimeUnit.MILLISECONDS);
+        try {
+            String transactionId = grocery.beginTransaction().getTransactionId();
+            Request request = Request.instance();
+            request.setTransactionId(transactionId);
+            request.setProductId(productId);
+            request.setCheckoutQuantity(1);
+            assertEquals(Result.TRANSACTION_NOT_FOUND,
+                    grocery.addTransactionLineItem(request).getResultCode());
+        } finally {
+            grocery.setTransactionTimeout(30, TimeUnit.MINUTES);
+        }
+    }
+
+    @Test
+    public void outstandingOrdersByProduct() {
+        String productId = addRandomProduct("Rice");
+        Request request = Request.instance();
+        request.setProductId(productId);
+        Iterator<Result> orders = grocery.getOutstandingOrders(request);
+        assertTrue(orders.hasNext());
+        Result order = orders.next();
+        assertEquals(productId, order.getOrderProduct().getProductId());
+        assertEquals(10, order.getOrderQuantity());
+        String orderId = order.getOrderId();
+        request.setOrderId(orderId);
+        Result shipment = grocery.processShipment(request);
+        assertEquals(Result.OPERATION_COMPLETED, shipment.getResultCode());
+        assertEquals(60, shipment.getStockOnHand());
+        assertEquals(Result.ORDER_NOT_FOUND, grocery.processShipment(request).getResultCode());
+        request.setProductId(productId);
+        assertTrue(!grocery.getOutstandingOrders(request).hasNext());
+    }
+
+    @Test
+    public void retrieveMemberInfoByPrefix() {
+        String prefix = "Zq" + RandomHelper.randomInt(0, Integer.MAX_VALUE - 1);
+        String first = addMember(prefix + "a");
+        String second = addMember(prefix.toUpperCase() + "b");
+        addMember(prefix + "c");
+        Request request = Request.instance();
+        request.setMemberName(prefix.toLowerCase());
+        Iterator<Result> results = grocery.retrieveMemberInfo(request, 2);
+        assertEquals(first, results.next().getMemberId());
+        assertEquals(second, results.next().getMemberId());
+        assertTrue(!results.hasNext());
+        request.setMemberId(first);
+        grocery.removeMember(request);
+        request.setMemberName(prefix);
+        results = grocery.retrieveMemberInfo(request);
+        assertEquals(second, results.next().getMemberId());
+    }
+
+    @Test
+    public void productsAtOrBelowReorderLevel() {
+        long valueBefore = grocery.getInventoryValue();
+        String productId = addRandomProduct("Flour");
+        assertEquals(valueBefore + 50 * 250, grocery.getInventoryValue());
+        Request request = Request.instance();
+        request.setProductName("Sugar");
+        request.setStockOnHand(1);
+        request.setReorderLevel(5);
+        request.setProductId(productId + "low");
+        grocery.addProduct(request);
+        boolean found = false;
+        Iterator<Result> lowProducts = grocery.getProductsAtOrBelowReorderLevel();
+        while (lowProducts.hasNext()) {
+            String lowProductId = lowProducts.next().getProductId();
+            assertTrue(!lowProductId.equals(productId));
+            found |= lowProductId.equals(productId + "low");
+        }
+        assertTrue(found);
+    }
+
+    @Test
+    public void checkoutTotalsAreExactCents() {
+        String productId = addRandomProduct("Candy");
+        Request request = Request.instance();
+        request.setProductId(productId);
+        request.setCurrentPrice(0.10);
+        grocery.changePrice(request);
+        String transactionId = grocery.beginTransaction().getTransactionId();
+        request.setTransactionId(transactionId);
+        request.setCheckoutQuantity(1);
+        Result result = null;
+        for (int item = 0; item < 1000; item++) {
+            result = grocery.addTransactionLineItem(request);
+            assertEquals(10, result.getLineTotalCents());
+        }
+        assertEquals(10000, result.getCheckoutTotalCents());
+        assertTrue(result.getCheckoutTotal() == 100.0);
+    }
+
+    @Test
+    public void iteratorResultsCanBeKept() {
+        String first = addRandomProduct("Kale");
+        String second = addRandomProduct("Kale chips");
+        Request request = Request.forCurrentThread();
+        request.setProductName("Kale");
+        Iterator<Result> results = grocery.retrieveProductInfo(request);
+        Result firstResult = results.next();
+        Result secondResult = results.next();
+        assertTrue(firstResult != secondResult);
+        assertTrue(!firstResult.getProductId().equals(secondResult.getProductId()));
+        assertTrue(first.equals(firstResult.getProductId())
+                || first.equals(secondResult.getProductId()));
+        assertTrue(second.equals(firstResult.getProductId())
+                || second.equals(secondResult.getProductId()));
+    }
+
+    @Test
+    public void threadRequestIsReset() {
+        Request request = Request.forCurrentThread();
+        request.setProductId("stale");
+        request.setStartDate(Calendar.getInstance());
+        assertTrue(request == Request.forCurrentThread());
+        assertEquals("none", request.getProductId());
+        assertEquals(null, request.getStartDate());
+        assertTrue(request != Request.instance());
+    }
+
+    @Test
+    public void reportsIterateASnapshot() {
+        String before = addRandomProduct("Fig");
+        Iterator<Result> products = grocery.getProducts();
+        String after = addRandomProduct("Fig");
+        boolean sawBefore = false;
+        while (products.hasNext()) {
+            String productId = products.next().getProductId();
+            sawBefore |= productId.equals(before);
+            assertTrue(!productId.equals(after));
+        }
+        assertTrue(sawBefore);
+        boolean sawAfter = false;
+        products = grocery.getProducts();
+        while (products.hasNext()) {
+            sawAfter |= products.next().getProductId().equals(after);
+        }
+        assertTrue(sawAfter);
+    }
+
+    @Test
+    public void reportsSnapshotFieldValues() {
+        String memberId = addMember("Sam");
+        String productId = addRandomProduct("Kale");
+        Iterator<Result> products = grocery.getProducts();
+        Iterator<Result> orders = grocery.getOutstandingOrders();
+        Request request = Request.instance();
+        request.setProductId(productId);
+        request.setCurrentPrice(3.00);
+        grocery.changePrice(request);
+        String transactionId = grocery.beginTransaction().getTransactionId();
+        request.setTransactionId(transactionId);
+        request.setCheckoutQuantity(45);
+        grocery.addTransactionLineItem(request);
+        request.setMemberId(memberId);
+        assertEquals(Result.OPERATION_COMPLETED, grocery.endTransaction(request).getResultCode());
+        grocery.awaitRestockOrders();
+        Result product = next(products, productId);
+        assertEquals(50, product.getStockOnHand());
+        assertEquals(250, product.getCurrentPriceCents());
+        assertEquals(10, next(orders, productId).getOrderQuantity());
+        product = next(grocery.getProducts(), productId);
+        assertEquals(5, product.getStockOnHand());
+        assertEquals(300, product.getCurrentPriceCents());
+        assertEquals(20, next(grocery.getOutstandingOrders(), productId).getOrderQuantity());
+    }
+
+    private static Result next(Iterator<Result> results, String productId) {
+        while (results.hasNext()) {
+            Result result = results.next();
+            if (productId.equals(result.getProductId())
+                    || productId.equals(result.getOrderProduct().getProductId())) {
+                return result;
+            }
+        }
+        throw new AssertionError(productId);
+    }
+
+    @Test
+    public void restockOrdersAreReportedToTheListener() {
+        final List<Result> reported = new ArrayList<Result>();
+        Grocery.setRestockListener(new Grocery.RestockListener() {
+            @Override
+            public void restockOrdersCreated(Iterator<Result> orders) {
+                while (orders.hasNext()) {
+                    reported.add(orders.next());
+                }
+            }
+        });
+        try {
+            String memberId = addMember("Alex");
+            String productId = addRandomProduct("Rice");
+            String transactionId = grocery.beginTransaction().getTransactionId();
+            Request request = Request.instance();
+            request.setTransactionId(transactionId);
+            request.setProductId(productId);
+            request.setCheckoutQuantity(45);
+            grocery.addTransactionLineItem(request);
+            request.setMemberId(memberId);
+            grocery.endTransaction(request);
+            grocery.awaitRestockOrders();
+        } finally {
+            Grocery.setRestockListener(null);
+        }
+        assertEquals(1, reported.size());
+        assertEquals("Rice", reported.get(0).getOrderProduct().getProductName());
+        assertEquals(20, reported.get(0).getOrderQuantity());
+    }
+
+    @Test
+    public void restockMergesIntoOutstandingOrder() {
+        String memberId = addMember("Robin");
+        String productId = addRandomProduct("Oats");
+        String transactionId = grocery.beginTransaction().getTransactionId();
+        Request request = Request.instance();
+        request.setTransactionId(transactionId);
+        request.setProductId(productId);
+        request.setCheckoutQuantity(45);
+        grocery.addTransactionLineItem(request);
+        request.setMemberId(memberId);
+        assertEquals(Result.OPERATION_COMPLETED, grocery.endTransaction(request).getResultCode());
+        grocery.awaitRestockOrders();
+        Iterator<Result> orders = grocery.getOutstandingOrders(request);
+        assertEquals(20, orders.next().getOrderQuantity());
+        assertTrue(!orders.hasNext());
+    }
 }
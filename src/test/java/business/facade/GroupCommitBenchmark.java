@@ -0,0 +1,91 @@
+package business.facade;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures journal commits per second and commit latency for each durability policy and a range
+ * of batch windows. Every commit writes a record the size of a small checkout. Not run by the
+ * test suite; run its main method with optional arguments "writers commitsPerWriter directory".
+ */
+public class GroupCommitBenchmark {
+    private static final int RECORD_SIZE = 96;
+    // Batch windows of the grouped runs, in microseconds
+    private static final long[] WINDOWS = {0, 100, 500, 1_000, 2_000, 5_000};
+
+    public static void main(String[] args) throws Exception {
+        int writers = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int commits = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        File directory =
+                new File(args.length > 2 ? args[2] : System.getProperty("java.io.tmpdir"));
+        run(directory, new GroupCommitWriter.Settings(GroupCommitWriter.Policy.PER_OP, 0,
+                TimeUnit.MICROSECONDS, 1), writers, commits, "per-op");
+        for (long window : WINDOWS) {
+            run(directory, new GroupCommitWriter.Settings(GroupCommitWriter.Policy.GROUPED,
+                    window, TimeUnit.MICROSECONDS, 1024), writers, commits,
+                    "grouped " + window + " us");
+        }
+        run(directory, new GroupCommitWriter.Settings(GroupCommitWriter.Policy.ASYNC, 1_000,
+                TimeUnit.MICROSECONDS, 1024), writers, commits, "async 1000 us");
+    }
+
+    /**
+     * Run writers threads that each append and commit commits records, and print the results
+     */
+    private static void run(File directory, GroupCommitWriter.Settings settings, int writers,
+            final int commits, String label) throws Exception {
+        File file = File.createTempFile("journal", ".bench", directory);
+        file.deleteOnExit();
+        final GroupCommitWriter writer = settings.open(FileChannel.open(file.toPath(),
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING));
+        final long[][] latencies = new long[writers][commits];
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int index = 0; index < writers; index++) {
+            final long[] writerLatencies = latencies[index];
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int commit = 0; commit < commits; commit++) {
+                            long begin = System.nanoTime();
+                            writer.commit(writer.append(ByteBuffer.allocate(RECORD_SIZE)));
+                            writerLatencies[commit] = System.nanoTime() - begin;
+                        }
+                    } catch (IOException | InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long elapsed = System.nanoTime() - begin;
+        long forces = writer.forceCount();
+        writer.close();
+        file.delete();
+        long[] all = new long[writers * commits];
+        for (int index = 0; index < writers; index++) {
+            System.arraycopy(latencies[index], 0, all, index * commits, commits);
+        }
+        Arrays.sort(all);
+        System.out.printf("%-16s %8.0f commits/s, %6.1f commits/force, p50 %8.1f us, "
+                + "p99 %8.1f us%n", label, all.length * 1e9 / elapsed,
+                all.length / (double) Math.max(1, forces), all[all.length / 2] / 1e3,
+                all[Math.min(all.length - 1, (int) (all.length * 0.99))] / 1e3);
+    }
+}
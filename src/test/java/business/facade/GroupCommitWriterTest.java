@@ -0,0 +1,101 @@
+package business.facade;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class GroupCommitWriterTest {
+    private static final int RECORD_SIZE = 8;
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private GroupCommitWriter open(File file, GroupCommitWriter.Policy policy, long windowMillis)
+            throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE);
+        return new GroupCommitWriter.Settings(policy, windowMillis, TimeUnit.MILLISECONDS, 1024)
+                .open(channel);
+    }
+
+    private static ByteBuffer record(int writer, int index) {
+        ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        record.putInt(writer).putInt(index).flip();
+        return record;
+    }
+
+    @Test
+    public void groupedCommitsShareForces() throws Exception {
+        File file = folder.newFile();
+        final GroupCommitWriter writer = open(file, GroupCommitWriter.Policy.GROUPED, 5);
+        final int writers = 4;
+        final int records = 50;
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int index = 0; index < writers; index++) {
+            final int writerIndex = index;
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int record = 0; record < records; record++) {
+                            writer.commit(writer.append(record(writerIndex, record)));
+                        }
+                    } catch (IOException ioe) {
+                        throw new IllegalStateException(ioe);
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(writers * records * RECORD_SIZE, file.length());
+        assertTrue(writer.forceCount() < writers * records);
+        writer.close();
+        // The records of each writer are in the order it appended them
+        ByteBuffer contents = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        int[] next = new int[writers];
+        while (contents.hasRemaining()) {
+            int writerIndex = contents.getInt();
+            assertEquals(next[writerIndex]++, contents.getInt());
+        }
+    }
+
+    @Test
+    public void perOpForcesEveryCommit() throws IOException {
+        File file = folder.newFile();
+        GroupCommitWriter writer = open(file, GroupCommitWriter.Policy.PER_OP, 0);
+        for (int record = 0; record < 10; record++) {
+            writer.commit(writer.append(record(0, record)));
+            assertEquals((record + 1) * RECORD_SIZE, file.length());
+        }
+        assertEquals(10, writer.forceCount());
+        writer.close();
+    }
+
+    @Test
+    public void asyncCommitDoesNotWait() throws IOException {
+        File file = folder.newFile();
+        GroupCommitWriter writer = open(file, GroupCommitWriter.Policy.ASYNC, 60_000);
+        writer.commit(writer.append(record(0, 0)));
+        writer.commit(writer.append(record(0, 1)));
+        assertEquals(0, file.length());
+        writer.flush();
+        assertEquals(2 * RECORD_SIZE, file.length());
+        writer.close();
+    }
+}
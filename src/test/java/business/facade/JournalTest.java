@@ -0,0 +1,189 @@
+package business.facade;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Calendar;
+import java.util.Iterator;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import helpers.RandomHelper;
+
+public class JournalTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    File dataFile;
+    String productId;
+    String memberId;
+
+    @Before
+    public void setup() {
+        this.dataFile = new File(folder.getRoot(), "GroceryData");
+        assertTrue(Grocery.save(dataFile));
+        this.productId = "j" + RandomHelper.randomInt(0, Integer.MAX_VALUE - 1);
+        Grocery grocery = Grocery.instance();
+        Request request = new Request();
+        request.setProductId(productId);
+        request.setProductName("Journaled Beans");
+        request.setStockOnHand(50);
+        request.setCurrentPrice(2.50);
+        request.setReorderLevel(5);
+        assertEquals(Result.OPERATION_COMPLETED, grocery.addProduct(request).getResultCode());
+        request.setMemberName("Jordan");
+        request.setMemberAddress("1 Log Lane");
+        request.setMemberPhoneNumber("555-0101");
+        request.setFeePaid(10.0);
+        request.setDateJoined(Calendar.getInstance());
+        this.memberId = grocery.addMember(request).getMemberId();
+        request.setTransactionId(grocery.beginTransaction().getTransactionId());
+        request.setCheckoutQuantity(46);
+        grocery.addTransactionLineItem(request);
+        request.setMemberId(memberId);
+        assertEquals(Result.OPERATION_COMPLETED, grocery.endTransaction(request).getResultCode());
+        grocery.awaitRestockOrders();
+        request.setCurrentPrice(3.25);
+        grocery.changePrice(request);
+    }
+
+    /**
+     * The newest journal segment of the data file
+     */
+    private File currentSegment() {
+        File newest = null;
+        long newestEpoch = -1;
+        for (File file : folder.getRoot().listFiles()) {
+            String name = file.getName();
+            if (name.startsWith("GroceryData.journal.")) {
+                long epoch = Long.parseLong(name.substring("GroceryData.journal.".length()));
+                if (epoch > newestEpoch) {
+                    newest = file;
+                    newestEpoch = epoch;
+                }
+            }
+        }
+        return newest;
+    }
+
+    /**
+     * Checks the state built by setup, as seen through a grocery
+     */
+    private void assertJournaledState(Grocery grocery) {
+        Request request = new Request();
+        request.setProductId(productId);
+        Result product = grocery.searchProduct(request);
+        assertEquals(Result.OPERATION_COMPLETED, product.getResultCode());
+        assertEquals(4, product.getStockOnHand());
+        assertEquals(325, product.getCurrentPriceCents());
+        Iterator<Result> orders = grocery.getOutstandingOrders(request);
+        assertEquals(20, orders.next().getOrderQuantity());
+        assertTrue(!orders.hasNext());
+        request.setMemberId(memberId);
+        assertEquals(Result.OPERATION_COMPLETED,
+                grocery.searchMembership(request).getResultCode());
+        Calendar start = Calendar.getInstance();
+        start.add(Calendar.DATE, -1);
+        Calendar end = Calendar.getInstance();
+        end.add(Calendar.DATE, 1);
+        request.setStartDate(start);
+        request.setEndDate(end);
+        Iterator<Result> transactions = grocery.getMembersTransactions(request);
+        assertEquals(46 * 250, transactions.next().getCheckoutTotalCents());
+        assertTrue(!transactions.hasNext());
+    }
+
+    @Test
+    public void changesSurviveRestart() {
+        Grocery retrieved = Grocery.retrieveData(dataFile);
+        assertTrue(retrieved == Grocery.instance());
+        assertJournaledState(retrieved);
+        // Shipping the order after the restart is journaled as well
+        Request request = new Request();
+        request.setProductId(productId);
+        request.setOrderId(retrieved.getOutstandingOrders(request).next().getOrderId());
+        assertEquals(Result.OPERATION_COMPLETED,
+                retrieved.processShipment(request).getResultCode());
+        request.setMemberId(memberId);
+        retrieved.removeMember(request);
+        Grocery restarted = Grocery.retrieveData(dataFile);
+        assertEquals(24, restarted.searchProduct(request).getStockOnHand());
+        assertTrue(!restarted.getOutstandingOrders(request).hasNext());
+        assertEquals(Result.NO_SUCH_MEMBER, restarted.searchMembership(request).getResultCode());
+    }
+
+    @Test
+    public void tornRecordIsDropped() throws IOException {
+        File journalFile = currentSegment();
+        FileOutputStream journal = new FileOutputStream(journalFile, true);
+        // Length of a record that was never finished
+        journal.write(new byte[] {0, 0, 0, 40, 4, 0});
+        journal.close();
+        long tornLength = journalFile.length();
+        assertJournaledState(Grocery.retrieveData(dataFile));
+        assertEquals(tornLength - 6, journalFile.length());
+    }
+
+    @Test
+    public void restockOrderLostInACrashIsPlacedAgain() throws IOException {
+        Grocery grocery = Grocery.instance();
+        Request request = new Request();
+        request.setProductId(productId);
+        // Ship the outstanding order, then sell down to the reorder level again
+        request.setOrderId(grocery.getOutstandingOrders(request).next().getOrderId());
+        assertEquals(Result.OPERATION_COMPLETED, grocery.processShipment(request).getResultCode());
+        request.setTransactionId(grocery.beginTransaction().getTransactionId());
+        request.setCheckoutQuantity(20);
+        grocery.addTransactionLineItem(request);
+        request.setMemberId(memberId);
+        assertEquals(Result.OPERATION_COMPLETED, grocery.endTransaction(request).getResultCode());
+        grocery.awaitRestockOrders();
+        // Restart once so the journal is closed, then cut off the restock order it ends with
+        Grocery.retrieveData(dataFile);
+        File journalFile = currentSegment();
+        RandomAccessFile journal = new RandomAccessFile(journalFile, "rw");
+        try {
+            // Every record is its length, its payload and a CRC
+            long last = 16;
+            long position = 16;
+            while (position < journal.length()) {
+                last = position;
+                journal.seek(position);
+                position += 8 + journal.readInt();
+            }
+            journal.seek(last + 4);
+            assertEquals(5, journal.readByte());
+            journal.setLength(last);
+        } finally {
+            journal.close();
+        }
+        Grocery restarted = Grocery.retrieveData(dataFile);
+        assertEquals(4, restarted.searchProduct(request).getStockOnHand());
+        Iterator<Result> orders = restarted.getOutstandingOrders(request);
+        assertEquals(10, orders.next().getOrderQuantity());
+        // The order placed again is journaled
+        orders = Grocery.retrieveData(dataFile).getOutstandingOrders(request);
+        assertEquals(10, orders.next().getOrderQuantity());
+        assertTrue(!orders.hasNext());
+    }
+
+    @Test
+    public void saveStartsAnEmptyJournal() {
+        assertTrue(Grocery.save(dataFile));
+        assertEquals(16, currentSegment().length());
+        assertEquals(2, folder.getRoot().list().length);
+        assertJournaledState(Grocery.retrieveData(dataFile));
+    }
+
+    @Test
+    public void missingDataIsNotRetrieved() {
+        assertNull(Grocery.retrieveData(new File(folder.getRoot(), "Missing")));
+    }
+}
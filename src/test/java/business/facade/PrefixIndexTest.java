@@ -0,0 +1,54 @@
+package business.facade;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class PrefixIndexTest {
+    private PrefixIndex<String> index;
+
+    @Before
+    public void setup() {
+        index = new PrefixIndex<String>();
+        index.add("Banana", "1", "Banana");
+        index.add("apple", "2", "apple");
+        index.add("Apricot", "3", "Apricot");
+        index.add("Apple", "4", "Apple");
+        index.add("avocado", "5", "avocado");
+    }
+
+    private static List<String> toList(Iterator<String> iterator) {
+        List<String> list = new ArrayList<String>();
+        iterator.forEachRemaining(list::add);
+        return list;
+    }
+
+    @Test
+    public void matchesPrefixIgnoringCaseInNameOrder() {
+        assertEquals(Arrays.asList("apple", "Apple", "Apricot"), toList(index.startingWith("AP")));
+        assertEquals(Arrays.asList("apple", "Apple"), toList(index.startingWith("apple")));
+        assertFalse(index.startingWith("cherry").hasNext());
+        assertFalse(index.startingWith("applesauce").hasNext());
+        assertEquals(5, toList(index.startingWith("")).size());
+    }
+
+    @Test
+    public void limitsResults() {
+        assertEquals(Arrays.asList("apple", "Apple"), toList(index.startingWith("a", 2)));
+        assertFalse(index.startingWith("a", 0).hasNext());
+    }
+
+    @Test
+    public void removedItemsAreNotFound() {
+        assertEquals("apple", index.remove("apple", "2"));
+        assertEquals(Arrays.asList("Apple", "Apricot"), toList(index.startingWith("ap")));
+        assertEquals(null, index.remove("apple", "2"));
+    }
+}
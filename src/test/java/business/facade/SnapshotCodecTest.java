@@ -0,0 +1,209 @@
+package business.facade;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.nio.file.Files;
+import java.util.Calendar;
+import java.util.Iterator;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import helpers.RandomHelper;
+
+/**
+ * Snapshots written and loaded through their own format, and legacy data files migrated to it.
+ */
+public class SnapshotCodecTest {
+    // Names outside ASCII, one of them outside the basic multilingual plane
+    private static final String PRODUCT_NAME = "Cr\u00e8me fra\u00eeche \ud83e\udd5b";
+    private static final String MEMBER_NAME = "Zo\u00eb \u00c5ngstr\u00f6m";
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    File dataFile;
+    Grocery grocery;
+    String memberId;
+    String productId;
+    String oversoldId;
+
+    @Before
+    public void setup() {
+        this.dataFile = new File(folder.getRoot(), "GroceryData");
+        assertTrue(Grocery.save(dataFile));
+        this.grocery = Grocery.instance();
+        Request request = new Request();
+        request.setMemberName(MEMBER_NAME);
+        request.setMemberAddress("3 Rue de l'\u00c9picerie");
+        request.setMemberPhoneNumber("555-0103");
+        request.setFeePaid(12.5);
+        request.setDateJoined(Calendar.getInstance());
+        this.memberId = grocery.addMember(request).getMemberId();
+        this.productId = addProduct(PRODUCT_NAME, 40, 5);
+        this.oversoldId = addProduct("Jalape\u00f1o", -3, 0);
+        checkout(productId, 4);
+    }
+
+    private String addProduct(String name, int stockOnHand, int reorderLevel) {
+        String id = "s" + RandomHelper.randomInt(0, Integer.MAX_VALUE - 1);
+        Request request = new Request();
+        request.setProductId(id);
+        request.setProductName(name);
+        request.setStockOnHand(stockOnHand);
+        request.setCurrentPrice(2.35);
+        request.setReorderLevel(reorderLevel);
+        assertEquals(Result.OPERATION_COMPLETED, grocery.addProduct(request).getResultCode());
+        return id;
+    }
+
+    private void checkout(String id, int quantity) {
+        Request request = new Request();
+        request.setTransactionId(grocery.beginTransaction().getTransactionId());
+        request.setProductId(id);
+        request.setCheckoutQuantity(quantity);
+        grocery.addTransactionLineItem(request);
+        request.setMemberId(memberId);
+        assertEquals(Result.OPERATION_COMPLETED, grocery.endTransaction(request).getResultCode());
+    }
+
+    private Result product(Grocery grocery, String id) {
+        Request request = new Request();
+        request.setProductId(id);
+        return grocery.searchProduct(request);
+    }
+
+    private Result member(Grocery grocery) {
+        Request request = new Request();
+        request.setMemberId(memberId);
+        return grocery.searchMembership(request);
+    }
+
+    private int transactionsOf(Grocery grocery) {
+        Request request = new Request();
+        request.setMemberId(memberId);
+        Calendar start = Calendar.getInstance();
+        start.add(Calendar.DATE, -1);
+        Calendar end = Calendar.getInstance();
+        end.add(Calendar.DATE, 1);
+        request.setStartDate(start);
+        request.setEndDate(end);
+        int count = 0;
+        for (Iterator<Result> iterator = grocery.getMembersTransactions(request); iterator
+                .hasNext(); iterator.next()) {
+            count++;
+        }
+        return count;
+    }
+
+    private int outstandingOrders(Grocery grocery, String id) {
+        Request request = new Request();
+        request.setProductId(id);
+        int count = 0;
+        for (Iterator<Result> iterator = grocery.getOutstandingOrders(request); iterator
+                .hasNext(); iterator.next()) {
+            count++;
+        }
+        return count;
+    }
+
+    private void assertKept(Grocery retrieved) {
+        assertEquals(PRODUCT_NAME, product(retrieved, productId).getProductName());
+        assertEquals(36, product(retrieved, productId).getStockOnHand());
+        assertEquals(-3, product(retrieved, oversoldId).getStockOnHand());
+        assertEquals(235, product(retrieved, oversoldId).getCurrentPriceCents());
+        assertEquals(MEMBER_NAME, member(retrieved).getMemberName());
+        assertEquals(1, transactionsOf(retrieved));
+        assertEquals(1, outstandingOrders(retrieved, productId));
+    }
+
+    @Test
+    public void snapshotKeepsTheGrocery() throws Exception {
+        assertTrue(Grocery.save(dataFile));
+        assertTrue(SnapshotCodec.isSnapshot(dataFile));
+        assertKept(Grocery.retrieveData(dataFile));
+    }
+
+    @Test
+    public void unreadHistoriesSurviveCheckpoints() throws Exception {
+        assertTrue(Grocery.save(dataFile));
+        Grocery retrieved = Grocery.retrieveData(dataFile);
+        // The history is still in the replaced snapshot when the next one is written
+        assertTrue(retrieved.checkpoint());
+        assertTrue(retrieved.checkpoint());
+        assertKept(Grocery.retrieveData(dataFile));
+    }
+
+    @Test
+    public void checkedInDataIsMigrated() throws Exception {
+        // Written by the serialized grocery the snapshots replaced
+        File baseline = new File(folder.getRoot(), "BaselineData");
+        Files.copy(new File("GroceryData").toPath(), baseline.toPath());
+        assertTrue(Grocery.migrateLegacyData(baseline));
+        assertTrue(SnapshotCodec.isSnapshot(baseline));
+        Grocery retrieved = Grocery.retrieveData(baseline);
+        Iterator<Result> members = retrieved.getMembers();
+        Result member = members.next();
+        assertFalse(members.hasNext());
+        assertEquals("M1", member.getMemberId());
+        assertEquals("memby", member.getMemberName());
+        assertEquals("1 fake road", member.getMemberAddress());
+        assertEquals(1200, member.getFeePaidCents());
+        assertEquals(1616963397223L, member.getDateJoined().getTimeInMillis());
+        Result product = product(retrieved, "pq");
+        assertEquals("soup", product.getProductName());
+        assertEquals(4, product.getStockOnHand());
+        assertEquals(254, product.getCurrentPriceCents());
+        assertEquals(5, product.getReorderLevel());
+        Request request = new Request();
+        request.setMemberId("M1");
+        Calendar start = Calendar.getInstance();
+        start.setTimeInMillis(0);
+        request.setStartDate(start);
+        request.setEndDate(Calendar.getInstance());
+        Iterator<Result> transactions = retrieved.getMembersTransactions(request);
+        Result transaction = transactions.next();
+        assertFalse(transactions.hasNext());
+        assertEquals("T1", transaction.getTransactionId());
+        assertEquals(2540, transaction.getCheckoutTotalCents());
+        request.setProductId("pq");
+        Result order = retrieved.getOutstandingOrders(request).next();
+        assertEquals("R2", order.getOrderId());
+        assertEquals(10, order.getOrderQuantity());
+    }
+
+    @Test(expected = InvalidClassException.class)
+    public void checkedInDataIsNotReadAsCurrentClasses() throws Exception {
+        // The entities changed their fields, so only the legacy reader may read the old layout
+        try (ObjectInputStream input = new ObjectInputStream(new FileInputStream("GroceryData"))) {
+            input.readObject();
+        }
+    }
+
+    @Test
+    public void legacyDataIsLoadedAndMigrated() throws Exception {
+        // Start from an empty journal so the legacy file holds every change
+        assertTrue(Grocery.save(dataFile));
+        Grocery.writeLegacyData(dataFile);
+        assertFalse(SnapshotCodec.isSnapshot(dataFile));
+        assertKept(Grocery.retrieveData(dataFile));
+        assertTrue(Grocery.migrateLegacyData(dataFile));
+        assertTrue(SnapshotCodec.isSnapshot(dataFile));
+        assertKept(Grocery.retrieveData(dataFile));
+        // Ids keep counting up from the migrated data
+        Request request = new Request();
+        request.setMemberName("After Migration");
+        request.setMemberAddress("4 New Rd");
+        request.setMemberPhoneNumber("555-0104");
+        request.setFeePaid(1.0);
+        request.setDateJoined(Calendar.getInstance());
+        String newId = Grocery.instance().addMember(request).getMemberId();
+        assertFalse(newId.equals(memberId));
+    }
+}
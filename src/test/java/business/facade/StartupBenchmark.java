@@ -0,0 +1,87 @@
+package business.facade;
+
+import java.io.File;
+import java.util.Calendar;
+
+/**
+ * Measures how long retrieveData takes to load the same grocery from a legacy serialized data
+ * file and from a binary snapshot. Not run by the test suite; run its main method with optional
+ * arguments "products members transactionsPerMember rounds directory".
+ */
+public class StartupBenchmark {
+    public static void main(String[] args) throws Exception {
+        int products = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        int members = args.length > 1 ? Integer.parseInt(args[1]) : 20_000;
+        int transactions = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        int rounds = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+        File directory =
+                new File(args.length > 4 ? args[4] : System.getProperty("java.io.tmpdir"));
+        populate(Grocery.instance(), products, members, transactions);
+        File legacyFile = File.createTempFile("legacy", ".bench", directory);
+        File snapshotFile = File.createTempFile("snapshot", ".bench", directory);
+        Grocery.writeLegacyData(legacyFile);
+        if (!Grocery.save(snapshotFile)) {
+            throw new IllegalStateException("Could not save " + snapshotFile);
+        }
+        System.out.printf("legacy %,d bytes, snapshot %,d bytes%n", legacyFile.length(),
+                snapshotFile.length());
+        for (int round = 0; round < rounds; round++) {
+            time("legacy", legacyFile);
+            time("snapshot", snapshotFile);
+        }
+        Grocery.instance().stopCheckpoints();
+        for (File file : directory.listFiles()) {
+            if (file.getName().startsWith(legacyFile.getName())
+                    || file.getName().startsWith(snapshotFile.getName())) {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * Add products, members and checkouts of a few products per member
+     */
+    private static void populate(Grocery grocery, int products, int members, int transactions) {
+        for (int index = 0; index < products; index++) {
+            Request request = new Request();
+            request.setProductId("p" + index);
+            request.setProductName("Product " + index);
+            request.setStockOnHand(1_000_000);
+            request.setCurrentPrice(1.25);
+            request.setReorderLevel(10);
+            grocery.addProduct(request);
+        }
+        for (int index = 0; index < members; index++) {
+            Request request = new Request();
+            request.setMemberName("Member " + index);
+            request.setMemberAddress(index + " Benchmark Rd");
+            request.setMemberPhoneNumber("555-" + index);
+            request.setFeePaid(10.0);
+            request.setDateJoined(Calendar.getInstance());
+            request.setMemberId(grocery.addMember(request).getMemberId());
+            for (int transaction = 0; transaction < transactions; transaction++) {
+                request.setTransactionId(grocery.beginTransaction().getTransactionId());
+                for (int line = 0; line < 3; line++) {
+                    request.setProductId("p" + ((index * 7 + transaction * 3 + line) % products));
+                    request.setCheckoutQuantity(1 + line);
+                    grocery.addTransactionLineItem(request);
+                }
+                grocery.endTransaction(request);
+            }
+        }
+    }
+
+    /**
+     * Load the data file once and print the time taken
+     */
+    private static void time(String label, File dataFile) {
+        System.gc();
+        long begin = System.nanoTime();
+        Grocery loaded = Grocery.retrieveData(dataFile);
+        long elapsed = System.nanoTime() - begin;
+        if (loaded == null) {
+            throw new IllegalStateException("Could not load " + dataFile);
+        }
+        System.out.printf("%-8s %8.1f ms%n", label, elapsed / 1e6);
+    }
+}
@@ -0,0 +1,93 @@
+package ui;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Calendar;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import business.facade.Grocery;
+import business.facade.Request;
+
+public class CheckoutServerTest {
+    private Grocery grocery;
+    private CheckoutServer server;
+    private String memberId;
+    private String productId;
+
+    @Before
+    public void startServer() throws Exception {
+        grocery = Grocery.instance();
+        Request request = new Request();
+        request.setMemberName("Terminal");
+        request.setMemberAddress("1 Lane St");
+        request.setMemberPhoneNumber("555-0142");
+        request.setDateJoined(Calendar.getInstance());
+        request.setFeePaid(5.0);
+        memberId = grocery.addMember(request).getMemberId();
+        request.reset();
+        productId = "srv" + System.nanoTime();
+        request.setProductId(productId);
+        request.setProductName("Server item");
+        request.setStockOnHand(100_000);
+        request.setReorderLevel(0);
+        request.setCurrentPrice(0.75);
+        grocery.addProduct(request);
+        server = new CheckoutServer(grocery, 0);
+    }
+
+    @After
+    public void stopServer() throws Exception {
+        server.close();
+    }
+
+    @Test
+    public void checkoutOverTheProtocol() throws Exception {
+        try (Socket socket = new Socket("localhost", server.getPort())) {
+            BufferedReader input = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            PrintWriter output = new PrintWriter(socket.getOutputStream(), true);
+            output.println("BEGIN");
+            String begin = input.readLine();
+            assertTrue(begin.startsWith("OK T"));
+            String transactionId = begin.substring(3);
+            // Ids are matched ignoring case, whatever the terminal sends
+            output.println("ADD " + transactionId + " " + productId.toUpperCase() + " 4");
+            assertEquals("OK 300 300", input.readLine());
+            output.println("ADD " + transactionId + " nosuchproduct 1");
+            assertEquals("ERR PRODUCT_NOT_FOUND", input.readLine());
+            output.println("END " + transactionId + " " + memberId);
+            assertEquals("OK 300", input.readLine());
+            output.println("END " + transactionId + " " + memberId);
+            assertEquals("ERR TRANSACTION_NOT_FOUND", input.readLine());
+            output.println("HELLO");
+            assertEquals("ERR UNKNOWN_COMMAND", input.readLine());
+            output.println("QUIT");
+            assertEquals("BYE", input.readLine());
+        }
+        Request request = new Request();
+        request.setProductId(productId);
+        assertEquals(100_000 - 4, grocery.searchProduct(request).getStockOnHand());
+    }
+
+    @Test
+    public void loadDriverRunsManyLanes() throws Exception {
+        int lanes = 16;
+        int checkouts = 20;
+        double throughput = CheckoutLoadDriver.run("localhost", server.getPort(), memberId,
+                productId, lanes, checkouts);
+        assertTrue(throughput > 0);
+        Request request = new Request();
+        request.setProductId(productId);
+        assertEquals(100_000 - lanes * checkouts,
+                grocery.searchProduct(request).getStockOnHand());
+    }
+}
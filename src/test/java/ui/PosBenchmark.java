@@ -0,0 +1,116 @@
+package ui;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import business.facade.Grocery;
+import business.facade.Request;
+import business.facade.Result;
+import ui.PosFrameCodec.Frame;
+
+/**
+ * Measures frames per second and latency percentiles of the binary protocol against a local
+ * PosServer. Not run by the test suite; run its main method with optional arguments
+ * "terminals checkoutsPerTerminal".
+ */
+public class PosBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        final int terminals = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        final int checkouts = args.length > 1 ? Integer.parseInt(args[1]) : 5_000;
+        Grocery grocery = Grocery.instance();
+        Request request = new Request();
+        request.setMemberName("Benchmark");
+        request.setMemberAddress("3 Bench St");
+        request.setMemberPhoneNumber("555-0100");
+        request.setDateJoined(Calendar.getInstance());
+        request.setFeePaid(0.0);
+        final String memberId = grocery.addMember(request).getMemberId();
+        request.reset();
+        final String productId = "bench" + System.nanoTime();
+        request.setProductId(productId);
+        request.setProductName("Benchmark item");
+        request.setStockOnHand(Integer.MAX_VALUE);
+        request.setReorderLevel(0);
+        request.setCurrentPrice(1.0);
+        grocery.addProduct(request);
+        try (final PosServer server = new PosServer(grocery, 0)) {
+            // Warm up the server and the JIT before measuring
+            runTerminals(server.getPort(), memberId, productId, terminals, checkouts / 5);
+            long begin = System.nanoTime();
+            long[] latencies =
+                    runTerminals(server.getPort(), memberId, productId, terminals, checkouts);
+            long elapsed = System.nanoTime() - begin;
+            Arrays.sort(latencies);
+            System.out.printf("%d terminals, %d frames: %.0f frames/s, p50 %.1f us, "
+                    + "p99 %.1f us, max %.1f us%n", terminals, latencies.length,
+                    latencies.length * 1e9 / elapsed, percentile(latencies, 0.50) / 1e3,
+                    percentile(latencies, 0.99) / 1e3, latencies[latencies.length - 1] / 1e3);
+        }
+    }
+
+    /**
+     * Run checkouts on several terminals at once
+     * 
+     * @return round trip nanoseconds of every frame
+     */
+    private static long[] runTerminals(final int port, final String memberId,
+            final String productId, int terminals, final int checkouts) throws Exception {
+        final long[][] latencies = new long[terminals][];
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int terminal = 0; terminal < terminals; terminal++) {
+            final int index = terminal;
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    long[] frameLatencies = new long[checkouts * 3];
+                    int frame = 0;
+                    try (PosClient client = new PosClient("localhost", port)) {
+                        start.await();
+                        for (int checkout = 0; checkout < checkouts; checkout++) {
+                            long sent = System.nanoTime();
+                            Frame response = client.begin();
+                            String transactionId = response.transactionId;
+                            long received = System.nanoTime();
+                            frameLatencies[frame++] = received - sent;
+                            check(client.add(transactionId, productId, 1));
+                            sent = System.nanoTime();
+                            frameLatencies[frame++] = sent - received;
+                            check(client.end(transactionId, memberId));
+                            frameLatencies[frame++] = System.nanoTime() - sent;
+                        }
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                    latencies[index] = frameLatencies;
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long[] all = new long[terminals * checkouts * 3];
+        for (int terminal = 0; terminal < terminals; terminal++) {
+            System.arraycopy(latencies[terminal], 0, all, terminal * checkouts * 3,
+                    checkouts * 3);
+        }
+        return all;
+    }
+
+    private static void check(Frame response) {
+        if (response.status != Result.OPERATION_COMPLETED) {
+            throw new IllegalStateException("Frame failed with status " + response.status);
+        }
+    }
+
+    private static long percentile(long[] sorted, double fraction) {
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * fraction))];
+    }
+}
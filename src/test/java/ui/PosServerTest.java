@@ -0,0 +1,121 @@
+package ui;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Calendar;
+
+import org.junit.Test;
+
+import business.facade.Grocery;
+import business.facade.Request;
+import business.facade.Result;
+import ui.PosFrameCodec.Frame;
+
+public class PosServerTest {
+
+    @Test
+    public void codecWaitsForWholeFrames() throws Exception {
+        Frame frame = new Frame();
+        frame.opcode = PosFrameCodec.ADD;
+        frame.transactionId = "T42";
+        frame.productId = "p\u00e9";
+        frame.quantity = 3;
+        ByteBuffer encoded = ByteBuffer.allocate(PosFrameCodec.MAX_FRAME_SIZE);
+        PosFrameCodec.writeRequest(frame, encoded);
+        encoded.flip();
+        ByteBuffer partial = encoded.duplicate();
+        partial.limit(encoded.limit() - 1);
+        Frame decoded = new Frame();
+        assertTrue(!PosFrameCodec.readRequest(partial, decoded));
+        assertEquals(0, partial.position());
+        assertTrue(PosFrameCodec.readRequest(encoded, decoded));
+        assertEquals("T42", decoded.transactionId);
+        assertEquals("p\u00e9", decoded.productId);
+        assertEquals(3, decoded.quantity);
+        assertTrue(!encoded.hasRemaining());
+    }
+
+    @Test(expected = PosFrameCodec.MalformedFrameException.class)
+    public void codecRejectsOversizedFrames() throws Exception {
+        ByteBuffer input = ByteBuffer.allocate(8);
+        input.putInt(PosFrameCodec.MAX_FRAME_SIZE).put(PosFrameCodec.BEGIN).flip();
+        PosFrameCodec.readRequest(input, new Frame());
+    }
+
+    @Test
+    public void checkoutThroughServer() throws Exception {
+        Grocery grocery = Grocery.instance();
+        Request request = new Request();
+        request.setMemberName("Binary");
+        request.setMemberAddress("2 Frame Rd");
+        request.setMemberPhoneNumber("555-0177");
+        request.setDateJoined(Calendar.getInstance());
+        request.setFeePaid(1.0);
+        String memberId = grocery.addMember(request).getMemberId();
+        request.reset();
+        String productId = "pos" + System.nanoTime();
+        request.setProductId(productId);
+        request.setProductName("Pos item");
+        request.setStockOnHand(1_000);
+        request.setReorderLevel(0);
+        request.setCurrentPrice(2.10);
+        grocery.addProduct(request);
+        try (PosServer server = new PosServer(grocery, 0);
+                PosClient client = new PosClient("localhost", server.getPort())) {
+            Frame response = client.begin();
+            assertEquals(Result.OPERATION_COMPLETED, response.status);
+            String transactionId = response.transactionId;
+            // Ids are matched ignoring case
+            response = client.add(transactionId, productId.toUpperCase(), 5);
+            assertEquals(Result.OPERATION_COMPLETED, response.status);
+            assertEquals(1050, response.lineTotalCents);
+            assertEquals(1050, response.checkoutTotalCents);
+            assertEquals(Result.PRODUCT_NOT_FOUND, client.add(transactionId, "none", 1).status);
+            response = client.end(transactionId, memberId);
+            assertEquals(Result.OPERATION_COMPLETED, response.status);
+            assertEquals(1050, response.checkoutTotalCents);
+            assertEquals(Result.TRANSACTION_NOT_FOUND, client.end(transactionId, memberId).status);
+        }
+        request.setProductId(productId);
+        assertEquals(995, grocery.searchProduct(request).getStockOnHand());
+    }
+
+    @Test(timeout = 20_000)
+    public void pipelinedFramesAreAllAnswered() throws Exception {
+        int frames = 3_000;
+        Frame frame = new Frame();
+        frame.opcode = PosFrameCodec.BEGIN;
+        ByteBuffer requests = ByteBuffer.allocate(frames * 8);
+        for (int index = 0; index < frames; index++) {
+            PosFrameCodec.writeRequest(frame, requests);
+        }
+        requests.flip();
+        try (PosServer server = new PosServer(Grocery.instance(), 0);
+                SocketChannel channel = SocketChannel.open(
+                        new InetSocketAddress("localhost", server.getPort()))) {
+            // Send everything before reading any response
+            while (requests.hasRemaining()) {
+                channel.write(requests);
+            }
+            ByteBuffer responses = ByteBuffer.allocate(64 * 1024);
+            Frame response = new Frame();
+            int answered = 0;
+            while (answered < frames) {
+                if (channel.read(responses) < 0) {
+                    break;
+                }
+                responses.flip();
+                while (PosFrameCodec.readResponse(responses, response)) {
+                    assertEquals(Result.OPERATION_COMPLETED, response.status);
+                    answered++;
+                }
+                responses.compact();
+            }
+            assertEquals(frames, answered);
+        }
+    }
+}